@@ -289,6 +289,11 @@ tasks.check {
 tasks.test {
   // Use JUnit Jupiter for unit tests.
   useJUnitPlatform()
+  // Lets McpCleanupDifferentialTest run over a whole decompiled jar
+  providers.gradleProperty("rfg.cleanupDifferentialJar").orNull?.let {
+    systemProperty("rfg.cleanupDifferentialJar", it)
+    inputs.file(it)
+  }
 }
 
 tasks.named<Jar>("javadocJar").configure { from(fileTree("..").include("docs/*")) }
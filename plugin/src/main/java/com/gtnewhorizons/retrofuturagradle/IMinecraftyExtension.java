@@ -102,6 +102,47 @@ public interface IMinecraftyExtension {
      */
     ListProperty<String> getFernflowerArguments();
 
+    /**
+     * The maximum number of Fernflower processes to decompile Minecraft with at once, each taking a share of the
+     * top-level classes and the rest of the jar as context. Every 1.12 process needs 3GB of memory. Default: 1
+     */
+    Property<Integer> getFernflowerShards();
+
+    /**
+     * Size budget in megabytes for the tracked entries of the shared RFG cache (decompiled jars and classes), least
+     * recently used entries above it get evicted. Non-positive disables the limit. Default: 8192
+     */
+    Property<Long> getCacheMaxSizeMegabytes();
+
+    /**
+     * Tracked entries of the shared RFG cache not used for this many days get evicted. Non-positive disables the
+     * limit. Default: 60
+     */
+    Property<Integer> getCacheMaxAgeDays();
+
+    /**
+     * Whether the decompiled Minecraft jar is shared through the Gradle build cache (when enabled with
+     * {@code --build-cache}), so that agents sharing a cache never decompile the same Minecraft/Forge combination
+     * twice. Default: true
+     */
+    Property<Boolean> getUseBuildCacheForDecompilation();
+
+    /**
+     * Opt-in: whether to run the FF patch cleanup stage on the decompiled classes while Fernflower is still working on
+     * the rest, instead of after the whole jar is decompiled. Meant to produce the same final sources, but the
+     * decompiled jar is then saved already FF patched and cached under a different key, and in 1.7.10 it relies on
+     * watching the files Fernflower writes. The later cleanup stages (MCP patches, MCP cleanup and astyle) still run
+     * after decompilation, as the MCP patches need the FF patched sources of the whole jar. Turned off while
+     * {@link #getProfileSourceCleanup()} is set. Default: false
+     */
+    Property<Boolean> getPipelinedDecompilation();
+
+    /**
+     * Whether the decompiled source cleanup records the time and allocations every file takes in each of its stages,
+     * and writes them with the slowest files to {@code build/rfg/cleanupDecompSrgJar-profile.json}. Default: false
+     */
+    Property<Boolean> getProfileSourceCleanup();
+
     /**
      * @return The major version of LWJGL (2 or 3) used by the main and test source sets. Default: 2
      */
@@ -172,6 +213,18 @@ public interface IMinecraftyExtension {
         getUseForgeEmbeddedMappings().finalizeValueOnRead();
         getFernflowerArguments().convention(Lists.newArrayList("-din=1", "-rbr=0", "-dgs=1", "-asc=1", "-log=ERROR"));
         getFernflowerArguments().finalizeValueOnRead();
+        getFernflowerShards().convention(1);
+        getFernflowerShards().finalizeValueOnRead();
+        getCacheMaxSizeMegabytes().convention(8192L);
+        getCacheMaxSizeMegabytes().finalizeValueOnRead();
+        getCacheMaxAgeDays().convention(60);
+        getCacheMaxAgeDays().finalizeValueOnRead();
+        getUseBuildCacheForDecompilation().convention(true);
+        getUseBuildCacheForDecompilation().finalizeValueOnRead();
+        getPipelinedDecompilation().convention(false);
+        getPipelinedDecompilation().finalizeValueOnRead();
+        getProfileSourceCleanup().convention(false);
+        getProfileSourceCleanup().finalizeValueOnRead();
         getMainLwjglVersion().convention(2);
         getMainLwjglVersion().finalizeValueOnRead();
     }
@@ -188,6 +241,15 @@ public interface IMinecraftyExtension {
                         .zip(getMcpMappingVersion(), (mcpChan, mcpVer) -> mapper.apply(mcVer, mcpChan, mcpVer)));
     }
 
+    /**
+     * @return Whether the decompile task should apply the FF patches, see {@link #getPipelinedDecompilation()}
+     */
+    default Provider<Boolean> getApplyFfPatchesWhileDecompiling() {
+        // The cleanup profile should cover the FF patches, which it can't while the decompile task applies them
+        return getPipelinedDecompilation()
+                .zip(getProfileSourceCleanup(), (pipelined, profile) -> pipelined && !profile);
+    }
+
     default Provider<String> getForgeVersion() {
         return getMcVersion().map(mcVer -> switch (mcVer) {
             case "1.7.10" -> "1.7.10-10.13.4.1614-1.7.10";
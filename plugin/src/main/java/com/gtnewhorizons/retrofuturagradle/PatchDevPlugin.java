@@ -7,6 +7,7 @@ import org.gradle.util.GradleVersion;
 
 import com.gtnewhorizons.retrofuturagradle.minecraft.MinecraftTasks;
 import com.gtnewhorizons.retrofuturagradle.patchdev.PatchDevTasks;
+import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 
 /**
  * A plugin for building patch-based mods for 1.7.10 Minecraft
@@ -20,6 +21,9 @@ public class PatchDevPlugin implements Plugin<Project> {
             throw new IllegalStateException("Using RetroFuturaGradle requires at least Gradle 7.6.");
         }
 
+        // Keep file fingerprints in the shared cache between daemons
+        HashUtils.useFingerprintStore(project);
+
         // Register the obfuscation status attribute
         ObfuscationAttribute.configureProject(project);
 
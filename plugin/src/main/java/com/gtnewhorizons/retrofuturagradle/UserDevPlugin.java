@@ -11,6 +11,7 @@ import org.gradle.util.GradleVersion;
 import com.gtnewhorizons.retrofuturagradle.mcp.MCPTasks;
 import com.gtnewhorizons.retrofuturagradle.minecraft.MinecraftTasks;
 import com.gtnewhorizons.retrofuturagradle.modutils.ModUtils;
+import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 
 /**
  * A plugin for modding 1.7.10 Minecraft
@@ -24,6 +25,9 @@ public class UserDevPlugin implements Plugin<Project> {
             throw new IllegalStateException("Using RetroFuturaGradle requires at least Gradle 7.6.");
         }
 
+        // Keep file fingerprints in the shared cache between daemons
+        HashUtils.useFingerprintStore(project);
+
         // Register the obfuscation status attribute
         ObfuscationAttribute.configureProject(project);
 
@@ -0,0 +1,147 @@
+package com.gtnewhorizons.retrofuturagradle.fgpatchers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A list of regex replacements that would otherwise each run over the whole file one after another, applied in a single
+ * scan with one combined pattern instead.
+ * <p>
+ * This only gives the same result as the rules run one by one if no two rules can match overlapping text and no
+ * replacement can create a match for a later rule, which holds for the literal rewrites of the MCP cleanup.
+ * {@link #applyOneByOne(String)} is kept as the reference to check that against.
+ */
+final class CleanupRules {
+
+    static final class Rule {
+
+        final Pattern pattern;
+        final String replacement;
+
+        Rule(Pattern pattern, String replacement) {
+            this.pattern = pattern;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * The character value and pi approximation rewrites shared by the FG1.2 and FG2.3 MCP cleanups, whose patterns are
+     * the same in both
+     */
+    static final CleanupRules MCP_LITERALS = new CleanupRules(
+            new Rule(McpCleanupFg12.CLEANUP_charval, "$1"),
+            new Rule(McpCleanupFg12.CLEANUP_piD, "Math.PI"),
+            new Rule(McpCleanupFg12.CLEANUP_piF, "(float)Math.PI"),
+            new Rule(McpCleanupFg12.CLEANUP_2piD, "(Math.PI * 2D)"),
+            new Rule(McpCleanupFg12.CLEANUP_2piF, "((float)Math.PI * 2F)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi2D, "(Math.PI / 2D)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi2F, "((float)Math.PI / 2F)"),
+            new Rule(McpCleanupFg12.CLEANUP_3pi2D, "(Math.PI * 3D / 2D)"),
+            new Rule(McpCleanupFg12.CLEANUP_3pi2F, "((float)Math.PI * 3F / 2F)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi4D, "(Math.PI / 4D)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi4F, "((float)Math.PI / 4F)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi5D, "(Math.PI / 5D)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi5F, "((float)Math.PI / 5F)"),
+            new Rule(McpCleanupFg12.CLEANUP_180piD, "(180D / Math.PI)"),
+            new Rule(McpCleanupFg12.CLEANUP_180piF, "(180F / (float)Math.PI)"),
+            new Rule(McpCleanupFg12.CLEANUP_2pi9D, "(Math.PI * 2D / 9D)"),
+            new Rule(McpCleanupFg12.CLEANUP_2pi9F, "((float)Math.PI * 2F / 9F)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi10D, "(Math.PI / 10D)"),
+            new Rule(McpCleanupFg12.CLEANUP_pi10F, "((float)Math.PI / 10F)"),
+            new Rule(McpCleanupFg12.CLEANUP_2pi5D, "(Math.PI * 2D / 5D)"),
+            new Rule(McpCleanupFg12.CLEANUP_2pi5F, "((float)Math.PI * 2F / 5F)"),
+            new Rule(McpCleanupFg12.CLEANUP_7pi100D, "(Math.PI * 7D / 100D)"),
+            new Rule(McpCleanupFg12.CLEANUP_7pi100F, "((float)Math.PI * 7F / 100F)"),
+            new Rule(McpCleanupFg12.CLEANUP_185pi100D, "(Math.PI * 185D / 100D)"),
+            new Rule(McpCleanupFg12.CLEANUP_185pi100F, "((float)Math.PI * 185F / 100F)"));
+
+    private final List<Rule> rules;
+    private final Pattern combined;
+    /** Index of the group wrapping each rule in {@link #combined} */
+    private final int[] ruleGroups;
+    /** The replacement of each rule, with its group references shifted to the groups of {@link #combined} */
+    private final String[] combinedReplacements;
+
+    CleanupRules(Rule... rules) {
+        this.rules = new ArrayList<>(Arrays.asList(rules));
+        this.combined = Pattern.compile(
+                this.rules.stream().map(r -> "(" + r.pattern.pattern() + ")").collect(Collectors.joining("|")));
+        this.ruleGroups = new int[rules.length];
+        this.combinedReplacements = new String[rules.length];
+        int group = 1;
+        for (int i = 0; i < rules.length; i++) {
+            ruleGroups[i] = group;
+            combinedReplacements[i] = shiftGroupReferences(rules[i].replacement, group);
+            group += 1 + rules[i].pattern.matcher("").groupCount();
+        }
+    }
+
+    /**
+     * Rewrites the {@code $n} references of a replacement string to point at the same groups nested in the combined
+     * pattern, where the group wrapping the whole rule has the index {@code ruleGroup}.
+     */
+    private static String shiftGroupReferences(String replacement, int ruleGroup) {
+        final StringBuilder out = new StringBuilder(replacement.length() + 4);
+        int i = 0;
+        while (i < replacement.length()) {
+            final char c = replacement.charAt(i++);
+            if (c == '\\' && i < replacement.length()) {
+                out.append(c).append(replacement.charAt(i++));
+            } else if (c == '$' && i < replacement.length() && Character.isDigit(replacement.charAt(i))) {
+                int end = i;
+                while (end < replacement.length() && Character.isDigit(replacement.charAt(end))) {
+                    end++;
+                }
+                out.append('$').append(ruleGroup + Integer.parseInt(replacement.substring(i, end)));
+                i = end;
+            } else {
+                out.append(c);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Applies all rules in one scan of the text.
+     */
+    String apply(String text) {
+        final Matcher matcher = combined.matcher(text);
+        if (!matcher.find()) {
+            return text;
+        }
+        final StringBuffer out = new StringBuffer(text.length() + 64);
+        do {
+            matcher.appendReplacement(out, combinedReplacements[matchedRule(matcher)]);
+        } while (matcher.find());
+        matcher.appendTail(out);
+        return out.toString();
+    }
+
+    /**
+     * @return The index of the rule whose alternative of the combined pattern matched, which is the last one if none of
+     *         the others did
+     */
+    private int matchedRule(Matcher matcher) {
+        final int last = ruleGroups.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (matcher.start(ruleGroups[i]) != -1) {
+                return i;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Applies the rules one after another, each over the whole text.
+     */
+    String applyOneByOne(String text) {
+        for (Rule rule : rules) {
+            text = rule.pattern.matcher(text).replaceAll(rule.replacement);
+        }
+        return text;
+    }
+}
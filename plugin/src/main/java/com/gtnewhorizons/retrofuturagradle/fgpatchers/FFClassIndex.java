@@ -0,0 +1,116 @@
+package com.gtnewhorizons.retrofuturagradle.fgpatchers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.collections4.iterators.EnumerationIterator;
+import org.apache.commons.collections4.iterators.IteratorIterable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+/**
+ * The structure {@link FFPatcher} needs to know about every decompiled source file, read from the class files it was
+ * decompiled from, so that the patcher only runs its passes on the files they can change.
+ */
+public final class FFClassIndex {
+
+    /** Source file path (e.g. net/minecraft/a/B.java) to what the classes in it contain */
+    private final Map<String, SourceInfo> sources;
+
+    private FFClassIndex(Map<String, SourceInfo> sources) {
+        this.sources = sources;
+    }
+
+    /**
+     * What the top-level class of a source file and all its nested classes contain.
+     */
+    public static final class SourceInfo {
+
+        private boolean hasEnums;
+        private boolean hasBodylessSrgMethods;
+
+        /**
+         * @return Whether any of the classes is an enum, whose constants, constructors and synthetic fields need fixing
+         */
+        public boolean hasEnums() {
+            return hasEnums;
+        }
+
+        /**
+         * @return Whether any of the classes declares abstract or native SRG-named methods, whose parameters need
+         *         naming
+         */
+        public boolean hasBodylessSrgMethods() {
+            return hasBodylessSrgMethods;
+        }
+    }
+
+    /**
+     * Reads the class headers and method declarations of every class in the jar, skipping all code. Only one class is
+     * held in memory at a time.
+     */
+    public static FFClassIndex read(File classJar) throws IOException {
+        final Map<String, SourceInfo> sources = new HashMap<>();
+        try (final ZipFile zip = new ZipFile(classJar)) {
+            // The names come from the central directory, so finding the outer classes doesn't read any class
+            final List<ZipEntry> classEntries = new ArrayList<>();
+            final Set<String> classNames = new HashSet<>();
+            for (ZipEntry entry : new IteratorIterable<>(new EnumerationIterator<>(zip.entries()))) {
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    classEntries.add(entry);
+                    classNames.add(entry.getName().substring(0, entry.getName().length() - ".class".length()));
+                }
+            }
+            for (ZipEntry entry : classEntries) {
+                final String className = entry.getName().substring(0, entry.getName().length() - ".class".length());
+                final SourceInfo info = sources.computeIfAbsent(
+                        Utilities.outermostClassOf(className, classNames) + ".java",
+                        k -> new SourceInfo());
+                final ClassReader reader;
+                try (final InputStream in = zip.getInputStream(entry)) {
+                    reader = new ClassReader(in);
+                }
+                reader.accept(new ClassVisitor(Opcodes.ASM9) {
+
+                    @Override
+                    public void visit(int version, int access, String name, String signature, String superName,
+                            String[] interfaces) {
+                        if ((access & Opcodes.ACC_ENUM) != 0) {
+                            info.hasEnums = true;
+                        }
+                    }
+
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                            String[] exceptions) {
+                        if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) != 0 && name.startsWith("func_")) {
+                            info.hasBodylessSrgMethods = true;
+                        }
+                        return null;
+                    }
+                }, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            }
+        }
+        return new FFClassIndex(sources);
+    }
+
+    /**
+     * @return What the classes of the given source file contain, or null if the file doesn't come from the jar
+     */
+    public SourceInfo get(String sourcePath) {
+        return sources.get(sourcePath);
+    }
+}
@@ -5,6 +5,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -17,6 +19,7 @@ public class FFPatcher {
 
     static final String MODIFIERS = "public|protected|private|static|abstract|final|native|synchronized|transient|volatile|strictfp";
 
+    private static final String SYNTHETIC_MARKER = "// $FF: ";
     private static final Pattern SYNTHETICS = Pattern.compile(
             "(?m)(\\s*// \\$FF: (synthetic|bridge) method(\\r\\n|\\n|\\r)){1,2}\\s*(?<modifiers>(?:(?:" + MODIFIERS
                     + ") )*)(?<return>.+?) (?<method>.+?)\\((?<arguments>.*)\\)\\s*\\{(\\r\\n|\\n|\\r)\\s*return this\\.(?<method2>.+?)\\((?<arguments2>.*)\\);(\\r\\n|\\n|\\r)\\s*\\}");
@@ -48,30 +51,55 @@ public class FFPatcher {
     private static final String VALUE_FIELD_REGEX = ("private static final %s\\[\\] [$\\w\\d]+ = new %s\\[\\]\\{.*?\\};");
 
     private static final Pattern NEWLINE_PATTERN = Pattern.compile("\r?\n|\r");
+    /** {@link #CLASS_REGEX} by indentation, nested classes only ever appear at a handful of indentation levels */
+    private static final Map<String, Pattern> CLASS_PATTERNS = new ConcurrentHashMap<>();
 
     public static String processFile(String fileName, String text, boolean fixInterfaces) throws IOException {
-        StringBuffer out = new StringBuffer();
-        Matcher m = SYNTHETICS.matcher(text);
-        while (m.find()) {
-            m.appendReplacement(out, synthetic_replacement(m).replace("$", "\\$"));
+        return processFile(fileName, text, fixInterfaces, null);
+    }
+
+    /**
+     * @param classIndex The structure of the classes the file was decompiled from, used to skip the passes that can't
+     *                   change the file. If null or the file is not in it, every pass runs.
+     */
+    public static String processFile(String fileName, String text, boolean fixInterfaces, FFClassIndex classIndex)
+            throws IOException {
+        final FFClassIndex.SourceInfo info = (classIndex == null) ? null : classIndex.get(fileName);
+
+        StringBuffer out;
+        Matcher m;
+        if (text.contains(SYNTHETIC_MARKER)) {
+            out = new StringBuffer();
+            m = SYNTHETICS.matcher(text);
+            while (m.find()) {
+                m.appendReplacement(out, synthetic_replacement(m).replace("$", "\\$"));
+            }
+            m.appendTail(out);
+            text = out.toString();
         }
-        m.appendTail(out);
-        text = out.toString();
 
         text = RegExUtils.removeAll(text, TRAILING);
 
         text = RegExUtils.replaceAll(text, TRAILINGZERO, "$1$2");
 
-        List<String> lines = new ArrayList<>(128);
-        Collections.addAll(lines, NEWLINE_PATTERN.split(text));
-
-        processClass(lines, "", 0, "", ""); // mutates the list
-        text = Joiner.on(System.lineSeparator()).join(lines);
+        if (info == null || info.hasEnums()) {
+            List<String> lines = new ArrayList<>(128);
+            Collections.addAll(lines, NEWLINE_PATTERN.split(text));
+
+            processClass(lines, "", 0, "", ""); // mutates the list
+            text = Joiner.on(System.lineSeparator()).join(lines);
+        } else {
+            // Only enums get rewritten by processClass, just normalise the line breaks the same way as split+join
+            text = NEWLINE_PATTERN.matcher(text).replaceAll(Matcher.quoteReplacement(System.lineSeparator()));
+            while (text.endsWith(System.lineSeparator())) {
+                text = text.substring(0, text.length() - System.lineSeparator().length());
+            }
+        }
 
         text = RegExUtils.replaceAll(text, NEWLINES, System.lineSeparator());
         text = RegExUtils.replaceAll(text, EMPTY_SUPER, "");
 
-        if (fixInterfaces) {
+        if (fixInterfaces && (info == null || info.hasBodylessSrgMethods())) {
             out = new StringBuffer();
             m = ABSTRACT.matcher(text);
             while (m.find()) {
@@ -86,7 +114,7 @@ public class FFPatcher {
 
     private static int processClass(List<String> lines, String indent, int startIndex, String qualifiedName,
             String simpleName) {
-        Pattern classPattern = Pattern.compile(indent + CLASS_REGEX);
+        Pattern classPattern = CLASS_PATTERNS.computeIfAbsent(indent, i -> Pattern.compile(i + CLASS_REGEX));
 
         for (int i = startIndex; i < lines.size(); i++) {
             String line = lines.get(i);
@@ -2,6 +2,8 @@ package com.gtnewhorizons.retrofuturagradle.fgpatchers;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -18,7 +20,12 @@ public class GLConstantFixer {
     private static final String[] PACKAGES = { "GL11", "GL12", "GL13", "GL14", "GL15", "GL20", "GL21",
             "ARBMultitexture", "ARBOcclusionQuery", "ARBVertexBufferObject", "ARBShaderObjects" };
 
-    private final List<GLConstantGroup> json;
+    /**
+     * Package.method of every GL call that takes constants, to the constant names by literal value. Built once from
+     * {@code gl_constants.json} and shared by all instances.
+     */
+    private static volatile Map<String, Map<String, String>> constantIndex;
+    private final Map<String, Map<String, String>> index;
     public static final Pattern CALL_REGEX = Pattern
             .compile("(" + Joiner.on("|").join(PACKAGES) + ")\\.([\\w]+)\\(.+\\)");
     public static final Pattern CONSTANT_REGEX = Pattern.compile("(?<![-.\\w])\\d+(?![.\\w])");
@@ -28,9 +35,44 @@ public class GLConstantFixer {
     private static final String IMPORT_REPLACE = "import " + ADD_AFTER + ";";
 
     public GLConstantFixer() throws IOException {
-        String text = Resources
-                .toString(Resources.getResource(GLConstantFixer.class, "gl_constants.json"), Charset.defaultCharset());
-        json = Utilities.GSON.fromJson(text, new TypeToken<List<GLConstantGroup>>() {}.getType());
+        index = getConstantIndex();
+    }
+
+    private static Map<String, Map<String, String>> getConstantIndex() throws IOException {
+        Map<String, Map<String, String>> result = constantIndex;
+        if (result != null) {
+            return result;
+        }
+        synchronized (GLConstantFixer.class) {
+            if (constantIndex == null) {
+                String text = Resources.toString(
+                        Resources.getResource(GLConstantFixer.class, "gl_constants.json"),
+                        Charset.defaultCharset());
+                List<GLConstantGroup> json = Utilities.GSON
+                        .fromJson(text, new TypeToken<List<GLConstantGroup>>() {}.getType());
+                constantIndex = buildIndex(json);
+            }
+            return constantIndex;
+        }
+    }
+
+    static Map<String, Map<String, String>> buildIndex(List<GLConstantGroup> json) {
+        Map<String, Map<String, String>> result = new HashMap<>();
+        // Later groups and constant classes override earlier ones for the same literal, same as the old linear scan
+        for (GLConstantGroup group : json) {
+            for (Map.Entry<String, List<String>> functions : group.functions.entrySet()) {
+                for (String method : functions.getValue()) {
+                    Map<String, String> byLiteral = result
+                            .computeIfAbsent(functions.getKey() + "." + method, k -> new HashMap<>());
+                    for (Map.Entry<String, Map<String, String>> entry : group.constants.entrySet()) {
+                        for (Map.Entry<String, String> constant : entry.getValue().entrySet()) {
+                            byLiteral.put(constant.getKey(), entry.getKey() + "." + constant.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableMap(result);
     }
 
     public String fixOGL(String text) {
@@ -63,30 +105,20 @@ public class GLConstantFixer {
             pack = rootMatch.group(1);
             method = rootMatch.group(2);
 
+            // calls that take no constants are left as they are
+            Map<String, String> constants = index.get(pack + "." + method);
+            if (constants == null) {
+                rootMatch.appendReplacement(out, Matcher.quoteReplacement(fullCall));
+                continue;
+            }
+
             Matcher constantMatcher = CONSTANT_REGEX.matcher(fullCall);
             innerOut = new StringBuffer(fullCall.length());
 
             // search for hardcoded numbers
             while (constantMatcher.find()) {
-                // helper variables and return variable.
-                String constant = constantMatcher.group();
-                String answer = null;
-
-                // iterrate over the JSON
-                for (GLConstantGroup group : json) {
-
-                    // ensure that the package and method are defined
-                    if (group.functions.containsKey(pack) && group.functions.get(pack).contains(method)) {
-                        // itterrate through the map.
-                        for (Map.Entry<String, Map<String, String>> entry : group.constants.entrySet()) {
-                            // find the actual constant for the number from the regex
-                            if (entry.getValue().containsKey(constant)) {
-                                // construct the final line
-                                answer = entry.getKey() + "." + entry.getValue().get(constant);
-                            }
-                        }
-                    }
-                }
+                // find the actual constant for the number from the regex
+                String answer = constants.get(constantMatcher.group());
 
                 // replace the final line.
                 if (answer != null) {
@@ -2,6 +2,7 @@ package com.gtnewhorizons.retrofuturagradle.fgpatchers;
 
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,8 +12,28 @@ public class McpCleanupFg12 {
     public static final Pattern COMMENTS_NEWLINES = Pattern.compile("(?m)^(?:\\r\\n|\\r|\\n){2,}");
 
     public static String stripComments(String text) {
+        final StringWriter out = new StringWriter(text.length());
+        stripComments(text, out);
+        text = out.toString();
+
+        text = COMMENTS_TRAILING.matcher(text).replaceAll("");
+        text = COMMENTS_NEWLINES.matcher(text).replaceAll(System.lineSeparator());
+
+        return text;
+    }
+
+    /**
+     * Gives the same result as {@link #stripComments(String)} followed by {@link #fixImports(String)}, in a single scan
+     * of the file.
+     */
+    public static String stripCommentsAndFixImports(String text) {
+        final StrippedSourceWriter out = new StrippedSourceWriter(text.length());
+        stripComments(text, out);
+        return out.toString();
+    }
+
+    private static void stripComments(String text, Writer out) {
         StringReader in = new StringReader(text);
-        StringWriter out = new StringWriter(text.length());
         boolean inComment = false;
         boolean inString = false;
         char c;
@@ -88,13 +109,6 @@ public class McpCleanupFg12 {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-
-        text = out.toString();
-
-        text = COMMENTS_TRAILING.matcher(text).replaceAll("");
-        text = COMMENTS_NEWLINES.matcher(text).replaceAll(System.lineSeparator());
-
-        return text;
     }
 
     // ---------------------------------------------
@@ -223,6 +237,17 @@ public class McpCleanupFg12 {
     }
 
     public static String cleanup(String text, boolean doFormattingChanges) {
+        return cleanup(text, doFormattingChanges, true);
+    }
+
+    /**
+     * The reference for {@link #cleanup(String, boolean)}, running every rule in its own pass over the file.
+     */
+    static String cleanupOneByOne(String text, boolean doFormattingChanges) {
+        return cleanup(text, doFormattingChanges, false);
+    }
+
+    private static String cleanup(String text, boolean doFormattingChanges, boolean fused) {
         // simple replacements
         if (doFormattingChanges) {
             text = CLEANUP_header.matcher(text).replaceAll("");
@@ -253,34 +278,8 @@ public class McpCleanupFg12 {
             text = buffer.toString();
         }
 
-        // charval.. its stupid.
-        text = CLEANUP_charval.matcher(text).replaceAll("$1"); // TESTING NEEDED
-
-        // pi? true
-        text = CLEANUP_piD.matcher(text).replaceAll("Math.PI");
-        text = CLEANUP_piF.matcher(text).replaceAll("(float)Math.PI");
-        text = CLEANUP_2piD.matcher(text).replaceAll("(Math.PI * 2D)");
-        text = CLEANUP_2piF.matcher(text).replaceAll("((float)Math.PI * 2F)");
-        text = CLEANUP_pi2D.matcher(text).replaceAll("(Math.PI / 2D)");
-        text = CLEANUP_pi2F.matcher(text).replaceAll("((float)Math.PI / 2F)");
-        text = CLEANUP_3pi2D.matcher(text).replaceAll("(Math.PI * 3D / 2D)");
-        text = CLEANUP_3pi2F.matcher(text).replaceAll("((float)Math.PI * 3F / 2F)");
-        text = CLEANUP_pi4D.matcher(text).replaceAll("(Math.PI / 4D)");
-        text = CLEANUP_pi4F.matcher(text).replaceAll("((float)Math.PI / 4F)");
-        text = CLEANUP_pi5D.matcher(text).replaceAll("(Math.PI / 5D)");
-        text = CLEANUP_pi5F.matcher(text).replaceAll("((float)Math.PI / 5F)");
-        text = CLEANUP_180piD.matcher(text).replaceAll("(180D / Math.PI)");
-        text = CLEANUP_180piF.matcher(text).replaceAll("(180F / (float)Math.PI)");
-        text = CLEANUP_2pi9D.matcher(text).replaceAll("(Math.PI * 2D / 9D)");
-        text = CLEANUP_2pi9F.matcher(text).replaceAll("((float)Math.PI * 2F / 9F)");
-        text = CLEANUP_pi10D.matcher(text).replaceAll("(Math.PI / 10D)");
-        text = CLEANUP_pi10F.matcher(text).replaceAll("((float)Math.PI / 10F)");
-        text = CLEANUP_2pi5D.matcher(text).replaceAll("(Math.PI * 2D / 5D)");
-        text = CLEANUP_2pi5F.matcher(text).replaceAll("((float)Math.PI * 2F / 5F)");
-        text = CLEANUP_7pi100D.matcher(text).replaceAll("(Math.PI * 7D / 100D)");
-        text = CLEANUP_7pi100F.matcher(text).replaceAll("((float)Math.PI * 7F / 100F)");
-        text = CLEANUP_185pi100D.matcher(text).replaceAll("(Math.PI * 185D / 100D)");
-        text = CLEANUP_185pi100F.matcher(text).replaceAll("((float)Math.PI * 185F / 100F)");
+        // charval.. its stupid. Then the pi approximations
+        text = fused ? CleanupRules.MCP_LITERALS.apply(text) : CleanupRules.MCP_LITERALS.applyOneByOne(text);
 
         return text;
     }
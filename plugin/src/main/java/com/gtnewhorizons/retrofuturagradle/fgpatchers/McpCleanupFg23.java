@@ -11,6 +11,7 @@
 package com.gtnewhorizons.retrofuturagradle.fgpatchers;
 
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,9 +29,30 @@ public class McpCleanupFg23 {
     }
 
     public static String stripComments(String text) {
+        final StringWriter out = new StringWriter(text.length());
+        stripComments(text, out);
+        text = out.toString();
+
+        text = COMMENTS_TRAILING.matcher(text).replaceAll("");
+        text = COMMENTS_NEWLINES.matcher(text).replaceAll(System.lineSeparator());
+
+        return text;
+    }
+
+    /**
+     * Gives the same result as {@link #stripComments(String)} followed by {@link #fixImports(String)}, in a single scan
+     * of the file.
+     */
+    public static String stripCommentsAndFixImports(String text) {
+        final StrippedSourceWriter out = new StrippedSourceWriter(text.length());
+        stripComments(text, out);
+        return out.toString();
+    }
+
+    private static void stripComments(String text, Writer out) {
         CommentState state = CommentState.CODE;
         int i = 0;
-        try (StringWriter out = new StringWriter(text.length())) {
+        try {
             while (i < text.length()) {
                 if (state == CommentState.CODE) {
                     out.write(text.charAt(i++));
@@ -88,15 +110,10 @@ public class McpCleanupFg23 {
                     state = CommentState.CODE;
                 }
             }
-            text = out.toString();
+            out.close();
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-
-        text = COMMENTS_TRAILING.matcher(text).replaceAll("");
-        text = COMMENTS_NEWLINES.matcher(text).replaceAll(System.lineSeparator());
-
-        return text;
     }
 
     // ---------------------------------------------
@@ -221,6 +238,17 @@ public class McpCleanupFg23 {
     public static final Pattern CLEANUP_185pi100F = Pattern.compile("0\\.8119[0-9]*[Ff]");
 
     public static String cleanup(String text) {
+        return cleanup(text, true);
+    }
+
+    /**
+     * The reference for {@link #cleanup(String)}, running every rule in its own pass over the file.
+     */
+    static String cleanupOneByOne(String text) {
+        return cleanup(text, false);
+    }
+
+    private static String cleanup(String text, boolean fused) {
         // simple replacements
         text = CLEANUP_header.matcher(text).replaceAll("");
         text = CLEANUP_footer.matcher(text).replaceAll("");
@@ -249,34 +277,8 @@ public class McpCleanupFg23 {
             text = buffer.toString();
         }
 
-        // charval.. its stupid.
-        text = CLEANUP_charval.matcher(text).replaceAll("$1"); // TESTING NEEDED
-
-        // pi? true
-        text = CLEANUP_piD.matcher(text).replaceAll("Math.PI");
-        text = CLEANUP_piF.matcher(text).replaceAll("(float)Math.PI");
-        text = CLEANUP_2piD.matcher(text).replaceAll("(Math.PI * 2D)");
-        text = CLEANUP_2piF.matcher(text).replaceAll("((float)Math.PI * 2F)");
-        text = CLEANUP_pi2D.matcher(text).replaceAll("(Math.PI / 2D)");
-        text = CLEANUP_pi2F.matcher(text).replaceAll("((float)Math.PI / 2F)");
-        text = CLEANUP_3pi2D.matcher(text).replaceAll("(Math.PI * 3D / 2D)");
-        text = CLEANUP_3pi2F.matcher(text).replaceAll("((float)Math.PI * 3F / 2F)");
-        text = CLEANUP_pi4D.matcher(text).replaceAll("(Math.PI / 4D)");
-        text = CLEANUP_pi4F.matcher(text).replaceAll("((float)Math.PI / 4F)");
-        text = CLEANUP_pi5D.matcher(text).replaceAll("(Math.PI / 5D)");
-        text = CLEANUP_pi5F.matcher(text).replaceAll("((float)Math.PI / 5F)");
-        text = CLEANUP_180piD.matcher(text).replaceAll("(180D / Math.PI)");
-        text = CLEANUP_180piF.matcher(text).replaceAll("(180F / (float)Math.PI)");
-        text = CLEANUP_2pi9D.matcher(text).replaceAll("(Math.PI * 2D / 9D)");
-        text = CLEANUP_2pi9F.matcher(text).replaceAll("((float)Math.PI * 2F / 9F)");
-        text = CLEANUP_pi10D.matcher(text).replaceAll("(Math.PI / 10D)");
-        text = CLEANUP_pi10F.matcher(text).replaceAll("((float)Math.PI / 10F)");
-        text = CLEANUP_2pi5D.matcher(text).replaceAll("(Math.PI * 2D / 5D)");
-        text = CLEANUP_2pi5F.matcher(text).replaceAll("((float)Math.PI * 2F / 5F)");
-        text = CLEANUP_7pi100D.matcher(text).replaceAll("(Math.PI * 7D / 100D)");
-        text = CLEANUP_7pi100F.matcher(text).replaceAll("((float)Math.PI * 7F / 100F)");
-        text = CLEANUP_185pi100D.matcher(text).replaceAll("(Math.PI * 185D / 100D)");
-        text = CLEANUP_185pi100F.matcher(text).replaceAll("((float)Math.PI * 185F / 100F)");
+        // charval.. its stupid. Then the pi approximations
+        text = fused ? CleanupRules.MCP_LITERALS.apply(text) : CleanupRules.MCP_LITERALS.applyOneByOne(text);
 
         return text;
     }
@@ -38,6 +38,8 @@ import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import com.google.common.io.LineProcessor;
+import com.gtnewhorizons.retrofuturagradle.util.LayeredMap;
+import com.gtnewhorizons.retrofuturagradle.util.MappingIndex;
 
 public class ReobfExceptor {
 
@@ -47,6 +49,8 @@ public class ReobfExceptor {
     public File methodCSV;
     public File fieldCSV;
     public File excConfig;
+    /** Where to keep the binary CSV indices, null to only index them in memory */
+    public File mappingIndexDir;
 
     // state stuff
     Map<String, String> clsMap = Maps.newHashMap();
@@ -81,30 +85,17 @@ public class ReobfExceptor {
 
     // Preliminary things here
 
-    private Map<String, String> readCSVs() throws IOException {
-        final Map<String, String> csvData = Maps.newHashMap();
-        File[] csvs = new File[] { fieldCSV == null ? null : fieldCSV, methodCSV == null ? null : methodCSV };
+    private Map<String, String> readCSVs() {
+        final List<Map<String, String>> csvData = Lists.newArrayList();
+        // Method names take priority over field names
+        File[] csvs = new File[] { methodCSV, fieldCSV };
 
         for (File f : csvs) {
             if (f == null) continue;
-
-            Files.readLines(f, Charset.defaultCharset(), new LineProcessor<Object>() {
-
-                @Override
-                public boolean processLine(String line) throws IOException {
-                    String[] s = line.split(",");
-                    csvData.put(s[0], s[1]);
-                    return true;
-                }
-
-                @Override
-                public Object getResult() {
-                    return null;
-                }
-            });
+            csvData.add(MappingIndex.open(mappingIndexDir, f).asNameMap());
         }
 
-        return csvData;
+        return new LayeredMap<>(csvData);
     }
 
     // ACTUAL things here...
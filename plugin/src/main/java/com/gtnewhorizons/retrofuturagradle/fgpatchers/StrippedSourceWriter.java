@@ -0,0 +1,219 @@
+package com.gtnewhorizons.retrofuturagradle.fgpatchers;
+
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Receives the output of the MCP comment strippers and does what the regexes after them did while it's being written:
+ * drops trailing spaces and tabs, replaces runs of blank lines with a single line separator, and finds the imports of
+ * classes from the file's own package, which are removed at the end.
+ * <p>
+ * The result is the same as running {@code COMMENTS_TRAILING}, {@code COMMENTS_NEWLINES} and then {@code fixImports}
+ * of {@link McpCleanupFg12}/{@link McpCleanupFg23} over the written text, as long as the package declaration comes
+ * before the imports like Java requires. Line starts and ends follow {@link java.util.regex.Pattern#MULTILINE}.
+ */
+final class StrippedSourceWriter extends Writer {
+
+    private final StringBuilder out;
+    private final String lineSeparator = System.lineSeparator();
+
+    /** Spaces and tabs that get dropped if a line ends right after them */
+    private final StringBuilder pendingSpaces = new StringBuilder();
+    /** \r and \n written in a row, collapsed once the next character shows where the run ends */
+    private final StringBuilder pendingBreaks = new StringBuilder();
+    /** If the run of line breaks started at the start of a line */
+    private boolean breaksAtLineStart;
+    /** The last character that got past the trailing whitespace removal, 0 before the first */
+    private char lastChar = 0;
+    private boolean anyChar = false;
+
+    /** Where the line currently being written starts in {@link #out} */
+    private int lineStart = 0;
+    private String packageName;
+    /** The imports to remove with their line terminators, in the order they were found */
+    private final List<String> ownPackageImports = new ArrayList<>();
+    /** Set after an import to remove that ended in \r, as its line terminator may continue with \n */
+    private boolean importEndsInCr = false;
+
+    StrippedSourceWriter(int expectedLength) {
+        this.out = new StringBuilder(expectedLength);
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    @Override
+    public void write(int c) {
+        final char ch = (char) c;
+        if (ch == ' ' || ch == '\t') {
+            pendingSpaces.append(ch);
+            return;
+        }
+        if (!isLineTerminator(ch)) {
+            flushSpaces();
+        } else {
+            pendingSpaces.setLength(0);
+        }
+        writeBreakOrChar(ch);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        for (int i = off; i < off + len; i++) {
+            write(cbuf[i]);
+        }
+    }
+
+    private void flushSpaces() {
+        for (int i = 0; i < pendingSpaces.length(); i++) {
+            writeBreakOrChar(pendingSpaces.charAt(i));
+        }
+        pendingSpaces.setLength(0);
+    }
+
+    /** Text without trailing whitespace comes in here */
+    private void writeBreakOrChar(char c) {
+        if (c == '\r' || c == '\n') {
+            if (pendingBreaks.length() == 0) {
+                breaksAtLineStart = !anyChar || lastChar == '\u0085' || lastChar == '\u2028' || lastChar == '\u2029';
+            }
+            pendingBreaks.append(c);
+        } else {
+            flushBreaks();
+            emit(c);
+        }
+        lastChar = c;
+        anyChar = true;
+    }
+
+    /** Two or more line breaks at the start of a line become a single line separator */
+    private void flushBreaks() {
+        final int length = pendingBreaks.length();
+        if (length == 0) {
+            return;
+        }
+        int rest = 0;
+        if (!breaksAtLineStart) {
+            // The first line break ends the line before the run
+            rest = length > 1 && pendingBreaks.charAt(0) == '\r' && pendingBreaks.charAt(1) == '\n' ? 2 : 1;
+            for (int i = 0; i < rest; i++) {
+                emit(pendingBreaks.charAt(i));
+            }
+        }
+        if (length - rest >= 2) {
+            for (int i = 0; i < lineSeparator.length(); i++) {
+                emit(lineSeparator.charAt(i));
+            }
+        } else {
+            for (int i = rest; i < length; i++) {
+                emit(pendingBreaks.charAt(i));
+            }
+        }
+        pendingBreaks.setLength(0);
+    }
+
+    /** Text with collapsed blank lines comes in here */
+    private void emit(char c) {
+        if (importEndsInCr) {
+            importEndsInCr = false;
+            if (c == '\n') {
+                final int last = ownPackageImports.size() - 1;
+                ownPackageImports.set(last, ownPackageImports.get(last) + c);
+            }
+        }
+        if (isLineTerminator(c)) {
+            if (packageName == null) {
+                packageName = findPackage();
+            } else if ((c == '\r' || c == '\n') && isOwnPackageImport()) {
+                ownPackageImports.add(out.substring(lineStart) + c);
+                importEndsInCr = c == '\r';
+            }
+            out.append(c);
+            lineStart = out.length();
+            return;
+        }
+        out.append(c);
+    }
+
+    /**
+     * @return The name from a {@code package name;} line, or null if the current line isn't one
+     */
+    private String findPackage() {
+        final int end = out.length();
+        if (!startsWith(lineStart, "package ") || end - lineStart < 10 || out.charAt(end - 1) != ';') {
+            return null;
+        }
+        final int nameStart = lineStart + 8;
+        for (int i = nameStart; i < end - 1; i++) {
+            final char c = out.charAt(i);
+            if (!isWordChar(c) && c != '.') {
+                return null;
+            }
+        }
+        return out.substring(nameStart, end - 1);
+    }
+
+    /**
+     * @return If the current line is {@code import package.Name;} for a class of {@link #packageName}
+     */
+    private boolean isOwnPackageImport() {
+        final int end = out.length();
+        if (!startsWith(lineStart, "import ") || end - lineStart < 9 || out.charAt(end - 1) != ';') {
+            return false;
+        }
+        final int nameStart = lineStart + 7;
+        int lastDot = -1;
+        for (int i = nameStart; i < end - 1; i++) {
+            final char c = out.charAt(i);
+            if (c == '.') {
+                lastDot = i;
+            } else if (!isWordChar(c)) {
+                return false;
+            }
+        }
+        // Also rules out a class name ending in a dot
+        if (lastDot < 0 || lastDot == end - 2) {
+            return false;
+        }
+        return lastDot - nameStart == packageName.length() && startsWith(nameStart, packageName);
+    }
+
+    private boolean startsWith(int start, String prefix) {
+        if (out.length() - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (out.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    /**
+     * @return Everything written so far, as if the text ended here
+     */
+    @Override
+    public String toString() {
+        pendingSpaces.setLength(0);
+        flushBreaks();
+        String text = out.toString();
+        // Removed like fixImports does, which also catches the same text anywhere else in the file
+        for (String ownPackageImport : ownPackageImports) {
+            text = text.replace(ownPackageImport, "");
+        }
+        return text;
+    }
+}
@@ -2,16 +2,19 @@ package com.gtnewhorizons.retrofuturagradle.json;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
-
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 public class MCInjectorStruct {
@@ -57,13 +60,43 @@ public class MCInjectorStruct {
         }
     }
 
+    /** Same settings as {@link Utilities#GSON}, minus the pretty printing nobody reads the output of */
+    private static final Gson COMPACT_GSON = new GsonBuilder().enableComplexMapKeySerialization().create();
+    private static final Type STRUCT_MAP_TYPE = new TypeToken<HashMap<String, MCInjectorStruct>>() {}.getType();
+
     public static Map<String, MCInjectorStruct> loadMCIJson(File jsonFile) throws IOException {
-        Map<String, MCInjectorStruct> ret = new HashMap<>();
-        JsonObject root = JsonParser.parseString(FileUtils.readFileToString(jsonFile, StandardCharsets.UTF_8))
-                .getAsJsonObject();
-        for (Map.Entry<String, JsonElement> entry : root.entrySet()) {
-            ret.put(entry.getKey(), Utilities.GSON.fromJson(entry.getValue(), MCInjectorStruct.class));
+        try (Reader reader = Files.newBufferedReader(jsonFile.toPath(), StandardCharsets.UTF_8)) {
+            final Map<String, MCInjectorStruct> ret = COMPACT_GSON.fromJson(reader, STRUCT_MAP_TYPE);
+            return ret == null ? new HashMap<>() : ret;
+        }
+    }
+
+    public static void saveMCIJson(Map<String, MCInjectorStruct> config, File jsonFile) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(jsonFile.toPath(), StandardCharsets.UTF_8)) {
+            COMPACT_GSON.toJson(config, STRUCT_MAP_TYPE, writer);
+        }
+    }
+
+    /**
+     * Indexes the inner class attributes of the config by the inner class name, only including the attributes stored
+     * in the inner class itself or in its top-level class, the two places access transformers are applied to.
+     */
+    public static Map<String, List<InnerClass>> indexInnerClasses(Map<String, MCInjectorStruct> config) {
+        final Map<String, List<InnerClass>> index = new HashMap<>();
+        for (Map.Entry<String, MCInjectorStruct> entry : config.entrySet()) {
+            final List<InnerClass> innerClasses = entry.getValue().innerClasses;
+            if (innerClasses == null) {
+                continue;
+            }
+            final String className = entry.getKey();
+            for (InnerClass inner : innerClasses) {
+                final String name = inner.inner_class;
+                final int dollar = name.indexOf('$');
+                if (name.equals(className) || (dollar > 0 && name.substring(0, dollar).equals(className))) {
+                    index.computeIfAbsent(name, k -> new ArrayList<>(2)).add(inner);
+                }
+            }
         }
-        return ret;
+        return index;
     }
 }
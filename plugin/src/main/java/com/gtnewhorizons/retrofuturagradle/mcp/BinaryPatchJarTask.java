@@ -1,15 +1,12 @@
 package com.gtnewhorizons.retrofuturagradle.mcp;
 
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.HashSet;
+import java.io.InputStream;
 import java.util.Map;
-import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.jar.JarOutputStream;
@@ -17,7 +14,6 @@ import java.util.regex.Pattern;
 import java.util.zip.Adler32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import javax.inject.Inject;
 
@@ -43,6 +39,7 @@ import com.gtnewhorizons.retrofuturagradle.fg12shadow.com.nothome.delta.GDiffPat
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
 
 import lzma.sdk.lzma.Decoder;
 import lzma.streams.LzmaInputStream;
@@ -81,25 +78,17 @@ public abstract class BinaryPatchJarTask extends DefaultTask implements IJarTran
         final File outputJar = getOutputJar().get().getAsFile();
         FileUtils.deleteQuietly(outputJar);
 
-        final Set<String> processed = new HashSet<>();
-
+        final ParallelJarWriter out = new ParallelJarWriter();
         final Adler32 hasher = new Adler32();
-        try (final ZipFile inZip = new ZipFile(inputJar);
-                final FileOutputStream fos = FileUtils.openOutputStream(outputJar);
-                final BufferedOutputStream bos = new BufferedOutputStream(fos);
-                final ZipOutputStream out = new ZipOutputStream(bos)) {
+        try (final ZipFile inZip = new ZipFile(inputJar)) {
             // Apply patches
             for (ZipEntry e : new IteratorIterable<>(new EnumerationIterator<>(inZip.entries()))) {
                 if (e.getName().contains("META-INF")) {
                     continue;
                 }
                 if (e.isDirectory()) {
-                    out.putNextEntry(e);
+                    out.putDirectory(e.getName());
                 } else {
-                    final ZipEntry newEntry = new ZipEntry(e.getName());
-                    e.setTime(newEntry.getTime());
-                    out.putNextEntry(newEntry);
-
                     final byte[] data = IOUtils.toByteArray(inZip.getInputStream(e));
                     ClassPatch patch = patches.get(e.getName().replace('\\', '/'));
 
@@ -117,56 +106,44 @@ public abstract class BinaryPatchJarTask extends DefaultTask implements IJarTran
                         }
                         patcher.patch(data, patch.patch);
                     }
-                    out.write(data);
-                    out.closeEntry();
+                    out.put(e.getName(), data);
                 }
-                processed.add(e.getName());
             }
-            // Copy extra classes
-            {
-                final FileTree tree = getFileOperations().zipTree(getExtraClassesJar().getAsFile().get());
-                tree.visit(fvd -> {
-                    if (fvd.isDirectory()) {
-                        return;
-                    }
-                    final String name = fvd.getRelativePath().toString().replace('\\', '/');
-                    if (processed.contains(name)) {
-                        return;
-                    }
-                    ZipEntry newEntry = new ZipEntry(name);
-                    newEntry.setTime(fvd.getLastModified());
-                    try {
-                        out.putNextEntry(newEntry);
-                        out.write(IOUtils.toByteArray(fvd.open()));
-                        out.closeEntry();
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
-                    processed.add(name);
-                });
-            }
-            // Copy resources
-            getExtraResourcesTree().visit(fvd -> {
+        }
+        // Copy extra classes
+        {
+            final FileTree tree = getFileOperations().zipTree(getExtraClassesJar().getAsFile().get());
+            tree.visit(fvd -> {
                 if (fvd.isDirectory()) {
                     return;
                 }
+                final String name = fvd.getRelativePath().toString().replace('\\', '/');
+                if (out.contains(name)) {
+                    return;
+                }
                 try {
-                    final String name = fvd.getRelativePath().toString().replace('\\', '/');
-                    if (!processed.contains(name)) {
-                        final ZipEntry newEntry = new ZipEntry(name);
-                        newEntry.setTime(fvd.getLastModified());
-                        out.putNextEntry(newEntry);
-                        IOUtils.copy(fvd.open(), out);
-                        processed.add(name);
-                        out.closeEntry();
-                    }
+                    out.put(name, IOUtils.toByteArray(fvd.open()));
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
             });
-            out.flush();
-            bos.flush();
         }
+        // Copy resources
+        getExtraResourcesTree().visit(fvd -> {
+            if (fvd.isDirectory()) {
+                return;
+            }
+            final String name = fvd.getRelativePath().toString().replace('\\', '/');
+            if (out.contains(name)) {
+                return;
+            }
+            try (final InputStream is = fvd.open()) {
+                out.put(name, IOUtils.toByteArray(is));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        out.write(outputJar);
     }
 
     private static Map<String, ClassPatch> loadPatches(File patchesLzmaFile) throws IOException {
@@ -6,7 +6,7 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -27,6 +27,7 @@ import org.gradle.api.provider.Property;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputDirectory;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
@@ -37,21 +38,26 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.com.github.abrarsyed.jastyle.ASFormatter;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.com.github.abrarsyed.jastyle.OptParser;
+import com.gtnewhorizons.retrofuturagradle.fgpatchers.FFClassIndex;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.FFPatcher;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.FmlCleanup;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.GLConstantFixer;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.McpCleanupFg12;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.McpCleanupFg23;
+import com.gtnewhorizons.retrofuturagradle.util.CacheManager;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.SourceStore;
+import com.gtnewhorizons.retrofuturagradle.util.StageProfiler;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 import com.gtnewhorizons.retrofuturagradle.util.patching.ContextualPatch;
+import com.gtnewhorizons.retrofuturagradle.util.patching.ParallelPatchEngine;
 
 public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJarTransformTask {
 
     private Map<String, byte[]> loadedResources = new HashMap<>();
-    private Map<String, String> loadedSources = new HashMap<>();
+    private Map<String, String> loadedSources = new SourceStore();
 
     @InputDirectory
     @PathSensitive(PathSensitivity.RELATIVE)
@@ -69,18 +75,66 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
     @PathSensitive(PathSensitivity.RELATIVE)
     public abstract DirectoryProperty getPatchesInjectDir();
 
+    /**
+     * Whether the input jar already had the FF patches applied by {@link DecompileTask#getApplyFfPatches()}
+     */
+    @Input
+    public abstract Property<Boolean> getInputFfPatched();
+
+    /**
+     * Where to memoise astyle output across runs, formatting isn't memoised if unset
+     */
+    @Internal
+    public abstract DirectoryProperty getFormatterCacheDir();
+
+    /**
+     * The class jar the input was decompiled from, read to skip FF patch passes that can't change a file. Doesn't
+     * influence the output.
+     */
+    @Internal
+    public abstract RegularFileProperty getClassJar();
+
+    /**
+     * Whether to record the time and allocations every file takes in every stage, and write them to
+     * {@link #getProfileReport()}
+     */
+    @Internal
+    public abstract Property<Boolean> getProfile();
+
+    @Internal
+    public abstract RegularFileProperty getProfileReport();
+
+    /**
+     * How many of the slowest files to list per stage in the profile report
+     */
+    @Internal
+    public abstract Property<Integer> getProfileTopN();
+
     @Override
     public MessageDigestConsumer hashInputs() {
         return HashUtils.addPropertyToHash(getPatches()).andThen(HashUtils.addPropertyToHash(getAstyleConfig()))
                 .andThen(HashUtils.addPropertyToHash(getMinorMcVersion()))
-                .andThen(HashUtils.addPropertyToHash(getPatchesInjectDir()));
+                .andThen(HashUtils.addPropertyToHash(getPatchesInjectDir()))
+                .andThen(HashUtils.addPropertyToHash(getInputFfPatched()));
     }
 
     private File taskTempDir;
+    private FormattedSourceCache formatterCache;
+    private StageProfiler profiler = StageProfiler.DISABLED;
+
+    private static final String STAGE_FF_PATCHES = "ffPatches";
+    private static final String STAGE_MCP_PATCHES = "mcpPatches";
+    private static final String STAGE_MCP_CLEANUP = "mcpCleanup";
+    private static final String STAGE_GL_FIXER = "glFixer";
+    private static final String STAGE_FORMATTER = "formatter";
+    private static final String STAGE_PACKAGE_INFO = "packageInfo";
 
     @Inject
     public CleanupDecompiledJarTask() {
         getMinorMcVersion().convention(7);
+        getInputFfPatched().convention(false);
+        getProfile().convention(false);
+        getProfileTopN().convention(25);
     }
 
     @TaskAction
@@ -88,12 +142,18 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
         taskTempDir = getTemporaryDir();
         loadedResources.clear();
         loadedSources.clear();
-
-        getLogger().lifecycle("Fixup stage 1 - applying FF patches");
-        final long pre1Ms = System.currentTimeMillis();
-        final File ffPatched = loadAndApplyFfPatches(getInputJar().get().getAsFile());
-        final long post1Ms = System.currentTimeMillis();
-        getLogger().lifecycle("  Stage 1 took " + (post1Ms - pre1Ms) + " ms");
+        profiler = getProfile().get() ? new StageProfiler() : StageProfiler.DISABLED;
+
+        if (getInputFfPatched().get()) {
+            getLogger().lifecycle("Fixup stage 1 - FF patches were already applied during decompilation");
+            Utilities.loadMemoryJar(getInputJar().get().getAsFile(), loadedResources, loadedSources);
+        } else {
+            getLogger().lifecycle("Fixup stage 1 - applying FF patches");
+            final long pre1Ms = System.currentTimeMillis();
+            final File ffPatched = loadAndApplyFfPatches(getInputJar().get().getAsFile());
+            final long post1Ms = System.currentTimeMillis();
+            getLogger().lifecycle("  Stage 1 took " + (post1Ms - pre1Ms) + " ms");
+        }
 
         getLogger().lifecycle("Fixup stage 2 - applying MCP patches");
         final long pre2Ms = System.currentTimeMillis();
@@ -105,7 +165,17 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
         final long pre3Ms = System.currentTimeMillis();
         final File mcpCleaned = applyMcpCleanup();
         final long post3Ms = System.currentTimeMillis();
-        getLogger().lifecycle("  Stage 3 took " + (post3Ms - pre3Ms) + " ms");
+        if (formatterCache != null) {
+            getLogger().lifecycle(
+                    "  Stage 3 took " + (post3Ms - pre3Ms)
+                            + " ms, astyle cache: "
+                            + formatterCache.getHits()
+                            + " hits, "
+                            + formatterCache.getMisses()
+                            + " misses");
+        } else {
+            getLogger().lifecycle("  Stage 3 took " + (post3Ms - pre3Ms) + " ms");
+        }
 
         final int mcMinor = getMinorMcVersion().get();
         if (mcMinor > 8) {
@@ -118,27 +188,61 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
 
         getLogger().lifecycle("Saving the fixed-up jar");
         Utilities.saveMemoryJar(loadedResources, loadedSources, getOutputJar().get().getAsFile(), false);
+
+        if (profiler.isEnabled()) {
+            final File report = getProfileReport().get().getAsFile();
+            profiler.writeReport(report, getPath(), getProfileTopN().get());
+            getLogger().lifecycle("Wrote the cleanup profile to " + report.getPath());
+            profiler = StageProfiler.DISABLED;
+        }
     }
 
     private File loadAndApplyFfPatches(File decompiled) throws IOException {
         Utilities.loadMemoryJar(decompiled, loadedResources, loadedSources);
         final int mcMinor = getMinorMcVersion().get();
 
-        loadedSources = loadedSources.entrySet().parallelStream().map(entry -> {
+        final FFClassIndex classIndex = (mcMinor <= 8 && getClassJar().isPresent())
+                ? FFClassIndex.read(getClassJar().get().getAsFile())
+                : null;
+        loadedSources = new SourceStore(applyFfPatches(mcMinor, loadedSources, classIndex, profiler));
+
+        return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "ffpatcher.jar"), true);
+    }
+
+    /**
+     * Identifies the FF patches in the keys of cached decompiler output that already has them applied, see
+     * {@link DecompileTask#getApplyFfPatches()}
+     */
+    // [UPDATE] Bump when the output of the FF patches changes
+    public static final int FF_PATCHES_VERSION = 1;
+
+    /**
+     * Applies the post-fernflower regex fixups (stage 1 of the cleanup) to the given sources in parallel. Every file is
+     * patched independently, so this can also run on parts of the decompiled jar as they are produced.
+     *
+     * @param classIndex The classes the sources were decompiled from, optional
+     */
+    public static Map<String, String> applyFfPatches(int mcMinor, Map<String, String> sources,
+            FFClassIndex classIndex) {
+        return applyFfPatches(mcMinor, sources, classIndex, StageProfiler.DISABLED);
+    }
+
+    private static Map<String, String> applyFfPatches(int mcMinor, Map<String, String> sources,
+            FFClassIndex classIndex, StageProfiler profiler) {
+        return sources.entrySet().parallelStream().map(entry -> {
             try {
-                final String patched;
-                if (mcMinor <= 8) {
-                    patched = FFPatcher.processFile(entry.getKey(), entry.getValue(), true);
-                } else {
-                    patched = com.gtnewhorizons.retrofuturagradle.mcp.fg23.FFPatcher.processFile(entry.getValue());
-                }
+                final String patched = profiler.measure(STAGE_FF_PATCHES, entry.getKey(), () -> {
+                    if (mcMinor <= 8) {
+                        return FFPatcher.processFile(entry.getKey(), entry.getValue(), true, classIndex);
+                    } else {
+                        return com.gtnewhorizons.retrofuturagradle.mcp.fg23.FFPatcher.processFile(entry.getValue());
+                    }
+                });
                 return MutablePair.of(entry.getKey(), patched);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }).collect(Collectors.toConcurrentMap(MutablePair::getLeft, MutablePair::getRight));
-
-        return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "ffpatcher.jar"), true);
     }
 
     private File applyMcpPatches() throws IOException {
@@ -151,33 +255,20 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
             patches.put(base, patchFile);
         }
 
+        // The first non-failing version of every patch gets applied
+        final ParallelPatchEngine engine = new ParallelPatchEngine(loadedSources, 1)
+                .setProfiler(profiler, STAGE_MCP_PATCHES);
         for (String key : patches.keySet()) {
-            // Apply first non-failing patch
-            final Collection<File> patchFiles = patches.get(key);
-            ContextualPatch patch = null;
-            for (File patchFile : patchFiles) {
-                patch = ContextualPatch.create(
-                        FileUtils.readFileToString(patchFile, StandardCharsets.UTF_8),
-                        new Utilities.InMemoryJarContextProvider(loadedSources, 1));
-                patch.setAccessC14N(true);
-                final List<ContextualPatch.PatchReport> errors;
-                try {
-                    errors = patch.patch(true);
-                } catch (PatchException pe) {
-                    throw new RuntimeException(pe);
-                }
-
-                if (errors.stream().allMatch(e -> e.getStatus().isSuccess())) {
-                    break;
-                }
+            final List<String> candidates = new ArrayList<>();
+            for (File patchFile : patches.get(key)) {
+                candidates.add(FileUtils.readFileToString(patchFile, StandardCharsets.UTF_8));
             }
-            final List<ContextualPatch.PatchReport> errors;
-            try {
-                errors = patch.patch(false);
-            } catch (PatchException pe) {
-                throw new RuntimeException(pe);
-            }
-            printPatchErrors(errors);
+            engine.add(key, candidates);
+        }
+        try {
+            printPatchErrors(engine.apply());
+        } catch (PatchException pe) {
+            throw new RuntimeException(pe);
         }
 
         return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "mcppatched.jar"), true);
@@ -197,6 +288,17 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
 
         final GLConstantFixer glFixer = new GLConstantFixer();
 
+        if (getFormatterCacheDir().isPresent()) {
+            final CacheManager cacheManager = CacheManager.get(getProject());
+            formatterCache = new FormattedSourceCache(
+                    cacheManager,
+                    getFormatterCacheDir().get().getAsFile(),
+                    (mcMinor <= 8) ? "fg12" : "fg23",
+                    astyleOptions);
+        } else {
+            formatterCache = null;
+        }
+
         loadedSources = loadedSources.entrySet().parallelStream().map(entry -> {
             try {
                 final String filePath = entry.getKey();
@@ -222,31 +324,48 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
                     }
                 }
 
-                if (mcMinor <= 8) {
-                    text = McpCleanupFg12.stripComments(text);
-                    text = McpCleanupFg12.fixImports(text);
-                    text = McpCleanupFg12.cleanup(text);
-                } else {
-                    text = McpCleanupFg23.stripComments(text);
-                    text = McpCleanupFg23.fixImports(text);
-                    text = McpCleanupFg23.cleanup(text);
-                }
-
-                text = glFixer.fixOGL(text);
-
-                try (Reader reader = new StringReader(text); StringWriter writer = new StringWriter()) {
+                final String uncleaned = text;
+                text = profiler.measure(STAGE_MCP_CLEANUP, filePath, () -> {
+                    String cleaned;
                     if (mcMinor <= 8) {
-                        formatterFG12.format(reader, writer);
+                        cleaned = McpCleanupFg12.stripCommentsAndFixImports(uncleaned);
+                        cleaned = McpCleanupFg12.cleanup(cleaned);
                     } else {
-                        formatterFG23.format(reader, writer);
+                        cleaned = McpCleanupFg23.stripCommentsAndFixImports(uncleaned);
+                        cleaned = McpCleanupFg23.cleanup(cleaned);
                     }
-                    text = writer.toString();
-                }
+                    return cleaned;
+                });
+
+                final String unfixed = text;
+                text = profiler.measure(STAGE_GL_FIXER, filePath, () -> glFixer.fixOGL(unfixed));
+
+                final ASFormatter finalFormatterFG12 = formatterFG12;
+                final com.gtnewhorizons.retrofuturagradle.fg23shadow.com.github.abrarsyed.jastyle.ASFormatter finalFormatterFG23 = formatterFG23;
+                final FormattedSourceCache.Formatter astyle = unformatted -> {
+                    try (Reader reader = new StringReader(unformatted); StringWriter writer = new StringWriter()) {
+                        if (mcMinor <= 8) {
+                            finalFormatterFG12.format(reader, writer);
+                        } else {
+                            finalFormatterFG23.format(reader, writer);
+                        }
+                        return writer.toString();
+                    }
+                };
+                final String unformatted = text;
+                text = profiler.measure(
+                        STAGE_FORMATTER,
+                        filePath,
+                        () -> (formatterCache != null) ? formatterCache.format(unformatted, astyle)
+                                : astyle.format(unformatted));
 
                 if (mcMinor <= 8) {
-                    text = BEFORE_RULE.matcher(text).replaceAll("$1");
-                    text = AFTER_RULE.matcher(text).replaceAll("$1");
-                    text = FmlCleanup.renameClass(text);
+                    final String formatted = text;
+                    text = profiler.measure(STAGE_MCP_CLEANUP, filePath, () -> {
+                        String cleaned = BEFORE_RULE.matcher(formatted).replaceAll("$1");
+                        cleaned = AFTER_RULE.matcher(cleaned).replaceAll("$1");
+                        return FmlCleanup.renameClass(cleaned);
+                    });
                 }
 
                 if (mcMinor > 8 && !text.endsWith(System.lineSeparator())) {
@@ -258,6 +377,10 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
                 throw new RuntimeException(e);
             }
         }).collect(Collectors.toConcurrentMap(MutablePair::getLeft, MutablePair::getRight));
+        loadedSources = new SourceStore(loadedSources);
+        if (formatterCache != null) {
+            CacheManager.get(getProject()).flush();
+        }
 
         return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "mcpcleanup.jar"), true);
     }
@@ -276,8 +399,12 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
             if (pkgInfo.isFile()) {
                 final String template = FileUtils.readFileToString(pkgInfo, StandardCharsets.UTF_8);
                 for (String pkg : seenPackages) {
-                    final String info = template.replace("{PACKAGE}", pkg.replace('/', '.'));
-                    loadedSources.put(pkg + "/package-info.java", info);
+                    final String path = pkg + "/package-info.java";
+                    final String info = profiler.measure(
+                            STAGE_PACKAGE_INFO,
+                            path,
+                            () -> template.replace("{PACKAGE}", pkg.replace('/', '.')));
+                    loadedSources.put(path, info);
                 }
                 getLogger().lifecycle("  Injected {} package-infos", seenPackages.size());
             }
@@ -289,7 +416,10 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
                 for (File commonFile : this.getProject().fileTree(common)) {
                     String absPath = commonFile.getAbsolutePath().replace('\\', '/');
                     String relPath = absPath.substring(root.length());
-                    final String contents = FileUtils.readFileToString(commonFile, StandardCharsets.UTF_8);
+                    final String contents = profiler.measure(
+                            STAGE_PACKAGE_INFO,
+                            relPath,
+                            () -> FileUtils.readFileToString(commonFile, StandardCharsets.UTF_8));
                     loadedSources.put(relPath, contents);
                 }
             }
@@ -298,9 +428,11 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
         return Utilities.saveMemoryJar(loadedResources, loadedSources, new File(taskTempDir, "pkginject.jar"), true);
     }
 
-    private void printPatchErrors(List<ContextualPatch.PatchReport> errors) throws IOException {
+    private void printPatchErrors(List<ParallelPatchEngine.Result> results) throws IOException {
         boolean fuzzed = false;
-        for (ContextualPatch.PatchReport report : errors) {
+        Throwable failure = null;
+        for (ContextualPatch.PatchReport report : results.stream().flatMap(r -> r.reports.stream())
+                .collect(Collectors.toList())) {
             if (!report.getStatus().isSuccess()) {
                 getLogger().log(LogLevel.ERROR, "Patching failed: " + report.getTarget(), report.getFailure());
 
@@ -310,7 +442,9 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
                     }
                 }
 
-                throw new RuntimeException(report.getFailure());
+                if (failure == null) {
+                    failure = report.getFailure();
+                }
             } else if (report.getStatus() == ContextualPatch.PatchStatus.Fuzzed) // catch fuzzed patches
             {
                 getLogger().log(LogLevel.INFO, "Patching fuzzed: " + report.getTarget(), report.getFailure());
@@ -328,5 +462,8 @@ public abstract class CleanupDecompiledJarTask extends DefaultTask implements IJ
         if (fuzzed) {
             getLogger().lifecycle("Patches Fuzzed!");
         }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
     }
 }
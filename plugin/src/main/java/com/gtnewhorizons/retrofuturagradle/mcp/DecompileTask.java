@@ -2,58 +2,82 @@ package com.gtnewhorizons.retrofuturagradle.mcp;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.Project;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
 import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.CacheableTask;
 import org.gradle.api.tasks.CompileClasspath;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
 import org.gradle.api.tasks.InputFiles;
 import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.Optional;
-import org.gradle.api.tasks.OutputDirectory;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.gradle.jvm.toolchain.JavaInstallationMetadata;
 import org.gradle.jvm.toolchain.JavaLauncher;
+import org.gradle.process.ExecOperations;
 import org.gradle.process.JavaForkOptions;
-import org.gradle.work.DisableCachingByDefault;
 import org.gradle.workers.WorkAction;
 import org.gradle.workers.WorkParameters;
 import org.gradle.workers.WorkQueue;
 import org.gradle.workers.WorkerExecutor;
 
+import com.gtnewhorizons.retrofuturagradle.BuildConfig;
 import com.gtnewhorizons.retrofuturagradle.Constants;
-import com.gtnewhorizons.retrofuturagradle.MinecraftExtension;
+import com.gtnewhorizons.retrofuturagradle.fgpatchers.FFClassIndex;
 import com.gtnewhorizons.retrofuturagradle.fg23shadow.org.jetbrains.java.decompiler.main.DecompilerContext;
 import com.gtnewhorizons.retrofuturagradle.fg23shadow.org.jetbrains.java.decompiler.main.decompiler.BaseDecompiler;
 import com.gtnewhorizons.retrofuturagradle.fg23shadow.org.jetbrains.java.decompiler.main.decompiler.PrintStreamLogger;
 import com.gtnewhorizons.retrofuturagradle.fg23shadow.org.jetbrains.java.decompiler.main.extern.IFernflowerPreferences;
+import com.gtnewhorizons.retrofuturagradle.fg23shadow.org.jetbrains.java.decompiler.main.extern.IResultSaver;
 import com.gtnewhorizons.retrofuturagradle.mcp.fg23.AdvancedJadRenamer;
 import com.gtnewhorizons.retrofuturagradle.mcp.fg23.ArtifactSaver;
+import com.gtnewhorizons.retrofuturagradle.mcp.fg23.FfPatchingSaver;
 import com.gtnewhorizons.retrofuturagradle.mcp.fg23.ByteCodeProvider;
+import com.gtnewhorizons.retrofuturagradle.util.CacheManager;
+import com.gtnewhorizons.retrofuturagradle.util.FileFingerprintStore;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.ReadOnlyJar;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
-@DisableCachingByDefault(because = "Uses an internal caching mechanism")
+@CacheableTask
 public abstract class DecompileTask extends DefaultTask implements IJarTransformTask {
 
-    @OutputDirectory
+    /** Name of the per-class cache directory inside the fernflower cache */
+    public static final String CLASS_CACHE_DIR_NAME = "classes";
+    /** {@link CacheManager} category of the whole decompiled jars */
+    public static final String JAR_CACHE_CATEGORY = "fernflower-jar";
+
+    /**
+     * The shared local fernflower cache, consulted before the Gradle build cache is even involved
+     */
+    @Internal
     public abstract DirectoryProperty getCacheDir();
 
     @InputFile
@@ -64,6 +88,19 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
     @Input
     public abstract Property<Integer> getMinorMcVersion();
 
+    /**
+     * Extra arguments passed to the FG1.2 fernflower, unused for FG2.3
+     */
+    @Input
+    public abstract ListProperty<String> getFernflowerArguments();
+
+    /**
+     * Whether to apply the FF patches (the first {@link CleanupDecompiledJarTask} stage) to the classes while they are
+     * still being decompiled, instead of leaving raw fernflower output for the cleanup task
+     */
+    @Input
+    public abstract Property<Boolean> getApplyFfPatches();
+
     @InputFiles
     @CompileClasspath
     public abstract ConfigurableFileCollection getClasspath();
@@ -74,14 +111,54 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
     @Internal
     public abstract Property<JavaLauncher> getJava17Launcher();
 
+    /**
+     * The Java runtime fernflower runs on, as its output can differ between JVM versions and vendors
+     */
+    @Input
+    public Provider<String> getDecompilerRuntime() {
+        return getMinorMcVersion().flatMap(minor -> (minor <= 8) ? getJava17Launcher() : getJava8Launcher())
+                .map(launcher -> {
+                    final JavaInstallationMetadata metadata = launcher.getMetadata();
+                    return metadata.getVendor() + " " + metadata.getJavaRuntimeVersion();
+                });
+    }
+
+    /**
+     * The maximum number of fernflower processes to split the classes to decompile between
+     */
+    @Internal
+    public abstract Property<Integer> getShardCount();
+
+    /**
+     * Whether the decompiled jar is stored in and loaded from the Gradle build cache
+     */
+    @Internal
+    public abstract Property<Boolean> getUseBuildCache();
+
+    /**
+     * Whether to decompile the whole jar again after only some classes were decompiled, and fail if any source differs
+     * from the one assembled from the per-class cache. Set with the {@code rfg.verifyDecompiledClassCache} Gradle
+     * property.
+     */
+    @Internal
+    public abstract Property<Boolean> getVerifyClassCache();
+
     @Inject
     public DecompileTask() {
         getMinorMcVersion().convention(7);
+        getShardCount().convention(1);
+        getFernflowerArguments().convention(Collections.emptyList());
+        getUseBuildCache().convention(true);
+        getApplyFfPatches().convention(false);
+        getVerifyClassCache().convention(
+                getProject().getProviders().gradleProperty("rfg.verifyDecompiledClassCache").map(Boolean::parseBoolean)
+                        .orElse(false));
+        getOutputs().cacheIf("Build cache use is enabled", t -> getUseBuildCache().get());
     }
 
     @Override
     public MessageDigestConsumer hashInputs() {
-        return HashUtils.addPropertyToHash(getFernflower());
+        return HashUtils.addPropertyToHash(getFernflower()).andThen(HashUtils.addPropertyToHash(getApplyFfPatches()));
     }
 
     @Inject
@@ -92,75 +169,323 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
         final File taskTempDir = getTemporaryDir();
         final int minorMcVer = getMinorMcVersion().get();
 
-        final DigestUtils digests = new DigestUtils(DigestUtils.getSha256Digest());
-        final String fernflowerChecksum = (minorMcVer <= 8) ? digests.digestAsHex(getFernflower().get().getAsFile())
+        final FileFingerprintStore fingerprints = FileFingerprintStore.get(getProject());
+        final String fernflowerChecksum = (minorMcVer <= 8)
+                ? Hex.encodeHexString(fingerprints.sha256(getFernflower().get().getAsFile()))
                 : "1.0.342";
-        final String inputFileChecksum = digests.digestAsHex(getInputJar().get().getAsFile());
-        final File cachedOutputFile = new File(
-                getCacheDir().get().getAsFile(),
-                fernflowerChecksum + "-" + inputFileChecksum + ".jar");
+        final String inputFileChecksum = Hex.encodeHexString(fingerprints.sha256(getInputJar().get().getAsFile()));
+        final File cacheDir = getCacheDir().get().getAsFile();
+        FileUtils.forceMkdir(cacheDir);
+        final String cachedOutputName = fernflowerChecksum + "-"
+                + inputFileChecksum
+                + (getApplyFfPatches().get() ? "-ffpatched-" + getFfPatchesKey() : "")
+                + ".jar";
+        final File cachedOutputFile = new File(cacheDir, cachedOutputName);
+        final CacheManager cacheManager = CacheManager.get(getProject());
         if (cachedOutputFile.exists()) {
             getLogger().lifecycle("Using cached decompiled jar from " + cachedOutputFile.getPath());
-            FileUtils.copyFile(cachedOutputFile, getOutputJar().get().getAsFile());
+            ReadOnlyJar.linkOrCopy(cachedOutputFile, getOutputJar().get().getAsFile());
+            cacheManager.recordHit(JAR_CACHE_CATEGORY, cachedOutputFile);
+            cacheManager.flush();
             return;
         } else {
             getLogger().lifecycle(
                     "Didn't find cached decompiled jar, decompiling and saving to " + cachedOutputFile.getPath());
+            cacheManager.recordMiss(JAR_CACHE_CATEGORY);
         }
 
-        getLogger().lifecycle("Decompiling the srg jar with fernflower");
-        final long preDecompileMs = System.currentTimeMillis();
+        final File inputJar = getInputJar().get().getAsFile();
+        final DecompiledClassCache classCache = new DecompiledClassCache(
+                cacheManager,
+                new File(cacheDir, CLASS_CACHE_DIR_NAME),
+                fernflowerChecksum + "-" + getDecompilerConfigKey(minorMcVer, fingerprints),
+                inputJar);
+        final int missingCount = classCache.getMissingUnits().size();
 
-        Project project = getProject();
-        final File ffoutdir = new File(taskTempDir, "ff-out");
-        ffoutdir.mkdirs();
-        final File ffinpcopy = new File(taskTempDir, "mc.jar");
-        final File ffoutfile = new File(ffoutdir, "mc.jar");
-        FileUtils.copyFile(getInputJar().get().getAsFile(), ffinpcopy);
-        if (minorMcVer <= 8) {
-            decompileFg12(project, ffoutdir, ffinpcopy);
+        final long preDecompileMs = System.currentTimeMillis();
+        if (missingCount == 0) {
+            getLogger().lifecycle("Using cached decompiled sources for all {} classes", classCache.getUnitCount());
         } else {
-            decompileFg23(project, ffoutdir, ffinpcopy);
+            getLogger().lifecycle(
+                    "Decompiling {} of {} classes of the srg jar with fernflower",
+                    missingCount,
+                    classCache.getUnitCount());
+
+            final List<Set<String>> shards = classCache.partitionMissingUnits(getShardCount().get());
+            // The FG1.2 fernflower only saves sources one by one as it goes when decompiling a directory, so the FF
+            // patches can only overlap with it when it is given the classes that way
+            final boolean patchFg12Output = minorMcVer <= 8 && getApplyFfPatches().get();
+            final List<DecompileJob> jobs = new ArrayList<>(shards.size());
+            final List<File> tempFiles = new ArrayList<>();
+            final ReadOnlyJar linkedInput;
+            if (!patchFg12Output && shards.size() == 1 && missingCount == classCache.getUnitCount()) {
+                // Nothing cached, link the input jar instead of copying it.
+                // Fernflower names its output after the input file, so the input always goes in as mc.jar
+                linkedInput = ReadOnlyJar.linkAs(inputJar, new File(taskTempDir, "mc.jar"));
+                jobs.add(new DecompileJob(linkedInput.getFile(), null, new File(taskTempDir, "ff-out"), shards.get(0)));
+            } else {
+                // Only decompile the changed classes of every shard, with the rest of the jar as a library for context
+                linkedInput = null;
+                for (int i = 0; i < shards.size(); i++) {
+                    final Set<String> shard = shards.get(i);
+                    final File shardDir = shards.size() == 1 ? taskTempDir : new File(taskTempDir, "shard-" + i);
+                    final File ffinpfile;
+                    if (patchFg12Output) {
+                        ffinpfile = new File(shardDir, "mc");
+                        classCache.writeClassDirectory(ffinpfile, shard::contains);
+                    } else {
+                        ffinpfile = new File(shardDir, "mc.jar");
+                        classCache.writeClasses(ffinpfile, shard::contains);
+                    }
+                    tempFiles.add(ffinpfile);
+                    File fflibfile = null;
+                    if (shard.size() < classCache.getUnitCount()) {
+                        fflibfile = new File(shardDir, "mc-context.jar");
+                        classCache.writeClasses(fflibfile, unit -> !shard.contains(unit));
+                        tempFiles.add(fflibfile);
+                    }
+                    jobs.add(new DecompileJob(ffinpfile, fflibfile, new File(shardDir, "ff-out"), shard));
+                }
+            }
+            if (jobs.size() > 1) {
+                getLogger().lifecycle("  Running {} fernflower instances in parallel", jobs.size());
+            }
+            try {
+                for (DecompileJob job : jobs) {
+                    if (job.inputJar.isDirectory()) {
+                        FileUtils.deleteDirectory(job.outputDir);
+                    }
+                    job.outputDir.mkdirs();
+                    FileUtils.deleteQuietly(job.getOutputJar());
+                }
+                if (patchFg12Output) {
+                    decompileFg12WhilePatching(jobs, minorMcVer, FFClassIndex.read(inputJar));
+                } else if (minorMcVer <= 8) {
+                    decompileFg12(jobs);
+                } else {
+                    decompileFg23(jobs);
+                }
+            } finally {
+                if (linkedInput != null) {
+                    linkedInput.close();
+                }
+            }
+            for (DecompileJob job : jobs) {
+                classCache.storeDecompiled(job.getOutputJar(), job.units);
+                tempFiles.add(job.getOutputJar());
+                if (job.inputJar.isDirectory()) {
+                    tempFiles.add(job.outputDir);
+                }
+            }
+            if (!Constants.DEBUG_NO_TMP_CLEANUP) {
+                tempFiles.forEach(FileUtils::deleteQuietly);
+            }
         }
-        FileUtils.delete(ffinpcopy);
 
+        // Write the result into the cache under a temporary name first, so other builds never see a partial jar
         FileUtils.forceMkdirParent(cachedOutputFile);
-        FileUtils.copyFile(ffoutfile, cachedOutputFile);
-        FileUtils.copyFile(ffoutfile, getOutputJar().get().getAsFile());
+        final File cacheTempFile = new File(cachedOutputFile.getPath() + ".tmp");
+        classCache.assemble(cacheTempFile);
+        if (getVerifyClassCache().get() && missingCount < classCache.getUnitCount()) {
+            verifyAgainstFullDecompile(inputJar, cacheTempFile, minorMcVer);
+        }
+        Utilities.moveAtomically(cacheTempFile, cachedOutputFile);
+        ReadOnlyJar.linkOrCopy(cachedOutputFile, getOutputJar().get().getAsFile());
+        cacheManager.register(JAR_CACHE_CATEGORY, cachedOutputFile);
+        cacheManager.flush();
 
         final long postDecompileMs = System.currentTimeMillis();
         getLogger().lifecycle("  Decompiling took " + (postDecompileMs - preDecompileMs) + " ms");
+    }
 
+    /**
+     * Decompiles the whole input jar in one go and fails if any source differs from the jar assembled out of cached and
+     * partially decompiled classes.
+     */
+    private void verifyAgainstFullDecompile(File inputJar, File assembledJar, int minorMcVer) throws IOException {
+        final File verifyDir = new File(getTemporaryDir(), "verify");
+        FileUtils.deleteQuietly(verifyDir);
+        final DecompileJob job;
+        try (final ReadOnlyJar linkedInput = ReadOnlyJar.linkAs(inputJar, new File(verifyDir, "mc.jar"))) {
+            job = new DecompileJob(linkedInput.getFile(), null, new File(verifyDir, "ff-out"), Collections.emptySet());
+            job.outputDir.mkdirs();
+            if (minorMcVer <= 8) {
+                decompileFg12(Collections.singletonList(job));
+            } else {
+                decompileFg23(Collections.singletonList(job));
+            }
+        }
+        final Map<String, String> expected = new HashMap<>();
+        final Map<String, String> actual = new HashMap<>();
+        Utilities.loadMemoryJar(job.getOutputJar(), new HashMap<>(), expected);
+        Utilities.loadMemoryJar(assembledJar, new HashMap<>(), actual);
+        final Set<String> mismatched = new TreeSet<>(expected.keySet());
+        mismatched.addAll(actual.keySet());
+        mismatched.removeIf(name -> Objects.equals(expected.get(name), actual.get(name)));
+        if (!mismatched.isEmpty()) {
+            throw new IllegalStateException(
+                    "Decompiled class cache output differs from a full decompile in " + mismatched.size()
+                            + " files, e.g. "
+                            + mismatched.iterator().next());
+        }
+        getLogger().lifecycle("  Decompiled class cache output matches a full decompile");
         if (!Constants.DEBUG_NO_TMP_CLEANUP) {
-            FileUtils.deleteQuietly(ffoutfile);
+            FileUtils.deleteQuietly(verifyDir);
         }
     }
 
-    private void decompileFg12(Project project, File ffoutdir, File ffinpcopy) {
-        project.javaexec(exec -> {
-            exec.classpath(getFernflower().get());
-            MinecraftExtension mcExt = project.getExtensions().findByType(MinecraftExtension.class);
-            List<String> args = new ArrayList<>(Objects.requireNonNull(mcExt).getFernflowerArguments().get());
-            args.add(ffinpcopy.getAbsolutePath());
-            args.add(ffoutdir.getAbsolutePath());
-            exec.args(args);
-            exec.setWorkingDir(getFernflower().get().getAsFile().getParentFile());
-            try {
-                exec.setStandardOutput(
-                        FileUtils.openOutputStream(
-                                FileUtils.getFile(project.getBuildDir(), MCPTasks.RFG_DIR, "fernflower_log.log")));
+    /**
+     * @return A short file name safe identifier of the FF patches applied while decompiling, so cached patched output
+     *         isn't reused after a plugin update changes them
+     */
+    private static String getFfPatchesKey() {
+        return DigestUtils
+                .sha256Hex(BuildConfig.PLUGIN_VERSION + "\0" + CleanupDecompiledJarTask.FF_PATCHES_VERSION)
+                .substring(0, 16);
+    }
+
+    /**
+     * @return A description of the decompiler runtime, options and libraries, for the per-class cache key
+     */
+    private String getDecompilerConfigKey(int minorMcVer, FileFingerprintStore fingerprints) {
+        final StringBuilder key = new StringBuilder();
+        key.append(getDecompilerRuntime().get()).append('|');
+        if (minorMcVer <= 8) {
+            key.append(String.join(" ", getFernflowerArguments().get()));
+        }
+        if (getApplyFfPatches().get()) {
+            key.append("|ffpatched:").append(getFfPatchesKey());
+        }
+        for (File lib : getClasspath().getFiles().stream().sorted().collect(Collectors.toList())) {
+            key.append('|').append(lib.getName());
+            if (lib.isFile()) {
+                key.append(':').append(Hex.encodeHexString(fingerprints.sha256(lib)));
+            } else if (lib.isDirectory()) {
+                for (File file : FileUtils.listFiles(lib, null, true).stream().sorted().collect(Collectors.toList())) {
+                    key.append(':').append(lib.toPath().relativize(file.toPath())).append('=')
+                            .append(Hex.encodeHexString(fingerprints.sha256(file)));
+                }
+            }
+        }
+        return DigestUtils.sha256Hex(key.toString());
+    }
+
+    /**
+     * One fernflower run over a subset of the top-level classes.
+     */
+    private static final class DecompileJob {
+
+        final File inputJar;
+        final @Nullable File contextJar;
+        final File outputDir;
+        final Set<String> units;
+
+        DecompileJob(File inputJar, @Nullable File contextJar, File outputDir, Set<String> units) {
+            this.inputJar = inputJar;
+            this.contextJar = contextJar;
+            this.outputDir = outputDir;
+            this.units = units;
+        }
+
+        /**
+         * @return The decompiled jar, which for a directory input gets packed next to the output directory the sources
+         *         were written into
+         */
+        File getOutputJar() {
+            if (inputJar.isDirectory()) {
+                return new File(outputDir.getPath() + ".jar");
+            }
+            return new File(outputDir, inputJar.getName());
+        }
+    }
+
+    private File getFernflowerLogFile(int job, int jobCount) {
+        final String name = jobCount == 1 ? "fernflower_log.log" : ("fernflower_log_shard" + job + ".log");
+        return FileUtils.getFile(getProject().getBuildDir(), MCPTasks.RFG_DIR, name);
+    }
+
+    /**
+     * Runs the FG1.2 fernflower over class directories and applies the FF patches to every source file as soon as it is
+     * written, instead of after the whole jar is decompiled.
+     */
+    private void decompileFg12WhilePatching(List<DecompileJob> jobs, int minorMcVer, FFClassIndex classIndex)
+            throws IOException {
+        final int patchedEarly;
+        try (final Fg12OutputPatcher patcher = new Fg12OutputPatcher(minorMcVer, classIndex)) {
+            for (DecompileJob job : jobs) {
+                patcher.watch(job.outputDir, job.getOutputJar());
+            }
+            patcher.start();
+            decompileFg12(jobs);
+            patchedEarly = patcher.finish();
+        }
+        final int total = jobs.stream().mapToInt(job -> job.units.size()).sum();
+        getLogger().lifecycle("  Applied the FF patches to {} of {} classes while decompiling", patchedEarly, total);
+    }
+
+    private void decompileFg12(List<DecompileJob> jobs) {
+        final List<String> ffArgs = getFernflowerArguments().get();
+        final File fernflower = getFernflower().get().getAsFile();
+        final String javaExe = getJava17Launcher().get().getExecutablePath().getAsFile().getAbsolutePath();
+        // Every work item forks its own fernflower process, so no isolation is needed for the items themselves
+        final WorkQueue queue = getWorkerExecutor().noIsolation();
+        for (int i = 0; i < jobs.size(); i++) {
+            final DecompileJob job = jobs.get(i);
+            final File logFile = getFernflowerLogFile(i, jobs.size());
+            queue.submit(Fg12DecompTask.class, args -> {
+                args.getFernflower().set(fernflower);
+                args.getJavaExecutable().set(javaExe);
+                List<String> allArgs = new ArrayList<>(ffArgs);
+                if (job.contextJar != null) {
+                    // Library sources are only analysed, not decompiled
+                    allArgs.add("-e=" + job.contextJar.getAbsolutePath());
+                }
+                allArgs.add(job.inputJar.getAbsolutePath());
+                allArgs.add(job.outputDir.getAbsolutePath());
+                args.getArguments().set(allArgs);
+                args.getLogFile().set(logFile);
+            });
+        }
+        queue.await();
+    }
+
+    public interface Fg12DecompArgs extends WorkParameters {
+
+        RegularFileProperty getFernflower();
+
+        Property<String> getJavaExecutable();
+
+        ListProperty<String> getArguments();
+
+        RegularFileProperty getLogFile();
+    }
+
+    public static abstract class Fg12DecompTask implements WorkAction<Fg12DecompArgs> {
+
+        @Inject
+        public abstract ExecOperations getExecOperations();
+
+        @Override
+        public void execute() {
+            final Fg12DecompArgs settings = getParameters();
+            final File fernflower = settings.getFernflower().get().getAsFile();
+            try (final OutputStream log = FileUtils.openOutputStream(settings.getLogFile().get().getAsFile())) {
+                getExecOperations().javaexec(exec -> {
+                    exec.classpath(fernflower);
+                    exec.args(settings.getArguments().get());
+                    exec.setWorkingDir(fernflower.getParentFile());
+                    exec.setStandardOutput(log);
+                    exec.setMinHeapSize("768M");
+                    exec.setMaxHeapSize("768M");
+                    exec.executable(settings.getJavaExecutable().get());
+                }).assertNormalExitValue();
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-            exec.setMinHeapSize("768M");
-            exec.setMaxHeapSize("768M");
-            final String javaExe = getJava17Launcher().get().getExecutablePath().getAsFile().getAbsolutePath();
-            exec.executable(javaExe);
-        }).assertNormalExitValue();
+        }
     }
 
-    private void decompileFg23(Project project, File ffoutdir, File ffinpcopy) {
-        final File tempDir = getTemporaryDir();
+    private void decompileFg23(List<DecompileJob> jobs) {
         final WorkQueue queue = getWorkerExecutor().processIsolation(pws -> {
             final JavaForkOptions fork = pws.getForkOptions();
             fork.setMinHeapSize("3072M");
@@ -170,14 +495,24 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
             fork.jvmArgs("-XX:+UnlockExperimentalVMOptions", "-XX:+UseG1GC", "-XX:+AggressiveOpts");
             fork.executable(javaExe);
         });
-        queue.submit(Fg23DecompTask.class, args -> {
-            // setup args
-            args.getTempDir().set(tempDir);
-            args.getLogFile().set(FileUtils.getFile(project.getBuildDir(), MCPTasks.RFG_DIR, "fernflower_log.log"));
-            args.getInputJar().set(ffinpcopy);
-            args.getOutputDir().set(ffoutdir);
-            args.getClasspath().setFrom(this.getClasspath());
-        });
+        // Gradle runs the submitted items in separate worker processes at once, up to --max-workers
+        for (int i = 0; i < jobs.size(); i++) {
+            final DecompileJob job = jobs.get(i);
+            final File tempDir = jobs.size() == 1 ? getTemporaryDir() : job.outputDir.getParentFile();
+            final File logFile = getFernflowerLogFile(i, jobs.size());
+            queue.submit(Fg23DecompTask.class, args -> {
+                // setup args
+                args.getTempDir().set(tempDir);
+                args.getLogFile().set(logFile);
+                args.getInputJar().set(job.inputJar);
+                args.getOutputDir().set(job.outputDir);
+                args.getApplyFfPatches().set(getApplyFfPatches());
+                args.getClasspath().setFrom(this.getClasspath());
+                if (job.contextJar != null) {
+                    args.getClasspath().from(job.contextJar);
+                }
+            });
+        }
         queue.await();
     }
 
@@ -192,6 +527,8 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
         RegularFileProperty getOutputDir();
 
         ConfigurableFileCollection getClasspath();
+
+        Property<Boolean> getApplyFfPatches();
     }
 
     public static abstract class Fg23DecompTask implements WorkAction<Fg23DecompArgs> {
@@ -200,41 +537,55 @@ public abstract class DecompileTask extends DefaultTask implements IJarTransform
         public void execute() {
             try {
                 Fg23DecompArgs settings = getParameters();
-
-                Map<String, Object> mapOptions = new HashMap<>();
-                // "-din=1", "-rbr=1", "-dgs=1", "-asc=1", "-rsy=1", "-iec=1", "-jvn=1", "-log=TRACE", "-cfg",
-                // "{libraries}", "{input}", "{output}"
-                mapOptions.put(IFernflowerPreferences.DECOMPILE_INNER, "1");
-                mapOptions.put(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES, "1");
-                mapOptions.put(IFernflowerPreferences.ASCII_STRING_CHARACTERS, "1");
-                mapOptions.put(IFernflowerPreferences.INCLUDE_ENTIRE_CLASSPATH, "1");
-                mapOptions.put(IFernflowerPreferences.REMOVE_SYNTHETIC, "1");
-                mapOptions.put(IFernflowerPreferences.REMOVE_BRIDGE, "1");
-                mapOptions.put(IFernflowerPreferences.LITERALS_AS_IS, "0");
-                mapOptions.put(IFernflowerPreferences.UNIT_TEST_MODE, "0");
-                mapOptions.put(IFernflowerPreferences.MAX_PROCESSING_METHOD, "0");
-                mapOptions.put(DecompilerContext.RENAMER_FACTORY, AdvancedJadRenamer.Factory.class.getName());
-
-                // FernFlowerSettings settings = new FernFlowerSettings(tempDir, in, tempJar,
-                // Constants.getTaskLogFile(getProject(), getName() + ".log"), classpath.getFiles(), mapOptions);
-
-                PrintStreamLogger logger = new PrintStreamLogger(
-                        new PrintStream(settings.getLogFile().getAsFile().get()));
-                BaseDecompiler decompiler = new BaseDecompiler(
-                        new ByteCodeProvider(),
-                        new ArtifactSaver(settings.getOutputDir().getAsFile().get()),
-                        mapOptions,
-                        logger);
-
-                decompiler.addSpace(settings.getInputJar().getAsFile().get(), true);
-                for (File library : settings.getClasspath()) {
-                    decompiler.addSpace(library, false);
-                }
-
-                decompiler.decompileContext();
+                decompileFg23InProcess(
+                        settings.getInputJar().getAsFile().get(),
+                        settings.getClasspath(),
+                        settings.getOutputDir().getAsFile().get(),
+                        settings.getLogFile().getAsFile().get(),
+                        settings.getApplyFfPatches().get());
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
     }
+
+    /**
+     * Runs the FG2.3 forgeflower over the input jar in the current process, saving the decompiled jar under the same
+     * name into the output directory.
+     */
+    public static void decompileFg23InProcess(File inputJar, Iterable<File> libraries, File outputDir, File logFile,
+            boolean applyFfPatches) throws IOException {
+        Map<String, Object> mapOptions = new HashMap<>();
+        // "-din=1", "-rbr=1", "-dgs=1", "-asc=1", "-rsy=1", "-iec=1", "-jvn=1", "-log=TRACE", "-cfg",
+        // "{libraries}", "{input}", "{output}"
+        mapOptions.put(IFernflowerPreferences.DECOMPILE_INNER, "1");
+        mapOptions.put(IFernflowerPreferences.DECOMPILE_GENERIC_SIGNATURES, "1");
+        mapOptions.put(IFernflowerPreferences.ASCII_STRING_CHARACTERS, "1");
+        mapOptions.put(IFernflowerPreferences.INCLUDE_ENTIRE_CLASSPATH, "1");
+        mapOptions.put(IFernflowerPreferences.REMOVE_SYNTHETIC, "1");
+        mapOptions.put(IFernflowerPreferences.REMOVE_BRIDGE, "1");
+        mapOptions.put(IFernflowerPreferences.LITERALS_AS_IS, "0");
+        mapOptions.put(IFernflowerPreferences.UNIT_TEST_MODE, "0");
+        mapOptions.put(IFernflowerPreferences.MAX_PROCESSING_METHOD, "0");
+        mapOptions.put(DecompilerContext.RENAMER_FACTORY, AdvancedJadRenamer.Factory.class.getName());
+
+        // FernFlowerSettings settings = new FernFlowerSettings(tempDir, in, tempJar,
+        // Constants.getTaskLogFile(getProject(), getName() + ".log"), classpath.getFiles(), mapOptions);
+
+        try (PrintStream logStream = new PrintStream(logFile)) {
+            PrintStreamLogger logger = new PrintStreamLogger(logStream);
+            IResultSaver saver = new ArtifactSaver(outputDir);
+            if (applyFfPatches) {
+                saver = new FfPatchingSaver(saver);
+            }
+            BaseDecompiler decompiler = new BaseDecompiler(new ByteCodeProvider(), saver, mapOptions, logger);
+
+            decompiler.addSpace(inputJar, true);
+            for (File library : libraries) {
+                decompiler.addSpace(library, false);
+            }
+
+            decompiler.decompileContext();
+        }
+    }
 }
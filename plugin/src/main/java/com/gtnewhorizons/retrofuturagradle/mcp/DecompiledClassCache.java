@@ -0,0 +1,399 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.collections4.iterators.EnumerationIterator;
+import org.apache.commons.collections4.iterators.IteratorIterable;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+
+import com.gtnewhorizons.retrofuturagradle.util.CacheManager;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+/**
+ * A content-addressed cache of fernflower output for single top-level classes (together with their nested classes),
+ * so that a small change to the input jar only needs the affected classes decompiled again.
+ * <p>
+ * Every top-level class is keyed by the SHA256 of the decompiler configuration, its own class files, and the class
+ * files of every class in the jar it references or inherits from, including all supertypes of the referenced classes.
+ * Entries live in {@code <cache dir>/<first two key characters>/<key>.bin} as gzipped lists of the java files
+ * fernflower emitted for that class.
+ */
+public final class DecompiledClassCache {
+
+    /** {@link CacheManager} category of the entries */
+    public static final String CACHE_CATEGORY = "fernflower-class";
+    // [UPDATE] Bump when the key derivation or the entry format changes
+    private static final int VERSION = 3;
+
+    private final File cacheDir;
+    private final CacheManager cacheManager;
+    /** Non-class entries of the input jar, copied to the output as they are */
+    private final Map<String, byte[]> resources = new TreeMap<>();
+    /** Top-level class name to the class files making it up, e.g. a/B -> {a/B.class, a/B$1.class} */
+    private final Map<String, Map<String, byte[]>> units = new TreeMap<>();
+    private final Map<String, String> unitKeys;
+    private final Set<String> missingUnits;
+    /**
+     * Sources of the units found in the cache, read right away so that a prune evicting them before
+     * {@link #assemble(File)} can't fail the decompile, and of the units decompiled during this run
+     */
+    private final Map<String, Map<String, byte[]>> decompiled = new ConcurrentHashMap<>();
+
+    /**
+     * @param cacheDir  The directory to keep cache entries in
+     * @param configKey Identifies everything besides the input classes that influences fernflower output: its version,
+     *                  options and libraries
+     * @param inputJar  The jar to be decompiled
+     */
+    public DecompiledClassCache(CacheManager cacheManager, File cacheDir, String configKey, File inputJar)
+            throws IOException {
+        this.cacheManager = cacheManager;
+        this.cacheDir = cacheDir;
+
+        final Map<String, byte[]> classes = new HashMap<>();
+        try (final ZipFile zip = new ZipFile(inputJar)) {
+            for (ZipEntry entry : new IteratorIterable<>(new EnumerationIterator<>(zip.entries()))) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                final byte[] data = Utilities.readZipEntry(zip, entry);
+                if (entry.getName().endsWith(".class")) {
+                    classes.put(entry.getName(), data);
+                } else {
+                    resources.put(entry.getName(), data);
+                }
+            }
+        }
+        final Set<String> classNames = classes.keySet().stream()
+                .map(name -> name.substring(0, name.length() - ".class".length())).collect(Collectors.toSet());
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            final String className = entry.getKey().substring(0, entry.getKey().length() - ".class".length());
+            units.computeIfAbsent(unitOf(className, classNames), k -> new TreeMap<>())
+                    .put(entry.getKey(), entry.getValue());
+        }
+
+        // Hash every unit's own bytes and find the other units it refers to
+        final Map<String, String> unitHashes = new ConcurrentHashMap<>();
+        final Map<String, Set<String>> unitRefs = new ConcurrentHashMap<>();
+        final Map<String, Set<String>> unitSupers = new ConcurrentHashMap<>();
+        units.entrySet().parallelStream().forEach(unit -> {
+            final MessageDigest digest = DigestUtils.getSha256Digest();
+            final Set<String> refs = new HashSet<>();
+            final Set<String> supers = new HashSet<>();
+            for (Map.Entry<String, byte[]> cls : unit.getValue().entrySet()) {
+                digest.update(cls.getKey().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(cls.getValue());
+                collectReferences(cls.getValue(), classNames, refs, supers);
+            }
+            unitHashes.put(unit.getKey(), Hex.encodeHexString(digest.digest()));
+            unitRefs.put(unit.getKey(), refs);
+            unitSupers.put(unit.getKey(), supers);
+        });
+
+        // Fernflower looks at the whole hierarchy of every class it meets, e.g. to resolve overridden methods and
+        // decide on casts, so a unit's output can depend on the supertypes of its references as well as its own
+        final Map<String, Set<String>> superClosures = new ConcurrentHashMap<>();
+        units.keySet().parallelStream().forEach(unit -> {
+            final Set<String> closure = new HashSet<>();
+            final Deque<String> superQueue = new ArrayDeque<>(unitSupers.get(unit));
+            while (!superQueue.isEmpty()) {
+                final String sup = superQueue.pop();
+                if (closure.add(sup)) {
+                    superQueue.addAll(unitSupers.get(sup));
+                }
+            }
+            superClosures.put(unit, closure);
+        });
+
+        // Key every unit by its own hash and the hashes of its direct references and all their supertypes
+        final Map<String, String> keys = new ConcurrentHashMap<>();
+        units.keySet().parallelStream().forEach(unit -> {
+            final Set<String> deps = new TreeSet<>(superClosures.get(unit));
+            for (String ref : unitRefs.get(unit)) {
+                deps.add(ref);
+                deps.addAll(superClosures.get(ref));
+            }
+            deps.remove(unit);
+            final MessageDigest digest = DigestUtils.getSha256Digest();
+            digest.update(("v" + VERSION + "\0" + configKey + "\0" + unit + "\0").getBytes(StandardCharsets.UTF_8));
+            digest.update(unitHashes.get(unit).getBytes(StandardCharsets.UTF_8));
+            for (String dep : deps) {
+                digest.update(("\0" + dep + "=" + unitHashes.get(dep)).getBytes(StandardCharsets.UTF_8));
+            }
+            keys.put(unit, Hex.encodeHexString(digest.digest()));
+        });
+        this.unitKeys = keys;
+        // Entries that were evicted or can't be read are decompiled again
+        units.keySet().parallelStream().filter(unit -> entryFile(unit).isFile()).forEach(unit -> {
+            try {
+                decompiled.put(unit, readEntry(entryFile(unit)));
+            } catch (IOException e) {
+                // Treated as a miss
+            }
+        });
+        final Set<String> missing = units.keySet().stream().filter(unit -> !decompiled.containsKey(unit))
+                .collect(Collectors.toCollection(TreeSet::new));
+        this.missingUnits = Collections.unmodifiableSet(missing);
+        for (String unit : units.keySet()) {
+            if (missing.contains(unit)) {
+                cacheManager.recordMiss(CACHE_CATEGORY);
+            } else {
+                cacheManager.recordHit(CACHE_CATEGORY, entryFile(unit));
+            }
+        }
+    }
+
+    private static String unitOf(String className, Set<String> classNames) {
+        return Utilities.outermostClassOf(className, classNames);
+    }
+
+    private static void collectReferences(byte[] classBytes, Set<String> classNames, Set<String> refs,
+            Set<String> supers) {
+        final ClassReader reader = new ClassReader(classBytes);
+        final String superName = reader.getSuperName();
+        if (superName != null && classNames.contains(superName)) {
+            supers.add(unitOf(superName, classNames));
+        }
+        for (String itf : reader.getInterfaces()) {
+            if (classNames.contains(itf)) {
+                supers.add(unitOf(itf, classNames));
+            }
+        }
+        final Remapper recorder = new Remapper() {
+
+            @Override
+            public String map(String internalName) {
+                if (classNames.contains(internalName)) {
+                    refs.add(unitOf(internalName, classNames));
+                }
+                return internalName;
+            }
+        };
+        // The remapper only sees member types if the wrapped visitor asks for the members
+        final ClassVisitor sink = new ClassVisitor(Opcodes.ASM9) {
+
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature,
+                    Object value) {
+                return new FieldVisitor(Opcodes.ASM9) {};
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                    String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9) {};
+            }
+        };
+        reader.accept(new ClassRemapper(sink, recorder), ClassReader.SKIP_FRAMES);
+    }
+
+    private File entryFile(String unit) {
+        final String key = unitKeys.get(unit);
+        return FileUtils.getFile(cacheDir, key.substring(0, 2), key + ".bin");
+    }
+
+    /**
+     * @return The number of top-level classes in the input jar
+     */
+    public int getUnitCount() {
+        return units.size();
+    }
+
+    /**
+     * @return The top-level classes that have no cached decompiled sources
+     */
+    public Set<String> getMissingUnits() {
+        return missingUnits;
+    }
+
+    /**
+     * Splits the missing classes into at most {@code shardCount} groups of roughly equal total class file size, largest
+     * classes first.
+     */
+    public List<Set<String>> partitionMissingUnits(int shardCount) {
+        final int shards = Math.max(1, Math.min(shardCount, missingUnits.size()));
+        final List<Set<String>> result = new ArrayList<>(shards);
+        final long[] shardSizes = new long[shards];
+        for (int i = 0; i < shards; i++) {
+            result.add(new TreeSet<>());
+        }
+        final List<Pair<String, Long>> bySize = missingUnits.stream()
+                .map(unit -> Pair.of(unit, units.get(unit).values().stream().mapToLong(b -> b.length).sum()))
+                .sorted(Comparator.comparing((Pair<String, Long> p) -> p.getRight()).reversed()
+                        .thenComparing(Pair::getLeft))
+                .collect(Collectors.toList());
+        for (Pair<String, Long> unit : bySize) {
+            int smallest = 0;
+            for (int i = 1; i < shards; i++) {
+                if (shardSizes[i] < shardSizes[smallest]) {
+                    smallest = i;
+                }
+            }
+            result.get(smallest).add(unit.getLeft());
+            shardSizes[smallest] += unit.getRight();
+        }
+        return result;
+    }
+
+    /**
+     * Writes a jar of the class files of the top-level classes matching the filter, together with their nested classes.
+     */
+    public void writeClasses(File jar, Predicate<String> unitFilter) throws IOException {
+        // Only read back once by fernflower, not worth spending time on compression
+        final ParallelJarWriter writer = new ParallelJarWriter(Deflater.BEST_SPEED);
+        for (Map.Entry<String, Map<String, byte[]>> unit : units.entrySet()) {
+            if (unitFilter.test(unit.getKey())) {
+                unit.getValue().forEach(writer::put);
+            }
+        }
+        writer.write(jar);
+    }
+
+    /**
+     * Writes the class files of the units matching the filter into a directory, for a fernflower run that saves every
+     * source file as soon as it is decompiled instead of packing them into a jar at the end.
+     */
+    public void writeClassDirectory(File dir, Predicate<String> unitFilter) throws IOException {
+        FileUtils.deleteDirectory(dir);
+        for (Map.Entry<String, Map<String, byte[]>> unit : units.entrySet()) {
+            if (unitFilter.test(unit.getKey())) {
+                for (Map.Entry<String, byte[]> cls : unit.getValue().entrySet()) {
+                    FileUtils.writeByteArrayToFile(new File(dir, cls.getKey()), cls.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Stores the sources of the given classes from a fernflower output jar in the cache. Classes that fernflower
+     * produced no output for are cached as such too.
+     */
+    public void storeDecompiled(File decompiledJar, Set<String> decompiledUnits) throws IOException {
+        final Set<String> classNames = units.values().stream().flatMap(u -> u.keySet().stream())
+                .map(name -> name.substring(0, name.length() - ".class".length())).collect(Collectors.toSet());
+        final Map<String, Map<String, byte[]>> sources = new HashMap<>();
+        for (String unit : decompiledUnits) {
+            sources.put(unit, new TreeMap<>());
+        }
+        try (final ZipFile zip = new ZipFile(decompiledJar)) {
+            for (ZipEntry entry : new IteratorIterable<>(new EnumerationIterator<>(zip.entries()))) {
+                final String name = entry.getName();
+                if (entry.isDirectory() || !name.endsWith(".java")) {
+                    continue;
+                }
+                final String unit = unitOf(name.substring(0, name.length() - ".java".length()), classNames);
+                final Map<String, byte[]> unitSources = sources.get(unit);
+                if (unitSources != null) {
+                    unitSources.put(name, Utilities.readZipEntry(zip, entry));
+                }
+            }
+        }
+        sources.entrySet().parallelStream().forEach(unit -> {
+            try {
+                writeEntry(entryFile(unit.getKey()), unit.getValue());
+            } catch (IOException e) {
+                throw new RuntimeException("Couldn't cache decompiled sources of " + unit.getKey(), e);
+            }
+            decompiled.put(unit.getKey(), unit.getValue());
+            cacheManager.register(CACHE_CATEGORY, entryFile(unit.getKey()));
+        });
+    }
+
+    /**
+     * Writes the decompiled jar: all resources of the input jar and the sources of every class, which must all have
+     * been found in the cache or {@link #storeDecompiled(File, Set) stored} by now.
+     */
+    public void assemble(File outputJar) {
+        final ParallelJarWriter writer = new ParallelJarWriter();
+        resources.forEach(writer::put);
+        for (String unit : units.keySet()) {
+            final Map<String, byte[]> sources = decompiled.get(unit);
+            if (sources == null) {
+                throw new IllegalStateException("No decompiled sources of " + unit);
+            }
+            sources.forEach(writer::put);
+        }
+        try {
+            writer.write(outputJar);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void writeEntry(File file, Map<String, byte[]> sources) throws IOException {
+        FileUtils.forceMkdirParent(file);
+        final File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try {
+            try (final FileOutputStream fos = new FileOutputStream(tempFile);
+                    final GZIPOutputStream gzos = new GZIPOutputStream(new BufferedOutputStream(fos));
+                    final DataOutputStream out = new DataOutputStream(gzos)) {
+                out.writeInt(sources.size());
+                for (Map.Entry<String, byte[]> source : sources.entrySet()) {
+                    out.writeUTF(source.getKey());
+                    out.writeInt(source.getValue().length);
+                    out.write(source.getValue());
+                }
+            }
+            Utilities.moveAtomically(tempFile, file);
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    private static Map<String, byte[]> readEntry(File file) throws IOException {
+        try (final FileInputStream fis = new FileInputStream(file);
+                final GZIPInputStream gzis = new GZIPInputStream(new BufferedInputStream(fis));
+                final DataInputStream in = new DataInputStream(gzis)) {
+            final int count = in.readInt();
+            final Map<String, byte[]> sources = new TreeMap<>();
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                final byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                sources.put(name, data);
+            }
+            return sources;
+        }
+    }
+}
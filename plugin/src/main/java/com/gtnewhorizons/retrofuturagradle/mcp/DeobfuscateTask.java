@@ -6,26 +6,22 @@ import static org.objectweb.asm.Opcodes.ACC_PROTECTED;
 import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Comparator;
 import java.util.GregorianCalendar;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import javax.inject.Inject;
 
@@ -47,27 +43,30 @@ import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
-import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.MethodNode;
 
 import com.google.common.collect.ImmutableSet;
 import com.gtnewhorizons.retrofuturagradle.Constants;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.de.oceanlabs.mcp.mcinjector.MCInjectorImpl;
+import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.InheritanceMap;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.Jar;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.JarMapping;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.JarRemapper;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.RemapperProcessor;
-import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.provider.JarProvider;
-import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.provider.JointProvider;
+import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.md_5.specialsource.repo.JarRepo;
 import com.gtnewhorizons.retrofuturagradle.fg23shadow.de.oceanlabs.mcp.mcinjector.LVTNaming;
 import com.gtnewhorizons.retrofuturagradle.json.MCInjectorStruct;
+import com.gtnewhorizons.retrofuturagradle.util.ClassTransformChain;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
+import com.gtnewhorizons.retrofuturagradle.util.LayeredMap;
+import com.gtnewhorizons.retrofuturagradle.util.MappingIndex;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarRemapper;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+import com.gtnewhorizons.retrofuturagradle.util.ReadOnlyJar;
 import com.gtnewhorizons.retrofuturagradle.util.RenamedAccessMapFG12;
 import com.gtnewhorizons.retrofuturagradle.util.RenamedAccessMapFG23;
+import com.gtnewhorizons.retrofuturagradle.util.SyntheticStrippingVisitor;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTask
@@ -122,9 +121,11 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
     }
 
     private File taskTempDir;
+    private final File mappingIndexDir;
 
     @Inject
     public DeobfuscateTask(Project proj) {
+        mappingIndexDir = Utilities.getCacheDir(proj, MappingIndex.CACHE_DIR_NAME);
         getIsStrippingSynthetics().convention(false);
         getIsApplyingMarkers().convention(false);
         getMinorMcVersion().convention(7);
@@ -134,16 +135,20 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
     void processJar() throws IOException {
         final File taskTempDir = getTemporaryDir();
         this.taskTempDir = taskTempDir;
+        // MCInjector only takes the paths of its input and output jars, so both have to be written to disk
         final File deobfedJar = new File(taskTempDir, "deobf.jar");
         final File exceptedJar = new File(taskTempDir, "excepted.jar");
         final int mcMinor = getMinorMcVersion().get();
 
         getLogger().lifecycle("Applying SpecialSource");
         final Set<File> atFiles = new ImmutableSet.Builder<File>().addAll(getAccessTransformerFiles()).build();
-        if (mcMinor <= 8) {
-            applySpecialSourceFG12(deobfedJar, atFiles);
-        } else {
-            applySpecialSourceFG23(deobfedJar, atFiles);
+        // SpecialSource only ever opens the input for reading, so no defensive copy is needed
+        try (final ReadOnlyJar inputJar = ReadOnlyJar.of(getInputJar().get().getAsFile())) {
+            if (mcMinor <= 8) {
+                applySpecialSourceFG12(inputJar.getFile(), deobfedJar, atFiles);
+            } else {
+                applySpecialSourceFG23(inputJar.getFile(), deobfedJar, atFiles);
+            }
         }
 
         getLogger().lifecycle("Applying Exceptor");
@@ -161,124 +166,149 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
         }
     }
 
-    private void applySpecialSourceFG12(File tempDeobfJar, Set<File> atFiles) throws IOException {
-        final File originalInputFile = getInputJar().get().getAsFile();
-        // Work on a copy to make sure the original jar doesn't get modified
-        final File inputFile = new File(taskTempDir, "input.jar");
-        FileUtils.copyFile(originalInputFile, inputFile);
-        final JarMapping mapping = new JarMapping();
-        mapping.loadMappings(getSrgFile().get().getAsFile());
-        final Map<String, String> renames = new HashMap<>();
-        for (File f : new File[] { getFieldCsv().getAsFile().getOrNull(), getMethodCsv().getAsFile().getOrNull() }) {
-            if (f == null) {
-                continue;
+    private Map<String, String> loadSymbolRenames() {
+        final List<Map<String, String>> layers = new ArrayList<>(2);
+        // Method names take priority over field names
+        for (File f : new File[] { getMethodCsv().getAsFile().getOrNull(), getFieldCsv().getAsFile().getOrNull() }) {
+            if (f != null) {
+                layers.add(MappingIndex.open(mappingIndexDir, f).asNameMap());
             }
-            FileUtils.lineIterator(f).forEachRemaining(line -> {
-                String[] parts = line.split(",");
-                if (!"searge".equals(parts[0])) {
-                    renames.put(parts[0], parts[1]);
-                }
-            });
         }
+        return new LayeredMap<>(layers);
+    }
 
-        // Load access transformers
+    private void applySpecialSourceFG12(File inputFile, File tempDeobfJar, Set<File> atFiles) throws IOException {
+        final File srgFile = getSrgFile().get().getAsFile();
+        final Map<String, String> renames = loadSymbolRenames();
+        final ParallelJarRemapper parallelRemapper = new ParallelJarRemapper(inputFile);
         getLogger().lifecycle("Loading {} AccessTransformers", atFiles.size());
-        RenamedAccessMapFG12 accessMap = new RenamedAccessMapFG12(renames);
         for (File atFile : atFiles) {
             getLogger().info("{}", atFile.getPath());
+        }
+        // Loaded once and only read by the worker threads
+        final JarMapping mapping = new JarMapping();
+        mapping.loadMappings(srgFile);
+        // Filled with the whole hierarchy of the jar up front, so that no lookup has to fall back and cache the result
+        final InheritanceMap inheritance = new InheritanceMap();
+        parallelRemapper.getAllParents()
+                .forEach((className, parents) -> inheritance.setParents(className, new ArrayList<>(parents)));
+        mapping.setInheritanceMap(inheritance);
+        final RenamedAccessMapFG12 accessMap = new RenamedAccessMapFG12(renames);
+        for (File atFile : atFiles) {
             accessMap.loadAccessTransformer(atFile);
         }
         getLogger().lifecycle("Renamed {} AT entries", accessMap.getRenameCount());
 
-        final RemapperProcessor srgProcessor = new RemapperProcessor(null, mapping, null);
-        final RemapperProcessor atProcessor = new RemapperProcessor(null, null, accessMap);
-        final JarRemapper remapper = new JarRemapper(srgProcessor, mapping, atProcessor);
-
-        final Jar input = Jar.init(inputFile);
-        try {
-            final JointProvider inheritanceProviders = new JointProvider();
-            inheritanceProviders.add(new JarProvider(input));
-            mapping.setFallbackInheritanceProvider(inheritanceProviders);
-            remapper.remapJar(input, tempDeobfJar);
-        } finally {
+        parallelRemapper.remap(tempDeobfJar, () -> {
             try {
-                // Close the jar file handle manually, because the old SpecialSource didn't have a close method
-                final Field fFiles = Jar.class.getDeclaredField("jarFiles");
-                fFiles.setAccessible(true);
-                @SuppressWarnings("unchecked")
-                final List<JarFile> files = (List<JarFile>) fFiles.get(input);
-                if (files != null) {
-                    for (JarFile file : files) {
-                        file.close();
+                final RemapperProcessor srgProcessor = new RemapperProcessor(null, mapping, null);
+                final RemapperProcessor atProcessor = new RemapperProcessor(null, null, accessMap);
+                final JarRemapper remapper = new JarRemapper(srgProcessor, mapping, atProcessor);
+                // Caches the class nodes it reads, so each thread needs its own
+                final Jar input = Jar.init(inputFile);
+                final JarRepo repo = new JarRepo(input);
+                return new ParallelJarRemapper.Context() {
+
+                    @Override
+                    public String mapClassName(String className) {
+                        return remapper.map(className);
                     }
-                }
-            } catch (ReflectiveOperationException | IOException e) {
+
+                    @Override
+                    public byte[] remapClass(byte[] classBytes) {
+                        return remapper.remapClassFile(classBytes, repo);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        closeFg12Jar(input);
+                    }
+                };
+            } catch (IOException e) {
                 throw new RuntimeException(e);
             }
-        }
-
-        // Clean up temporary files
-        if (!Constants.DEBUG_NO_TMP_CLEANUP) {
-            FileUtils.deleteQuietly(inputFile);
-        }
+        });
     }
 
-    private void applySpecialSourceFG23(File tempDeobfJar, Set<File> atFiles) throws IOException {
-        final File originalInputFile = getInputJar().get().getAsFile();
-        // Work on a copy to make sure the original jar doesn't get modified
-        final File inputFile = new File(taskTempDir, "input.jar");
-        FileUtils.copyFile(originalInputFile, inputFile);
-        final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarMapping mapping = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarMapping();
-        mapping.loadMappings(getSrgFile().get().getAsFile());
-        final Map<String, String> renames = new HashMap<>();
-        for (File f : new File[] { getFieldCsv().getAsFile().getOrNull(), getMethodCsv().getAsFile().getOrNull() }) {
-            if (f == null) {
-                continue;
-            }
-            FileUtils.lineIterator(f).forEachRemaining(line -> {
-                String[] parts = line.split(",");
-                if (!"searge".equals(parts[0])) {
-                    renames.put(parts[0], parts[1]);
+    private static void closeFg12Jar(Jar input) throws IOException {
+        try {
+            // Close the jar file handle manually, because the old SpecialSource didn't have a close method
+            final Field fFiles = Jar.class.getDeclaredField("jarFiles");
+            fFiles.setAccessible(true);
+            @SuppressWarnings("unchecked")
+            final List<JarFile> files = (List<JarFile>) fFiles.get(input);
+            if (files != null) {
+                for (JarFile file : files) {
+                    file.close();
                 }
-            });
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
         }
+    }
 
-        // Load access transformers
+    private void applySpecialSourceFG23(File inputFile, File tempDeobfJar, Set<File> atFiles) throws IOException {
+        final File srgFile = getSrgFile().get().getAsFile();
+        final Map<String, String> renames = loadSymbolRenames();
+        final ParallelJarRemapper parallelRemapper = new ParallelJarRemapper(inputFile);
         getLogger().lifecycle("Loading {} AccessTransformers", atFiles.size());
-        RenamedAccessMapFG23 accessMap = new RenamedAccessMapFG23(renames);
         for (File atFile : atFiles) {
             getLogger().info("{}", atFile.getPath());
+        }
+        // Loaded once and only read by the worker threads
+        final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarMapping mapping = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarMapping();
+        mapping.loadMappings(srgFile);
+        // Filled with the whole hierarchy of the jar up front, so that no lookup has to fall back and cache the result
+        final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.InheritanceMap inheritance = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.InheritanceMap();
+        parallelRemapper.getAllParents()
+                .forEach((className, parents) -> inheritance.setParents(className, new ArrayList<>(parents)));
+        mapping.setInheritanceMap(inheritance);
+        final RenamedAccessMapFG23 accessMap = new RenamedAccessMapFG23(renames);
+        for (File atFile : atFiles) {
             accessMap.loadAccessTransformer(atFile);
         }
         getLogger().lifecycle("Renamed {} AT entries", accessMap.getRenameCount());
 
-        final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor srgProcessor = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor(
-                null,
-                mapping,
-                null);
-        final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor atProcessor = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor(
-                null,
-                null,
-                accessMap);
-        final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarRemapper remapper = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarRemapper(
-                srgProcessor,
-                mapping,
-                atProcessor);
-
-        try (final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.Jar input = com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.Jar
-                .init(inputFile)) {
-            final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.provider.JointProvider inheritanceProviders = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.provider.JointProvider();
-            inheritanceProviders.add(
-                    new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.provider.JarProvider(
-                            input));
-            mapping.setFallbackInheritanceProvider(inheritanceProviders);
-            remapper.remapJar(input, tempDeobfJar);
-        }
+        parallelRemapper.remap(tempDeobfJar, () -> {
+            try {
+                final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor srgProcessor = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor(
+                        null,
+                        mapping,
+                        null);
+                final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor atProcessor = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.RemapperProcessor(
+                        null,
+                        null,
+                        accessMap);
+                final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarRemapper remapper = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.JarRemapper(
+                        srgProcessor,
+                        mapping,
+                        atProcessor);
+                // Caches the class nodes it reads, so each thread needs its own
+                final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.Jar input = com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.Jar
+                        .init(inputFile);
+                final com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.repo.JarRepo repo = new com.gtnewhorizons.retrofuturagradle.fg23shadow.net.md_5.specialsource.repo.JarRepo(
+                        input);
+                return new ParallelJarRemapper.Context() {
+
+                    @Override
+                    public String mapClassName(String className) {
+                        return remapper.map(className);
+                    }
 
-        // Clean up temporary files
-        if (!Constants.DEBUG_NO_TMP_CLEANUP) {
-            FileUtils.deleteQuietly(inputFile);
-        }
+                    @Override
+                    public byte[] remapClass(byte[] classBytes) {
+                        return remapper.remapClassFile(classBytes, repo);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        input.close();
+                    }
+                };
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
     }
 
     private void applyExceptor(File deobfJar, File tempExceptorJar, File logFile, Set<File> atFiles, int mcMinor)
@@ -287,6 +317,8 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
         if (getExceptorJson().isPresent()) {
             File exceptorJsonFile = getExceptorJson().get().getAsFile();
             final Map<String, MCInjectorStruct> struct = MCInjectorStruct.loadMCIJson(exceptorJsonFile);
+            final Map<String, List<MCInjectorStruct.InnerClass>> innerClassIndex = MCInjectorStruct
+                    .indexInnerClasses(struct);
             // TODO: Make this more readable, it's currently mostly a copy directly from FG
             for (File atFile : atFiles) {
                 try (final FileInputStream fis = new FileInputStream(atFile);
@@ -304,16 +336,11 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
                         if (line.isEmpty()) continue;
                         String[] s = line.split(" ");
                         if (s.length == 2 && s[1].indexOf('$') > 0) {
-                            String parent = s[1].substring(0, s[1].indexOf('$'));
-                            for (MCInjectorStruct cls : new MCInjectorStruct[] { struct.get(parent),
-                                    struct.get(s[1]) }) {
-                                if (cls != null && cls.innerClasses != null) {
-                                    for (MCInjectorStruct.InnerClass inner : cls.innerClasses) {
-                                        if (inner.inner_class.equals(s[1])) {
-                                            int access = fixAccess(inner.getAccess(), s[0]);
-                                            inner.access = (access == 0 ? null : Integer.toHexString(access));
-                                        }
-                                    }
+                            final List<MCInjectorStruct.InnerClass> inners = innerClassIndex.get(s[1]);
+                            if (inners != null) {
+                                for (MCInjectorStruct.InnerClass inner : inners) {
+                                    int access = fixAccess(inner.getAccess(), s[0]);
+                                    inner.access = (access == 0 ? null : Integer.toHexString(access));
                                 }
                             }
                         }
@@ -325,9 +352,10 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
                 removeUnknownClasses(deobfJar, struct);
             }
 
+            // MCInjector can only load its config from a path, so stream it out compactly
             File tmpJsonFile = new File(taskTempDir, "transformed.json");
             json = tmpJsonFile.getCanonicalPath();
-            FileUtils.write(tmpJsonFile, Utilities.GSON.toJson(struct), StandardCharsets.UTF_8);
+            MCInjectorStruct.saveMCIJson(struct, tmpJsonFile);
         }
 
         // Silence MCI logs
@@ -403,55 +431,32 @@ public abstract class DeobfuscateTask extends DefaultTask implements IJarTransfo
     public static final long CONSTANT_TIME_FOR_ZIP_ENTRIES = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0)
             .getTimeInMillis();
 
+    /**
+     * Strips the jar metadata and optionally the synthetic flags, and writes the entries sorted. This is the only
+     * write of the task output.
+     */
     private void cleanupJar(File inputJar, File outputJar, boolean stripSynthetics) throws IOException {
-        try (final ZipFile inZip = new ZipFile(inputJar);
-                final FileOutputStream fos = new FileOutputStream(outputJar);
-                final BufferedOutputStream bos = new BufferedOutputStream(fos);
-                final ZipOutputStream out = new ZipOutputStream(bos)) {
-            final ArrayList<ZipEntry> inputEntries = new ArrayList<>(inZip.size());
+        // Ensure reproducible jar output, directories are kept with null contents
+        final TreeMap<String, byte[]> entries = new TreeMap<>();
+        try (final ZipFile inZip = new ZipFile(inputJar)) {
             for (ZipEntry entry : new IteratorIterable<>(new EnumerationIterator<>(inZip.entries()))) {
                 if (entry.getName().contains("META-INF")) continue;
-                inputEntries.add(entry);
-            }
-            // Ensure reproducible jar output
-            inputEntries.sort(Comparator.comparing(ZipEntry::getName));
-
-            for (ZipEntry entry : inputEntries) {
-                ZipEntry n = new ZipEntry(entry.getName());
-                n.setTime(CONSTANT_TIME_FOR_ZIP_ENTRIES);
-                out.putNextEntry(n);
-                if (!entry.isDirectory()) {
-                    byte[] entryContents = Utilities.readZipEntry(inZip, entry);
-
-                    // correct source name
-                    if (entry.getName().endsWith(".class") && stripSynthetics) {
-                        final ClassNode node = Utilities.parseClassBytes(entryContents, entry.getName());
-                        // Other asm-based class cleanup can be done here
-                        if (stripSynthetics) {
-                            stripClassSynthetics(node);
-                        }
-                        entryContents = Utilities.emitClassBytes(node, 0);
-                    }
-
-                    out.write(entryContents);
-                }
+                entries.put(entry.getName(), entry.isDirectory() ? null : Utilities.readZipEntry(inZip, entry));
             }
         }
-    }
-
-    private void stripClassSynthetics(ClassNode node) {
-        if ((node.access & Opcodes.ACC_ENUM) == 0 && !node.superName.equals("java/lang/Enum")
-                && (node.access & Opcodes.ACC_SYNTHETIC) == 0) {
-            // ^^ is for ignoring enums.
 
-            for (FieldNode f : node.fields) {
-                f.access = f.access & (0xffffffff - Opcodes.ACC_SYNTHETIC);
-            }
+        // Other asm-based class cleanup can be added to this chain
+        final List<ClassTransformChain.Stage> stages = new ArrayList<>();
+        if (stripSynthetics) {
+            stages.add(SyntheticStrippingVisitor::new);
+        }
+        new ClassTransformChain(0, true, stages).transformAll(entries);
 
-            for (MethodNode m : node.methods) {
-                m.access = m.access & (0xffffffff - Opcodes.ACC_SYNTHETIC);
-            }
+        final ParallelJarWriter writer = new ParallelJarWriter();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            writer.put(entry.getKey(), entry.getValue());
         }
+        writer.write(outputJar);
     }
 
     private int fixAccess(int access, String target) {
@@ -0,0 +1,168 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+
+import com.gtnewhorizons.retrofuturagradle.fgpatchers.FFClassIndex;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+
+/**
+ * Applies the FF patches to the sources the FG1.2 fernflower writes into its output directories while it is still
+ * decompiling the rest of the classes.
+ * <p>
+ * Fernflower decompiles one class at a time and writes each source file in one go, so in every output directory only
+ * the most recently modified files can still be open. All older files get patched as soon as they show up. Once the
+ * processes exit, {@link #finish()} patches the remaining files, and patches again any file that changed after it was
+ * read, so the result never depends on the timing.
+ */
+final class Fg12OutputPatcher implements AutoCloseable {
+
+    private static final long POLL_INTERVAL_MS = 250;
+
+    private final int mcMinor;
+    private final FFClassIndex classIndex;
+    /** Fernflower output directory to the jar its patched sources get saved to */
+    private final Map<File, File> outputs = new HashMap<>();
+    /** Fernflower output directory to the patched sources by jar entry name */
+    private final Map<File, Map<String, PatchedFile>> patched = new ConcurrentHashMap<>();
+    private Thread poller;
+    private volatile boolean stopping;
+    private volatile Throwable pollerFailure;
+
+    private static final class PatchedFile {
+
+        final long length;
+        final long lastModified;
+        final String text;
+
+        PatchedFile(long length, long lastModified, String text) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.text = text;
+        }
+    }
+
+    /**
+     * @param classIndex The classes being decompiled, read once for all the output directories
+     */
+    Fg12OutputPatcher(int mcMinor, FFClassIndex classIndex) {
+        this.mcMinor = mcMinor;
+        this.classIndex = classIndex;
+    }
+
+    /**
+     * Watches a directory fernflower writes its sources into, which has to be empty before it starts.
+     */
+    void watch(File outputDir, File patchedJar) {
+        outputs.put(outputDir, patchedJar);
+        patched.put(outputDir, new ConcurrentHashMap<>());
+    }
+
+    void start() {
+        poller = new Thread(() -> {
+            try {
+                while (!stopping) {
+                    for (File dir : outputs.keySet()) {
+                        patchChanged(dir, false);
+                    }
+                    Thread.sleep(POLL_INTERVAL_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                pollerFailure = t;
+            }
+        }, "RFG FF patcher");
+        poller.setDaemon(true);
+        poller.start();
+    }
+
+    /**
+     * Patches every file that has not been patched in its current state yet and saves the patched jars. Only call once
+     * all the fernflower processes have exited.
+     *
+     * @return The number of files patched while fernflower was still running
+     */
+    int finish() throws IOException {
+        stopPoller();
+        if (pollerFailure != null) {
+            throw new IOException("Couldn't patch the fernflower output", pollerFailure);
+        }
+        int patchedEarly = 0;
+        for (Map.Entry<File, File> output : outputs.entrySet()) {
+            final int patchedLate = patchChanged(output.getKey(), true);
+            final Map<String, PatchedFile> files = patched.get(output.getKey());
+            patchedEarly += files.size() - patchedLate;
+            final ParallelJarWriter writer = new ParallelJarWriter();
+            files.forEach((name, file) -> writer.put(name, file.text.getBytes(StandardCharsets.UTF_8)));
+            writer.write(output.getValue());
+        }
+        return patchedEarly;
+    }
+
+    /**
+     * Patches the files of the directory that are new or changed since they were last patched.
+     *
+     * @param all Whether to include the most recently modified files, which fernflower might still be writing
+     * @return The number of files patched
+     */
+    private int patchChanged(File dir, boolean all) throws IOException {
+        final Map<String, PatchedFile> done = patched.get(dir);
+        final List<File> files = new ArrayList<>(FileUtils.listFiles(dir, new String[] { "java" }, true));
+        long newest = Long.MIN_VALUE;
+        if (!all) {
+            for (File file : files) {
+                newest = Math.max(newest, file.lastModified());
+            }
+        }
+        final Map<String, String> toPatch = new HashMap<>();
+        final Map<String, PatchedFile> readState = new HashMap<>();
+        for (File file : files) {
+            final long lastModified = file.lastModified();
+            if (!all && lastModified >= newest) {
+                continue;
+            }
+            final String name = dir.toPath().relativize(file.toPath()).toString().replace('\\', '/');
+            final long length = file.length();
+            final PatchedFile previous = done.get(name);
+            if (previous != null && previous.length == length && previous.lastModified == lastModified) {
+                continue;
+            }
+            toPatch.put(name, FileUtils.readFileToString(file, StandardCharsets.UTF_8));
+            readState.put(name, new PatchedFile(length, lastModified, null));
+        }
+        if (toPatch.isEmpty()) {
+            return 0;
+        }
+        CleanupDecompiledJarTask.applyFfPatches(mcMinor, toPatch, classIndex).forEach((name, text) -> {
+            final PatchedFile state = readState.get(name);
+            done.put(name, new PatchedFile(state.length, state.lastModified, text));
+        });
+        return toPatch.size();
+    }
+
+    private void stopPoller() {
+        stopping = true;
+        if (poller != null) {
+            try {
+                poller.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            poller = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        stopPoller();
+    }
+}
@@ -0,0 +1,104 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+
+import com.gtnewhorizons.retrofuturagradle.BuildConfig;
+import com.gtnewhorizons.retrofuturagradle.util.CacheManager;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+/**
+ * A content-addressed cache of astyle output, so that files which are identical to the last setup aren't formatted
+ * again.
+ * <p>
+ * Every file is keyed by the SHA256 of the formatter (its flavour and the plugin version it's shaded in), the astyle
+ * config and the text given to the formatter. Entries live in {@code <cache dir>/<first two key characters>/<key>.txt}
+ * as the UTF-8 formatted text. Safe to use from multiple threads.
+ */
+public final class FormattedSourceCache {
+
+    /** {@link CacheManager} category of the entries */
+    public static final String CACHE_CATEGORY = "astyle";
+    // [UPDATE] Bump when the key derivation or the entry format changes
+    private static final int VERSION = 1;
+
+    private final CacheManager cacheManager;
+    private final File cacheDir;
+    private final byte[] configKey;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    @FunctionalInterface
+    public interface Formatter {
+
+        String format(String text) throws IOException;
+    }
+
+    /**
+     * @param cacheDir     The directory to keep cache entries in
+     * @param flavour      Identifies the astyle implementation in use, e.g. fg12 or fg23
+     * @param astyleConfig The astyle options file the formatter was configured from
+     */
+    public FormattedSourceCache(CacheManager cacheManager, File cacheDir, String flavour, File astyleConfig)
+            throws IOException {
+        this.cacheManager = cacheManager;
+        this.cacheDir = cacheDir;
+        final MessageDigest digest = DigestUtils.getSha256Digest();
+        digest.update(
+                ("v" + VERSION + "\0" + BuildConfig.PLUGIN_VERSION + "\0" + flavour + "\0" + System.lineSeparator()
+                        + "\0").getBytes(StandardCharsets.UTF_8));
+        digest.update(FileUtils.readFileToByteArray(astyleConfig));
+        this.configKey = digest.digest();
+    }
+
+    /**
+     * @return The formatted text, from the cache if this exact text was formatted before
+     */
+    public String format(String text, Formatter formatter) throws IOException {
+        final MessageDigest digest = DigestUtils.getSha256Digest();
+        digest.update(configKey);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        final String key = Hex.encodeHexString(digest.digest());
+        final File entry = FileUtils.getFile(cacheDir, key.substring(0, 2), key + ".txt");
+
+        if (entry.isFile()) {
+            try {
+                final String cached = FileUtils.readFileToString(entry, StandardCharsets.UTF_8);
+                hits.incrementAndGet();
+                cacheManager.recordHit(CACHE_CATEGORY, entry);
+                return cached;
+            } catch (IOException e) {
+                // Evicted by another build in the meantime, format it again
+            }
+        }
+
+        misses.incrementAndGet();
+        cacheManager.recordMiss(CACHE_CATEGORY);
+        final String formatted = formatter.format(text);
+        FileUtils.forceMkdirParent(entry);
+        final File tempFile = File.createTempFile(entry.getName(), ".tmp", entry.getParentFile());
+        try {
+            FileUtils.writeStringToFile(tempFile, formatted, StandardCharsets.UTF_8);
+            Utilities.moveAtomically(tempFile, entry);
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+        cacheManager.register(CACHE_CATEGORY, entry);
+        return formatted;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+}
@@ -3,7 +3,6 @@ package com.gtnewhorizons.retrofuturagradle.mcp;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -25,8 +24,8 @@ import com.google.common.collect.Maps;
 import com.google.common.io.Files;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.minecraftforge.srg2source.rangeapplier.MethodData;
 import com.gtnewhorizons.retrofuturagradle.fg12shadow.net.minecraftforge.srg2source.rangeapplier.SrgContainer;
+import com.gtnewhorizons.retrofuturagradle.util.MappingIndex;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
-import com.opencsv.CSVReader;
 
 /**
  * Generates Deobf(Mcp)-Searge(Srg)-Obf(Notch) name mappings
@@ -81,20 +80,10 @@ public abstract class GenSrgMappingsTask extends DefaultTask {
 
     @TaskAction
     public void generateMappings() throws IOException {
-        // SRG->MCP from the MCP csv files
-        HashMap<String, String> methods = new HashMap<>(5000);
-        HashMap<String, String> fields = new HashMap<>(5000);
-
-        try (CSVReader csvReader = Utilities.createCsvReader(getMethodsCsv().get().getAsFile())) {
-            for (String[] line : csvReader) {
-                methods.put(line[0], line[1]);
-            }
-        }
-        try (CSVReader csvReader = Utilities.createCsvReader(getFieldsCsv().get().getAsFile())) {
-            for (String[] line : csvReader) {
-                fields.put(line[0], line[1]);
-            }
-        }
+        // SRG->MCP from the MCP csv files, this also builds the binary indices used by all later remapping tasks
+        final File indexDir = Utilities.getCacheDir(getProject(), MappingIndex.CACHE_DIR_NAME);
+        final Map<String, String> methods = MappingIndex.open(indexDir, getMethodsCsv().get().getAsFile()).asNameMap();
+        final Map<String, String> fields = MappingIndex.open(indexDir, getFieldsCsv().get().getAsFile()).asNameMap();
 
         SrgContainer inSrg = new SrgContainer().readSrg(getInputSrg().get().getAsFile());
         Map<String, String> excRemap = Maps.newHashMap(); // Was a bunch of commented out code in ForgeGradle
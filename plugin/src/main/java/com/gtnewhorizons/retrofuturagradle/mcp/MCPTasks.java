@@ -77,6 +77,7 @@ import com.gtnewhorizons.retrofuturagradle.util.FileWithSourcesDependency;
 import com.gtnewhorizons.retrofuturagradle.util.IJarOutputTask;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
 import com.gtnewhorizons.retrofuturagradle.util.JarChain;
+import com.gtnewhorizons.retrofuturagradle.util.SkipUnchangedCopyAction;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 /**
@@ -233,9 +234,13 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
             task.getFernflower()
                     .set(layout.file(mcExt.getMinorMcVersion().map(mcVer -> (mcVer <= 8) ? fernflowerLocation : null)));
             task.getMinorMcVersion().set(mcExt.getMinorMcVersion());
+            task.getFernflowerArguments().set(mcExt.getFernflowerArguments());
+            task.getUseBuildCache().set(mcExt.getUseBuildCacheForDecompilation());
+            task.getApplyFfPatches().set(mcExt.getApplyFfPatchesWhileDecompiling());
             task.getClasspath().from(patchedConfiguration.plus(mcTasks.getLwjgl2Configuration()));
             task.getJava8Launcher().set(mcExt.getToolchainLauncher(project, 8));
             task.getJava17Launcher().set(mcExt.getToolchainLauncher(project, 17));
+            task.getShardCount().set(mcExt.getFernflowerShards());
         });
         decompiledMcChain.addTask(taskDecompileSrgJar);
         taskCleanupDecompSrgJar = project.getTasks()
@@ -243,6 +248,7 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
                     task.setGroup(TASK_GROUP_INTERNAL);
                     task.dependsOn(taskDecompileSrgJar, taskExtractForgeUserdev);
                     task.getInputJar().set(taskDecompileSrgJar.flatMap(IJarOutputTask::getOutputJar));
+                    task.getInputFfPatched().set(taskDecompileSrgJar.flatMap(DecompileTask::getApplyFfPatches));
                     task.getOutputJar().set(decompiledSrgLocation);
                     task.getPatches().set(
                             mcExt.getMinorMcVersion().flatMap(
@@ -252,6 +258,11 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
                             mcExt.getMinorMcVersion().flatMap(
                                     mcVer -> (mcVer <= 8) ? userdevFile("conf/astyle.cfg") : mcpFile("astyle.cfg")));
                     task.getMinorMcVersion().set(mcExt.getMinorMcVersion());
+                    task.getFormatterCacheDir().set(Utilities.getCacheDir(project, "astyle-cache"));
+                    task.getClassJar().set(taskDeobfuscateMergedJarToSrg.flatMap(IJarOutputTask::getOutputJar));
+                    task.getProfile().set(mcExt.getProfileSourceCleanup());
+                    task.getProfileReport()
+                            .set(FileUtils.getFile(buildDir, RFG_DIR, "cleanupDecompSrgJar-profile.json"));
                     task.getPatchesInjectDir().set(
                             mcExt.getMinorMcVersion()
                                     .flatMap(mcVer -> (mcVer <= 8) ? null : mcpDir("patches/inject/")));
@@ -267,7 +278,8 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
             task.getMaxFuzziness().set(1);
             task.getPathComponentsToStrip().set(mcExt.getMinorMcVersion().map(mcVer -> (mcVer <= 8) ? 3 : 1));
         });
-        decompiledMcChain.addTask(taskPatchDecompiledJar);
+        // Kept so that a change to only the mappings resumes the chain from the remap instead of decompiling again
+        decompiledMcChain.addTask(taskPatchDecompiledJar, true);
 
         remappedSourcesLocation = FileUtils.getFile(buildDir, RFG_DIR, "mcp_patched_minecraft-sources.jar");
         taskRemapDecompiledJar = project.getTasks().register("remapDecompiledJar", RemapSourceJarTask.class, task -> {
@@ -309,6 +321,8 @@ public class MCPTasks extends SharedMCPTasks<MinecraftExtension> {
                                         fcd.getRelativePath()
                                                 .prepend(fcd.getName().endsWith(".java") ? "java" : "resources"));
                             });
+                    // Keep the timestamps of files a remap with new mappings didn't touch
+                    task.eachFile(new SkipUnchangedCopyAction(decompressedSourcesLocation));
                     task.into(decompressedSourcesLocation);
                 });
 
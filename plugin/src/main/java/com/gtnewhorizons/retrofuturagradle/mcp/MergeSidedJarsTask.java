@@ -1,10 +1,8 @@
 package com.gtnewhorizons.retrofuturagradle.mcp;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.nio.charset.StandardCharsets;
@@ -18,9 +16,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.collections4.MultiValuedMap;
 import org.apache.commons.collections4.iterators.EnumerationIterator;
@@ -40,18 +39,28 @@ import org.gradle.api.tasks.Optional;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.TaskAction;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.RecordComponentVisitor;
 import org.objectweb.asm.Type;
+import org.objectweb.asm.TypePath;
 import org.objectweb.asm.tree.AnnotationNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
 import org.objectweb.asm.tree.MethodNode;
 
 import com.google.common.collect.ImmutableList;
+import com.gtnewhorizons.retrofuturagradle.util.ClassTransformChain;
 import com.gtnewhorizons.retrofuturagradle.util.Distribution;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarOutputTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTask
@@ -104,12 +113,9 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
         final MergeConfig config = new MergeConfig(
                 getMergeConfigFile().getAsFile().getOrNull(),
                 getMergeConfig().getOrElse(Collections.emptyList()));
+        final ParallelJarWriter outJar = new ParallelJarWriter();
         try (final ZipFile clientJar = new ZipFile(getClientJar().get().getAsFile());
-                final ZipFile serverJar = new ZipFile(getServerJar().get().getAsFile());
-                final FileOutputStream outFOS = new FileOutputStream(getOutputJar().get().getAsFile());
-                final BufferedOutputStream outBOS = new BufferedOutputStream(outFOS);
-                final ZipOutputStream outJar = new ZipOutputStream(outBOS)) {
-            final Set<String> resources = new HashSet<>();
+                final ZipFile serverJar = new ZipFile(getServerJar().get().getAsFile())) {
             final Map<String, ZipEntry> clientClasses = new HashMap<>();
             final Map<String, ZipEntry> serverClasses = new HashMap<>();
             final Set<String> processedClasses = new HashSet<>();
@@ -127,11 +133,8 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
                     }
                     final boolean isResource = !entryName.endsWith(".class") || entryName.startsWith(".");
                     if (isResource) {
-                        if (!resources.contains(entryName)) {
-                            final ZipEntry newEntry = new ZipEntry(entryName);
-                            outJar.putNextEntry(newEntry);
-                            outJar.write(Utilities.readZipEntry(jar, entry));
-                            resources.add(entryName);
+                        if (!outJar.contains(entryName)) {
+                            outJar.put(entryName, Utilities.readZipEntry(jar, entry));
                         }
                     } else {
                         classes.put(entryName.replaceFirst("\\.class$", ""), entry);
@@ -139,40 +142,53 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
                 }
             }
 
+            // Collect the output classes first, then process them all in parallel
+            final List<Pair<String, Supplier<byte[]>>> outputClasses = new ArrayList<>(
+                    clientClasses.size() + serverClasses.size());
             // Process Client classes
             for (Map.Entry<String, ZipEntry> entry : clientClasses.entrySet()) {
                 final String className = entry.getKey(); // e.g. java/lang/Math
                 final ZipEntry clientEntry = entry.getValue();
                 final ZipEntry serverEntry = serverClasses.get(className);
                 if (serverEntry == null) {
-                    copySidedClass(config, clientJar, clientEntry, outJar, true);
+                    outputClasses.add(
+                            Pair.of(clientEntry.getName(), () -> copySidedClass(config, clientJar, clientEntry, true)));
                     processedClasses.add(className);
                 } else {
                     serverClasses.remove(className);
-                    byte[] clientData = Utilities.readZipEntry(clientJar, clientEntry);
-                    byte[] serverData = Utilities.readZipEntry(serverJar, serverEntry);
-                    byte[] mergedData = mergeClasses(clientData, serverData, className);
-                    ZipEntry mergedEntry = new ZipEntry(clientEntry.getName());
-                    outJar.putNextEntry(mergedEntry);
-                    outJar.write(mergedData);
+                    outputClasses.add(Pair.of(clientEntry.getName(), () -> {
+                        try {
+                            byte[] clientData = Utilities.readZipEntry(clientJar, clientEntry);
+                            byte[] serverData = Utilities.readZipEntry(serverJar, serverEntry);
+                            return mergeClasses(clientData, serverData, className);
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }));
                     processedClasses.add(className);
                 }
             }
             // Process remaining server classes
             for (Map.Entry<String, ZipEntry> entry : serverClasses.entrySet()) {
-                copySidedClass(config, serverJar, entry.getValue(), outJar, false);
+                final ZipEntry serverEntry = entry.getValue();
+                outputClasses.add(
+                        Pair.of(serverEntry.getName(), () -> copySidedClass(config, serverJar, serverEntry, false)));
+            }
+            final List<byte[]> outputData = outputClasses.parallelStream().map(p -> p.getRight().get())
+                    .collect(Collectors.toList());
+            for (int i = 0; i < outputClasses.size(); i++) {
+                outJar.put(outputClasses.get(i).getLeft(), outputData.get(i));
             }
             // Add the Side&SideOnly classes to the jar
             for (Class<?> klass : ImmutableList.of(sideClass, sideOnlyClass)) {
                 final String entityName = klass.getName().replace('.', '/');
                 final String zipPath = entityName + ".class";
                 if (!processedClasses.contains(entityName)) {
-                    ZipEntry newEntry = new ZipEntry(zipPath);
-                    outJar.putNextEntry(newEntry);
-                    outJar.write(Utilities.getClassBytes(klass));
+                    outJar.put(zipPath, Utilities.getClassBytes(klass));
                 }
             }
         }
+        outJar.write(getOutputJar().get().getAsFile());
     }
 
     private static class MergeConfig {
@@ -230,23 +246,112 @@ public abstract class MergeSidedJarsTask extends DefaultTask implements IJarOutp
         final Set<String> dontProcess;
     }
 
-    private void copySidedClass(MergeConfig config, ZipFile inputJar, ZipEntry entry, ZipOutputStream outputJar,
-            boolean isClientOnly) throws IOException {
-        ClassNode classNode = Utilities.parseClassBytes(Utilities.readZipEntry(inputJar, entry), entry.getName());
+    private byte[] copySidedClass(MergeConfig config, ZipFile inputJar, ZipEntry entry, boolean isClientOnly) {
+        try {
+            final byte[] classData = Utilities.readZipEntry(inputJar, entry);
+            // Annotate with @SideOnly(Side.SIDE)
+            final ClassTransformChain chain = new ClassTransformChain(
+                    ClassWriter.COMPUTE_MAXS,
+                    true,
+                    next -> new SideOnlyAnnotator(next, config.dontAnnotate, isClientOnly));
+            return chain.transform(classData, entry.getName());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Appends a {@code @SideOnly} annotation after the existing visible class annotations, unless the class is listed
+     * in {@code dontAnnotate}.
+     */
+    private class SideOnlyAnnotator extends ClassVisitor {
+
+        private final Set<String> dontAnnotate;
+        private final boolean isClientOnly;
+        private boolean pending = false;
+
+        SideOnlyAnnotator(ClassVisitor next, Set<String> dontAnnotate, boolean isClientOnly) {
+            super(Opcodes.ASM9, next);
+            this.dontAnnotate = dontAnnotate;
+            this.isClientOnly = isClientOnly;
+        }
 
-        // Annotate with @SideOnly(Side.SIDE)
-        if (!config.dontAnnotate.contains(classNode.name)) {
-            if (classNode.visibleAnnotations == null) {
-                classNode.visibleAnnotations = new ArrayList<>(1);
+        private void flush() {
+            if (pending) {
+                pending = false;
+                makeSideAnnotation(isClientOnly).accept(super.visitAnnotation(Type.getDescriptor(sideOnlyClass), true));
             }
-            classNode.visibleAnnotations.add(makeSideAnnotation(isClientOnly));
         }
 
-        byte[] annotatedClass = Utilities.emitClassBytes(classNode, ClassWriter.COMPUTE_MAXS);
-        if (outputJar != null) {
-            ZipEntry newEntry = new ZipEntry(entry.getName());
-            outputJar.putNextEntry(newEntry);
-            outputJar.write(annotatedClass);
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                String[] interfaces) {
+            pending = !dontAnnotate.contains(name);
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            if (!visible) {
+                flush();
+            }
+            return super.visitAnnotation(descriptor, visible);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor,
+                boolean visible) {
+            flush();
+            return super.visitTypeAnnotation(typeRef, typePath, descriptor, visible);
+        }
+
+        @Override
+        public void visitAttribute(Attribute attribute) {
+            flush();
+            super.visitAttribute(attribute);
+        }
+
+        @Override
+        public void visitNestMember(String nestMember) {
+            flush();
+            super.visitNestMember(nestMember);
+        }
+
+        @Override
+        public void visitPermittedSubclass(String permittedSubclass) {
+            flush();
+            super.visitPermittedSubclass(permittedSubclass);
+        }
+
+        @Override
+        public void visitInnerClass(String name, String outerName, String innerName, int access) {
+            flush();
+            super.visitInnerClass(name, outerName, innerName, access);
+        }
+
+        @Override
+        public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+            flush();
+            return super.visitRecordComponent(name, descriptor, signature);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            flush();
+            return super.visitField(access, name, descriptor, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                String[] exceptions) {
+            flush();
+            return super.visitMethod(access, name, descriptor, signature, exceptions);
+        }
+
+        @Override
+        public void visitEnd() {
+            flush();
+            super.visitEnd();
         }
     }
 
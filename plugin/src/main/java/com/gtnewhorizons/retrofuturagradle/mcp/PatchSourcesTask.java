@@ -33,8 +33,10 @@ import com.cloudbees.diff.PatchException;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.SourceStore;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 import com.gtnewhorizons.retrofuturagradle.util.patching.ContextualPatch;
+import com.gtnewhorizons.retrofuturagradle.util.patching.ParallelPatchEngine;
 
 @CacheableTask
 public abstract class PatchSourcesTask extends DefaultTask implements IJarTransformTask {
@@ -74,7 +76,7 @@ public abstract class PatchSourcesTask extends DefaultTask implements IJarTransf
     }
 
     private final Map<String, byte[]> loadedResources = new HashMap<>();
-    private final Map<String, String> loadedSources = new HashMap<>();
+    private final SourceStore loadedSources = new SourceStore();
 
     @Inject
     public PatchSourcesTask() {
@@ -116,59 +118,61 @@ public abstract class PatchSourcesTask extends DefaultTask implements IJarTransf
     }
 
     private void patchFiles() throws IOException, PatchException {
-        final Utilities.InMemoryJarContextProvider contextProvider = new Utilities.InMemoryJarContextProvider(
-                loadedSources,
-                getPathComponentsToStrip().get());
+        final int stripComponents = getPathComponentsToStrip().get();
+        final ParallelPatchEngine engine = new ParallelPatchEngine(loadedSources, stripComponents)
+                .setMaxFuzz(getMaxFuzziness().get());
+        for (File patchSpec : getPatches()) {
+            final FileCollection patchFiles;
+            if (patchSpec.isDirectory()) {
+                patchFiles = getFileOperations().fileTree(patchSpec);
+            } else if (patchSpec.getName().endsWith(".zip") || patchSpec.getName().endsWith(".jar")) {
+                patchFiles = getFileOperations().zipTree(patchSpec);
+            } else {
+                patchFiles = getFileOperations().immutableFiles(patchSpec);
+            }
+            for (File patchFile : patchFiles) {
+                engine.add(
+                        patchFile.getPath() + " from bundle " + patchSpec.getPath(),
+                        FileUtils.readFileToString(patchFile, StandardCharsets.UTF_8));
+            }
+        }
+        final List<ParallelPatchEngine.Result> results = engine.apply();
+
         final File logFile = new File(getTemporaryDir(), "patching.log");
         Throwable failure = null;
-        int patchCount = 0;
         try (final FileOutputStream fos = new FileOutputStream(logFile);
                 final BufferedOutputStream bos = new BufferedOutputStream(fos);
                 final PrintWriter logStream = new PrintWriter(bos)) {
-            for (File patchSpec : getPatches()) {
-                final FileCollection patchFiles;
-                if (patchSpec.isDirectory()) {
-                    patchFiles = getFileOperations().fileTree(patchSpec);
-                } else if (patchSpec.getName().endsWith(".zip") || patchSpec.getName().endsWith(".jar")) {
-                    patchFiles = getFileOperations().zipTree(patchSpec);
-                } else {
-                    patchFiles = getFileOperations().immutableFiles(patchSpec);
-                }
-                for (File patchFile : patchFiles) {
-                    logStream.printf("Applying patch %s from bundle %s%n", patchFile.getPath(), patchSpec.getPath());
-                    patchCount++;
-                    final ContextualPatch patch = ContextualPatch
-                            .create(FileUtils.readFileToString(patchFile, StandardCharsets.UTF_8), contextProvider);
-                    patch.setAccessC14N(true);
-                    patch.setMaxFuzz(getMaxFuzziness().get());
-                    final List<ContextualPatch.PatchReport> reports = patch.patch(false);
-                    for (ContextualPatch.PatchReport report : reports) {
-                        if (!report.getStatus().isSuccess()) {
-                            logStream.printf(
-                                    "Patch %s failed: %s%n",
-                                    contextProvider.strip(report.getTarget()),
-                                    report.getFailure().getMessage());
-                            failure = report.getFailure();
-                            for (ContextualPatch.HunkReport hunk : report.getHunks()) {
-                                if (hunk.getStatus() == ContextualPatch.PatchStatus.Fuzzed) {
-                                    logStream.printf(" - Hunk %d fuzzed %d%n", hunk.getHunkID(), hunk.getFuzz());
-                                } else if (!hunk.getStatus().isSuccess() && getLogger().isErrorEnabled()) {
-                                    logStream.printf(
-                                            " - Hunk %d failed (%d+%d -> %d+%d): %n%s%n",
-                                            hunk.getHunkID(),
-                                            hunk.hunk.baseStart,
-                                            hunk.hunk.baseCount,
-                                            hunk.hunk.modifiedStart,
-                                            hunk.hunk.modifiedCount,
-                                            StringUtils.join(hunk.hunk.lines, "\n"));
-                                }
+            for (ParallelPatchEngine.Result result : results) {
+                logStream.printf("Applying patch %s%n", result.name);
+                for (ContextualPatch.PatchReport report : result.reports) {
+                    if (!report.getStatus().isSuccess()) {
+                        logStream.printf(
+                                "Patch %s failed: %s%n",
+                                Utilities.InMemoryJarContextProvider.strip(report.getTarget(), stripComponents),
+                                report.getFailure().getMessage());
+                        failure = report.getFailure();
+                        for (ContextualPatch.HunkReport hunk : report.getHunks()) {
+                            if (hunk.getStatus() == ContextualPatch.PatchStatus.Fuzzed) {
+                                logStream.printf(" - Hunk %d fuzzed %d%n", hunk.getHunkID(), hunk.getFuzz());
+                            } else if (!hunk.getStatus().isSuccess() && getLogger().isErrorEnabled()) {
+                                logStream.printf(
+                                        " - Hunk %d failed (%d+%d -> %d+%d): %n%s%n",
+                                        hunk.getHunkID(),
+                                        hunk.hunk.baseStart,
+                                        hunk.hunk.baseCount,
+                                        hunk.hunk.modifiedStart,
+                                        hunk.hunk.modifiedCount,
+                                        StringUtils.join(hunk.hunk.lines, "\n"));
                             }
-                        } else if (report.getStatus() == ContextualPatch.PatchStatus.Fuzzed) {
-                            logStream.printf("Patch fuzzed: %s%n", contextProvider.strip(report.getTarget()));
-                            for (ContextualPatch.HunkReport hunk : report.getHunks()) {
-                                if (hunk.getStatus() == ContextualPatch.PatchStatus.Fuzzed) {
-                                    logStream.printf(" - Hunk %d fuzzed %d%n", hunk.getHunkID(), hunk.getFuzz());
-                                }
+                        }
+                    } else if (report.getStatus() == ContextualPatch.PatchStatus.Fuzzed) {
+                        logStream.printf(
+                                "Patch fuzzed: %s%n",
+                                Utilities.InMemoryJarContextProvider.strip(report.getTarget(), stripComponents));
+                        for (ContextualPatch.HunkReport hunk : report.getHunks()) {
+                            if (hunk.getStatus() == ContextualPatch.PatchStatus.Fuzzed) {
+                                logStream.printf(" - Hunk %d fuzzed %d%n", hunk.getHunkID(), hunk.getFuzz());
                             }
                         }
                     }
@@ -179,6 +183,6 @@ public abstract class PatchSourcesTask extends DefaultTask implements IJarTransf
             getLogger().error("Patching errors occured, check the logfile at {} for details", logFile.getPath());
             throw new RuntimeException(failure);
         }
-        getLogger().lifecycle("Applied {} patches", patchCount);
+        getLogger().lifecycle("Applied {} patches", results.size());
     }
 }
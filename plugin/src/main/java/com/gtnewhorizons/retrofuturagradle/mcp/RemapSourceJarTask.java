@@ -4,17 +4,28 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
+import javax.annotation.Nullable;
+
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.gradle.api.DefaultTask;
@@ -52,10 +63,17 @@ import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSol
 import com.github.javaparser.symbolsolver.resolution.typesolvers.JarTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 import com.google.common.base.Strings;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.gson.JsonParseException;
+import com.gtnewhorizons.retrofuturagradle.BuildConfig;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.JavadocAdder;
 import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
 import com.gtnewhorizons.retrofuturagradle.util.IJarTransformTask;
+import com.gtnewhorizons.retrofuturagradle.util.MappingIndex;
 import com.gtnewhorizons.retrofuturagradle.util.MessageDigestConsumer;
+import com.gtnewhorizons.retrofuturagradle.util.SourceStore;
+import com.gtnewhorizons.retrofuturagradle.util.SrgIdTable;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTask
@@ -111,7 +129,7 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
     }
 
     private final Map<String, byte[]> loadedResources = new HashMap<>();
-    private final Map<String, String> loadedSources = new HashMap<>();
+    private final SourceStore loadedSources = new SourceStore();
 
     private Utilities.MappingsSet mappings = new Utilities.MappingsSet();
 
@@ -126,27 +144,74 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
     private static final Pattern FIELD_DEFINITION = Pattern
             .compile("^((?: {4})+|\\t+)(?:[\\w$.\\[\\]]+ )+(field_[0-9]+_[a-zA-Z_]+) *(?:=|;)");
 
+    // [UPDATE] Bump when the remap state format changes
+    private static final int REMAP_STATE_VERSION = 1;
+
+    /**
+     * What the last run remapped, saved in the task's temporary directory. When the next run only has different
+     * mappings, only the files that contain SRG names whose mapping changed are remapped again, the others are taken
+     * from the last output as they are.
+     */
+    private static final class RemapState {
+
+        /** Everything besides the input jar and the mappings that the output depends on */
+        String settings;
+        /** SHA256 of the input jar */
+        String inputJar;
+        /** SHA256 of the output jar, in case something else replaced it since */
+        String outputJar;
+        /**
+         * {@link MappingIndex#getHash() Hashes} of the method, field and then param mappings, highest priority first
+         */
+        List<String> mappings;
+        /** Zip entry to the number of generics applied to it, only for files that got any */
+        Map<String, Integer> generics;
+    }
+
     @TaskAction
     public void remapSources() throws IOException {
+        final File inputJar = getInputJar().get().getAsFile();
+        final File outputJar = getOutputJar().get().getAsFile();
         loadedResources.clear();
         loadedSources.clear();
-        Utilities.loadMemoryJar(getInputJar().get().getAsFile(), loadedResources, loadedSources);
+        Utilities.loadMemoryJar(inputJar, loadedResources, loadedSources);
 
+        final File indexDir = Utilities.getCacheDir(getProject(), MappingIndex.CACHE_DIR_NAME);
         mappings = Utilities.loadMappingCsvs(
+                indexDir,
                 getMethodCsv().get().getAsFile(),
                 getFieldCsv().get().getAsFile(),
                 getParamCsv().getAsFile().getOrNull(),
                 getExtraParamsCsvs().getFiles(),
                 getGenericFieldsCsvName().getOrNull());
 
-        final Matcher mSrg = SRG_FINDER.matcher("");
-        final Matcher mMethod = METHOD_DEFINITION.matcher("");
-        final Matcher mField = FIELD_DEFINITION.matcher("");
-        final Matcher mCtor = CONSTRUCTOR_DEFINITION.matcher("");
-
+        final SrgSourceRemapper srgRemapper = new SrgSourceRemapper(mappings);
         final boolean addJavadocs = getAddJavadocs().get();
         final boolean addDummyJavadocs = getAddDummyJavadocs().get();
 
+        final File stateFile = new File(getTemporaryDir(), "remap-state.json");
+        final RemapState previousState = readState(stateFile);
+        // Not valid anymore until this run finishes
+        FileUtils.deleteQuietly(stateFile);
+        final RemapState state = new RemapState();
+        state.settings = "v" + REMAP_STATE_VERSION
+                + "|"
+                + BuildConfig.PLUGIN_VERSION
+                + "|"
+                + getGenericFieldsCsvName().getOrNull()
+                + "|"
+                + addJavadocs
+                + "|"
+                + addDummyJavadocs;
+        state.inputJar = Hex.encodeHexString(HashUtils.sha256(inputJar));
+        state.mappings = Arrays.asList(mappings.getMappingsHash().split(","));
+        state.generics = new ConcurrentHashMap<>();
+
+        final Set<String> changedNames = DEBUG_PRINT_ALL_GENERICS ? null
+                : findChangedNames(previousState, state, outputJar, indexDir);
+        final SrgIdTable changedTable = SrgIdTable
+                .of(changedNames == null ? Collections.<String, String>emptyMap() : Maps.asMap(changedNames, n -> n));
+
         JavaParser javaParser = null;
         PrintWriter genLog = null;
         if (DEBUG_PRINT_ALL_GENERICS) {
@@ -177,213 +242,52 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
         }
 
         if (DEBUG_PRINT_ALL_GENERICS) {
-            mappings.genericMappings.clear();
-            mappings.genericPatches.clear();
+            mappings.clearGenerics();
         }
 
-        final Set<String> paramsApplied = new HashSet<>(16);
-        for (Map.Entry<String, String> srcEntry : loadedSources.entrySet()) {
-            final String originalSrc = srcEntry.getValue();
-            final String[] originalLines = originalSrc.split("(\r\n)|\n|\r");
-            final ArrayList<String> newLines = new ArrayList<>(originalLines.length);
-
-            for (final String originalLine : originalLines) {
-                String newLine = originalLine;
-                mSrg.reset(originalLine);
-                mMethod.reset(originalLine);
-                mField.reset(originalLine);
-                mCtor.reset(originalLine);
-                paramsApplied.clear();
-                if (!newLine.trim().startsWith("return ")) {
-                    if (mMethod.find() && !Character.isUpperCase(mMethod.group(2).charAt(0))) {
-                        final String methodName = mMethod.group(2);
-                        final Utilities.Mapping methodMapping = mappings.methodMappings.get(methodName);
-                        if ((addJavadocs || addDummyJavadocs) && methodMapping != null
-                                && !methodMapping.javadoc.isEmpty()) {
-                            addBeforeAnnotations(
-                                    newLines,
-                                    addDummyJavadocs ? (mMethod.group(1) + "// JAVADOC METHOD $$ " + methodName)
-                                            : JavadocAdder.buildJavadoc(mMethod.group(1), methodMapping.javadoc, true));
-                        }
-                        final List<Utilities.GenericMapping> genMaps = mappings.genericMappings.get(methodName);
-                        for (Utilities.GenericMapping genMap : genMaps) {
-                            if (!genMap.zipEntry.equals(srcEntry.getKey())) {
-                                continue;
-                            }
-                            if (paramsApplied.contains(genMap.param)) {
-                                continue;
-                            }
-                            final String[] typeComps = genMap.type.split("\\.");
-                            if (!newLine.contains(typeComps[typeComps.length - 1])) {
-                                continue;
-                            }
-                            genMap.uses++;
-                            paramsApplied.add(genMap.param);
-                            try {
-                                if (genMap.param.equals("@return")) {
-                                    final int parenIdx = newLine.indexOf('(');
-                                    final int nameIdx = newLine.substring(0, parenIdx).lastIndexOf(' ');
-                                    newLine = newLine.substring(0, nameIdx) + genMap.suffix
-                                            + newLine.substring(nameIdx);
-                                } else {
-                                    final int whichParam = Integer.parseInt(genMap.param);
-                                    final int paramsOffset = newLine.indexOf('(');
-                                    int paramStart = (whichParam == 0) ? (paramsOffset + 1)
-                                            : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
-                                    while (Character.isWhitespace(newLine.charAt(paramStart))) {
-                                        paramStart++;
-                                    }
-                                    int paramSplit = newLine.indexOf(' ', paramStart);
-                                    while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
-                                        paramSplit = newLine.indexOf(' ', paramSplit + 1);
-                                    }
-                                    if (paramSplit == -1) {
-                                        throw new IllegalStateException(
-                                                "Could not find param " + whichParam
-                                                        + " in line: |"
-                                                        + newLine
-                                                        + "| file: "
-                                                        + srcEntry.getKey()
-                                                        + ":"
-                                                        + (newLines.size() + 1));
-                                    }
-                                    newLine = newLine.substring(0, paramSplit) + genMap.suffix
-                                            + newLine.substring(paramSplit);
-                                }
-                            } catch (Exception e) {
-                                throw new IllegalStateException(
-                                        "Error applying generic mapping " + genMap
-                                                + " to line |"
-                                                + newLine
-                                                + "| file: "
-                                                + srcEntry.getKey()
-                                                + ":"
-                                                + (newLines.size() + 1));
-                            }
-                        }
-                    } else if ((addJavadocs || addDummyJavadocs) && originalLine.trim().startsWith("// JAVADOC ")) {
-                        if (mSrg.find()) {
-                            final String indent = originalLine.substring(0, originalLine.indexOf("// JAVADOC"));
-                            final String entityName = mSrg.group();
-                            if (entityName.startsWith("func_")) {
-                                final Utilities.Mapping methodMapping = mappings.methodMappings.get(entityName);
-                                if (methodMapping != null && !Strings.isNullOrEmpty(methodMapping.javadoc)) {
-                                    newLine = JavadocAdder.buildJavadoc(indent, methodMapping.javadoc, true);
-                                }
-                            } else if (entityName.startsWith("field_")) {
-                                final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(entityName);
-                                if (fieldMapping != null && !Strings.isNullOrEmpty(fieldMapping.javadoc)) {
-                                    newLine = JavadocAdder.buildJavadoc(indent, fieldMapping.javadoc, true);
-                                }
-                            }
-
-                            if (newLine.endsWith(System.lineSeparator())) {
-                                newLine = newLine.substring(0, newLine.length() - System.lineSeparator().length());
-                            }
-                        }
-                    } else if (mField.find()) {
-                        final String fieldName = mField.group(2);
-                        final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(fieldName);
-                        if ((addJavadocs || addDummyJavadocs) && fieldMapping != null
-                                && !fieldMapping.javadoc.isEmpty()) {
-                            addBeforeAnnotations(
-                                    newLines,
-                                    addDummyJavadocs ? (mField.group(1) + "// JAVADOC FIELD $$ " + fieldName)
-                                            : JavadocAdder.buildJavadoc(mField.group(1), fieldMapping.javadoc, false));
-                        }
-                        final List<Utilities.GenericMapping> genMaps = mappings.genericMappings.get(fieldName);
-                        for (Utilities.GenericMapping genMap : genMaps) {
-                            if (!genMap.zipEntry.equals(srcEntry.getKey())) {
-                                continue;
-                            }
-                            genMap.uses++;
-                            final int splitIdx = newLine.indexOf(" field_");
-                            newLine = newLine.substring(0, splitIdx) + genMap.suffix + newLine.substring(splitIdx);
-                        }
-                    } else if (mCtor.find()) {
-                        final String key = srcEntry.getKey() + "@init:" + extractCtorSig(newLine, newLines.size() + 1);
-                        final List<Utilities.GenericMapping> genMaps = mappings.genericMappings.get(key);
-                        for (Utilities.GenericMapping genMap : genMaps) {
-                            if (!genMap.zipEntry.equals(srcEntry.getKey())) {
-                                continue;
-                            }
-                            if (paramsApplied.contains(genMap.param)) {
-                                continue;
-                            }
-                            final String[] typeComps = genMap.type.split("\\.");
-                            if (!newLine.contains(typeComps[typeComps.length - 1])) {
-                                continue;
-                            }
-                            genMap.uses++;
-                            paramsApplied.add(genMap.param);
-                            final int whichParam = Integer.parseInt(genMap.param);
-                            final int paramsOffset = newLine.indexOf('(');
-                            int paramStart = (whichParam == 0) ? (paramsOffset + 1)
-                                    : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
-                            while (Character.isWhitespace(newLine.charAt(paramStart))) {
-                                paramStart++;
-                            }
-                            int paramSplit = newLine.indexOf(' ', paramStart);
-                            while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
-                                paramSplit = newLine.indexOf(' ', paramSplit + 1);
-                            }
-                            if (paramSplit == -1) {
-                                throw new IllegalStateException(
-                                        "Could not find param " + whichParam
-                                                + " in line: |"
-                                                + newLine
-                                                + "| file: "
-                                                + srcEntry.getKey()
-                                                + ":"
-                                                + (newLines.size() + 1));
-                            }
-                            newLine = newLine.substring(0, paramSplit) + genMap.suffix + newLine.substring(paramSplit);
+        final List<String> paths = new ArrayList<>(loadedSources.keySet());
+        final AtomicInteger reusedFiles = new AtomicInteger();
+        // Only the files not affected by the changed names are read from the last output, and only if there is one
+        try (ZipFile previousJar = changedNames == null ? null : new ZipFile(outputJar)) {
+            // Files are independent of each other, the javaparser used for debugging isn't thread-safe though
+            (DEBUG_PRINT_ALL_GENERICS ? paths.stream() : paths.parallelStream()).forEach(path -> {
+                final SrgSourceRemapper fileRemapper = srgRemapper.copy();
+                if (previousJar != null && !fileRemapper.containsAny(loadedSources.get(path), changedTable)) {
+                    final String previousSource = readSource(previousJar, path);
+                    if (previousSource != null) {
+                        loadedSources.put(path, previousSource);
+                        final Integer generics = previousState.generics.get(path);
+                        if (generics != null) {
+                            state.generics.put(path, generics);
                         }
+                        reusedFiles.incrementAndGet();
+                        return;
                     }
                 }
-                if (!mappings.genericMappings.isEmpty()) {
-                    // Extra patches
-                    newLine = newLine.replace("(Object)null", "null");
+                loadedSources.putLines(
+                        path,
+                        remapFile(path, loadedSources.getLines(path), fileRemapper, addJavadocs, addDummyJavadocs));
+                final int generics = mappings.getGenericMappings(path).values().stream().mapToInt(m -> m.uses)
+                        .sum();
+                if (generics > 0) {
+                    state.generics.put(path, generics);
                 }
-                if (!DEBUG_PRINT_ALL_GENERICS) {
-                    final StringBuffer mappedLine = new StringBuffer();
-                    mSrg.reset(newLine);
-                    while (mSrg.find()) {
-                        final String found = mSrg.group(1);
-                        final String mapped;
-                        if (found.startsWith("p_")) {
-                            mapped = mappings.paramMappings.getOrDefault(found, found);
-                        } else if (found.startsWith("func_")) {
-                            final Utilities.Mapping mapping = mappings.methodMappings.get(found);
-                            mapped = (mapping != null) ? mapping.name : found;
-                        } else if (found.startsWith("field_")) {
-                            final Utilities.Mapping mapping = mappings.fieldMappings.get(found);
-                            mapped = (mapping != null) ? mapping.name : found;
-                        } else {
-                            mapped = found;
-                        }
-                        mSrg.appendReplacement(mappedLine, mapped);
-                        mappedLine.append(mSrg.group(2));
-                    }
-                    mSrg.appendTail(mappedLine);
-                    newLine = mappedLine.toString();
-
-                    final List<Utilities.GenericPatch> patches = mappings.genericPatches.get(srcEntry.getKey());
-                    for (Utilities.GenericPatch patch : patches) {
-                        if (newLine.contains(patch.containsFilter)) {
-                            newLine = newLine.replace(patch.toReplace, patch.replaceWith);
-                        }
-                    }
-                }
-                newLines.add(newLine);
-            }
-
-            srcEntry.setValue(StringUtils.join(newLines, System.lineSeparator()));
+            });
+        }
+        if (changedNames != null) {
+            getLogger().lifecycle(
+                    "{} SRG names got new mappings, remapped {} files and kept {} unaffected ones",
+                    changedNames.size(),
+                    paths.size() - reusedFiles.get(),
+                    reusedFiles.get());
+        }
 
-            if (DEBUG_PRINT_ALL_GENERICS) {
+        if (DEBUG_PRINT_ALL_GENERICS) {
+            for (Map.Entry<String, String> srcEntry : loadedSources.entrySet()) {
                 if (!srcEntry.getKey().startsWith("net/minecraft") && !srcEntry.getKey().startsWith("/net/minecraft")) {
                     continue;
                 }
+                final List<String> newLines = loadedSources.getLines(srcEntry.getKey());
 
                 ParseResult<CompilationUnit> result = javaParser.parse(srcEntry.getValue());
                 CompilationUnit cu = result.getResult().orElse(null);
@@ -394,17 +298,262 @@ public abstract class RemapSourceJarTask extends DefaultTask implements IJarTran
             }
         }
 
-        int totalGenericsApplied = 0;
-        for (Map.Entry<String, Utilities.GenericMapping> entry : mappings.genericMappings.entries()) {
-            totalGenericsApplied += entry.getValue().uses;
-        }
+        final int totalGenericsApplied = state.generics.values().stream().mapToInt(Integer::intValue).sum();
         getLogger().lifecycle("Applied {} missing generics", totalGenericsApplied);
 
         if (genLog != null) {
             genLog.close();
         }
 
-        Utilities.saveMemoryJar(loadedResources, loadedSources, getOutputJar().get().getAsFile(), false);
+        Utilities.saveMemoryJar(loadedResources, loadedSources, outputJar, false);
+
+        state.outputJar = Hex.encodeHexString(HashUtils.sha256(outputJar));
+        state.generics = new TreeMap<>(state.generics);
+        FileUtils.writeStringToFile(stateFile, Utilities.GSON.toJson(state), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The contents of the source file in the jar, or null if it doesn't have it
+     */
+    private static @Nullable String readSource(ZipFile jar, String path) {
+        final ZipEntry entry = jar.getEntry(path);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return new String(Utilities.readZipEntry(jar, entry), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static @Nullable RemapState readState(File stateFile) {
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        try {
+            return Utilities.GSON
+                    .fromJson(FileUtils.readFileToString(stateFile, StandardCharsets.UTF_8), RemapState.class);
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A name whose mapping didn't change in any of the layered mapping files can't map differently, so comparing the
+     * files one by one finds all the changed names.
+     *
+     * @return The SRG names whose mappings changed since the previous run, or null if its output can't be reused
+     */
+    private static @Nullable Set<String> findChangedNames(@Nullable RemapState previous, RemapState current,
+            File outputJar, File indexDir) throws IOException {
+        if (previous == null || previous.mappings == null
+                || previous.generics == null
+                || !current.settings.equals(previous.settings)
+                || !current.inputJar.equals(previous.inputJar)
+                || previous.mappings.size() != current.mappings.size()
+                || !outputJar.isFile()
+                || !Hex.encodeHexString(HashUtils.sha256(outputJar)).equals(previous.outputJar)) {
+            return null;
+        }
+        final Set<String> changed = new HashSet<>();
+        for (int i = 0; i < current.mappings.size(); i++) {
+            final String previousHash = previous.mappings.get(i);
+            final String currentHash = current.mappings.get(i);
+            if (previousHash.equals(currentHash)) {
+                continue;
+            }
+            final MappingIndex previousIndex = MappingIndex.openExisting(indexDir, previousHash);
+            final MappingIndex currentIndex = MappingIndex.openExisting(indexDir, currentHash);
+            if (previousIndex == null || currentIndex == null) {
+                return null;
+            }
+            changed.addAll(previousIndex.diff(currentIndex));
+        }
+        return changed;
+    }
+
+    /**
+     * Remaps the SRG names of a single file and applies the generic mappings recorded for it. Safe to run for multiple
+     * files at once, as every generic mapping belongs to exactly one file.
+     *
+     * @param srgRemapper A remapper that isn't in use by any other thread
+     */
+    private List<String> remapFile(String path, List<String> originalLines, SrgSourceRemapper srgRemapper,
+            boolean addJavadocs, boolean addDummyJavadocs) {
+        final Matcher mSrg = SRG_FINDER.matcher("");
+        final Matcher mMethod = METHOD_DEFINITION.matcher("");
+        final Matcher mField = FIELD_DEFINITION.matcher("");
+        final Matcher mCtor = CONSTRUCTOR_DEFINITION.matcher("");
+        final Set<String> paramsApplied = new HashSet<>(16);
+        final ListMultimap<String, Utilities.GenericMapping> fileGenerics = mappings.getGenericMappings(path);
+        // Constructor lines are only looked at for their generics, so files without any skip them entirely
+        final boolean hasGenerics = !fileGenerics.isEmpty();
+        final List<Utilities.GenericPatch> filePatches = mappings.genericPatches.get(path);
+        final ArrayList<String> newLines = new ArrayList<>(originalLines.size());
+
+        for (final String originalLine : originalLines) {
+            String newLine = originalLine;
+            paramsApplied.clear();
+            // All the definition patterns need an indent, and all but the field one an opening parenthesis
+            final boolean indented = !originalLine.isEmpty()
+                    && (originalLine.charAt(0) == ' ' || originalLine.charAt(0) == '\t');
+            final boolean hasParen = indented && originalLine.indexOf('(') >= 0;
+            if (!newLine.trim().startsWith("return ")) {
+                if (hasParen && mMethod.reset(originalLine).find()
+                        && !Character.isUpperCase(mMethod.group(2).charAt(0))) {
+                    final String methodName = mMethod.group(2);
+                    final Utilities.Mapping methodMapping = mappings.methodMappings.get(methodName);
+                    if ((addJavadocs || addDummyJavadocs) && methodMapping != null
+                            && !methodMapping.javadoc.isEmpty()) {
+                        addBeforeAnnotations(
+                                newLines,
+                                addDummyJavadocs ? (mMethod.group(1) + "// JAVADOC METHOD $$ " + methodName)
+                                        : JavadocAdder.buildJavadoc(mMethod.group(1), methodMapping.javadoc, true));
+                    }
+                    final List<Utilities.GenericMapping> genMaps = fileGenerics.get(methodName);
+                    for (Utilities.GenericMapping genMap : genMaps) {
+                        if (paramsApplied.contains(genMap.param)) {
+                            continue;
+                        }
+                        final String[] typeComps = genMap.type.split("\\.");
+                        if (!newLine.contains(typeComps[typeComps.length - 1])) {
+                            continue;
+                        }
+                        genMap.uses++;
+                        paramsApplied.add(genMap.param);
+                        try {
+                            if (genMap.param.equals("@return")) {
+                                final int parenIdx = newLine.indexOf('(');
+                                final int nameIdx = newLine.substring(0, parenIdx).lastIndexOf(' ');
+                                newLine = newLine.substring(0, nameIdx) + genMap.suffix
+                                        + newLine.substring(nameIdx);
+                            } else {
+                                final int whichParam = Integer.parseInt(genMap.param);
+                                final int paramsOffset = newLine.indexOf('(');
+                                int paramStart = (whichParam == 0) ? (paramsOffset + 1)
+                                        : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
+                                while (Character.isWhitespace(newLine.charAt(paramStart))) {
+                                    paramStart++;
+                                }
+                                int paramSplit = newLine.indexOf(' ', paramStart);
+                                while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
+                                    paramSplit = newLine.indexOf(' ', paramSplit + 1);
+                                }
+                                if (paramSplit == -1) {
+                                    throw new IllegalStateException(
+                                            "Could not find param " + whichParam
+                                                    + " in line: |"
+                                                    + newLine
+                                                    + "| file: "
+                                                    + path
+                                                    + ":"
+                                                    + (newLines.size() + 1));
+                                }
+                                newLine = newLine.substring(0, paramSplit) + genMap.suffix
+                                        + newLine.substring(paramSplit);
+                            }
+                        } catch (Exception e) {
+                            throw new IllegalStateException(
+                                    "Error applying generic mapping " + genMap
+                                            + " to line |"
+                                            + newLine
+                                            + "| file: "
+                                            + path
+                                            + ":"
+                                            + (newLines.size() + 1));
+                        }
+                    }
+                } else if ((addJavadocs || addDummyJavadocs) && originalLine.trim().startsWith("// JAVADOC ")) {
+                    if (mSrg.reset(originalLine).find()) {
+                        final String indent = originalLine.substring(0, originalLine.indexOf("// JAVADOC"));
+                        final String entityName = mSrg.group();
+                        if (entityName.startsWith("func_")) {
+                            final Utilities.Mapping methodMapping = mappings.methodMappings.get(entityName);
+                            if (methodMapping != null && !Strings.isNullOrEmpty(methodMapping.javadoc)) {
+                                newLine = JavadocAdder.buildJavadoc(indent, methodMapping.javadoc, true);
+                            }
+                        } else if (entityName.startsWith("field_")) {
+                            final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(entityName);
+                            if (fieldMapping != null && !Strings.isNullOrEmpty(fieldMapping.javadoc)) {
+                                newLine = JavadocAdder.buildJavadoc(indent, fieldMapping.javadoc, true);
+                            }
+                        }
+
+                        if (newLine.endsWith(System.lineSeparator())) {
+                            newLine = newLine.substring(0, newLine.length() - System.lineSeparator().length());
+                        }
+                    }
+                } else if (indented && originalLine.contains("field_") && mField.reset(originalLine).find()) {
+                    final String fieldName = mField.group(2);
+                    final Utilities.Mapping fieldMapping = mappings.fieldMappings.get(fieldName);
+                    if ((addJavadocs || addDummyJavadocs) && fieldMapping != null
+                            && !fieldMapping.javadoc.isEmpty()) {
+                        addBeforeAnnotations(
+                                newLines,
+                                addDummyJavadocs ? (mField.group(1) + "// JAVADOC FIELD $$ " + fieldName)
+                                        : JavadocAdder.buildJavadoc(mField.group(1), fieldMapping.javadoc, false));
+                    }
+                    final List<Utilities.GenericMapping> genMaps = fileGenerics.get(fieldName);
+                    for (Utilities.GenericMapping genMap : genMaps) {
+                        genMap.uses++;
+                        final int splitIdx = newLine.indexOf(" field_");
+                        newLine = newLine.substring(0, splitIdx) + genMap.suffix + newLine.substring(splitIdx);
+                    }
+                } else if (hasGenerics && hasParen && mCtor.reset(originalLine).find()) {
+                    final String key = path + "@init:" + extractCtorSig(newLine, newLines.size() + 1);
+                    final List<Utilities.GenericMapping> genMaps = fileGenerics.get(key);
+                    for (Utilities.GenericMapping genMap : genMaps) {
+                        if (paramsApplied.contains(genMap.param)) {
+                            continue;
+                        }
+                        final String[] typeComps = genMap.type.split("\\.");
+                        if (!newLine.contains(typeComps[typeComps.length - 1])) {
+                            continue;
+                        }
+                        genMap.uses++;
+                        paramsApplied.add(genMap.param);
+                        final int whichParam = Integer.parseInt(genMap.param);
+                        final int paramsOffset = newLine.indexOf('(');
+                        int paramStart = (whichParam == 0) ? (paramsOffset + 1)
+                                : (StringUtils.ordinalIndexOf(newLine, ",", whichParam) + 1);
+                        while (Character.isWhitespace(newLine.charAt(paramStart))) {
+                            paramStart++;
+                        }
+                        int paramSplit = newLine.indexOf(' ', paramStart);
+                        while (newLine.substring(0, paramSplit).trim().endsWith("final")) {
+                            paramSplit = newLine.indexOf(' ', paramSplit + 1);
+                        }
+                        if (paramSplit == -1) {
+                            throw new IllegalStateException(
+                                    "Could not find param " + whichParam
+                                            + " in line: |"
+                                            + newLine
+                                            + "| file: "
+                                            + path
+                                            + ":"
+                                            + (newLines.size() + 1));
+                        }
+                        newLine = newLine.substring(0, paramSplit) + genMap.suffix + newLine.substring(paramSplit);
+                    }
+                }
+            }
+            if (!mappings.genericMappings.isEmpty()) {
+                // Extra patches
+                newLine = newLine.replace("(Object)null", "null");
+            }
+            if (!DEBUG_PRINT_ALL_GENERICS) {
+                newLine = srgRemapper.remapLine(newLine);
+
+                for (Utilities.GenericPatch patch : filePatches) {
+                    if (newLine.contains(patch.containsFilter)) {
+                        newLine = newLine.replace(patch.toReplace, patch.replaceWith);
+                    }
+                }
+            }
+            newLines.add(newLine);
+        }
+        return newLines;
     }
 
     private static String extractCtorSig(String line, int lineNo) {
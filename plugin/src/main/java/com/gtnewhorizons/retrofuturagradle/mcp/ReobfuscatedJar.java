@@ -3,6 +3,8 @@ package com.gtnewhorizons.retrofuturagradle.mcp;
 import java.io.File;
 import java.io.IOException;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Set;
 
 import net.md_5.specialsource.JarMapping;
@@ -29,6 +31,8 @@ import org.gradle.jvm.tasks.Jar;
 
 import com.gtnewhorizons.retrofuturagradle.Constants;
 import com.gtnewhorizons.retrofuturagradle.fgpatchers.ReobfExceptor;
+import com.gtnewhorizons.retrofuturagradle.util.MappingIndex;
+import com.gtnewhorizons.retrofuturagradle.util.ReadOnlyJar;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTask
@@ -87,22 +91,24 @@ public abstract class ReobfuscatedJar extends Jar {
 
     @Override
     protected void copy() {
-        try {
-            final File tmpDir = getTemporaryDir();
-            final File tmpObfedJar = new File(tmpDir, "working.jar");
-            final File recompJar = new File(tmpDir, "recomp.jar");
-            final File tmpInjectedJar = new File(tmpDir, "inject.jar");
-            FileUtils.copyFile(getInputJar().get().getAsFile(), tmpObfedJar);
-            FileUtils.copyFile(getRecompMcJar().get().getAsFile(), recompJar);
+        final File tmpDir = getTemporaryDir();
+        final File outputJar = super.getArchiveFile().get().getAsFile();
+        // Both input jars are only ever read from, so they're used in place instead of copied
+        try (final ReadOnlyJar obfedJar = ReadOnlyJar.of(getInputJar().get().getAsFile());
+                final ReadOnlyJar recompJar = ReadOnlyJar.of(getRecompMcJar().get().getAsFile())) {
+            // Writing over the jar that's being read would corrupt it, go through a temporary file in that case
+            final boolean overwritesInput = outputJar.getAbsoluteFile().equals(obfedJar.getFile().getAbsoluteFile());
+            final File remappedJar = overwritesInput ? new File(tmpDir, "inject.jar") : outputJar;
 
             final File srg = File.createTempFile("reobf-default", ".srg", tmpDir);
             final File extraSrg = File.createTempFile("reobf-extra", ".srg", tmpDir);
             final ReobfExceptor exc = new ReobfExceptor();
-            exc.deobfJar = tmpObfedJar;
-            exc.toReobfJar = recompJar;
+            exc.deobfJar = obfedJar.getFile();
+            exc.toReobfJar = recompJar.getFile();
             exc.excConfig = getExceptorCfg().get().getAsFile();
             exc.fieldCSV = getFieldCsv().get().getAsFile();
             exc.methodCSV = getMethodCsv().get().getAsFile();
+            exc.mappingIndexDir = Utilities.getCacheDir(getProject(), MappingIndex.CACHE_DIR_NAME);
             exc.doFirstThings();
 
             exc.buildSrg(getSrg().get().getAsFile(), srg);
@@ -120,7 +126,7 @@ public abstract class ReobfuscatedJar extends Jar {
             }
             final JarRemapper remapper = new JarRemapper(null, mapping);
 
-            try (net.md_5.specialsource.Jar inputJar = net.md_5.specialsource.Jar.init(tmpObfedJar)) {
+            try (net.md_5.specialsource.Jar inputJar = net.md_5.specialsource.Jar.init(obfedJar.getFile())) {
                 JointProvider inheritanceProviders = new JointProvider();
                 inheritanceProviders.add(new JarProvider(inputJar));
                 Set<File> cpFiles = getReferenceClasspath().getFiles();
@@ -130,18 +136,17 @@ public abstract class ReobfuscatedJar extends Jar {
                 }
                 mapping.setFallbackInheritanceProvider(inheritanceProviders);
 
-                remapper.remapJar(inputJar, tmpInjectedJar);
+                FileUtils.forceMkdirParent(remappedJar);
+                remapper.remapJar(inputJar, remappedJar);
             }
 
-            final File outputJar = super.getArchiveFile().get().getAsFile();
-            FileUtils.copyFile(tmpInjectedJar, outputJar);
-
             if (!Constants.DEBUG_NO_TMP_CLEANUP) {
-                FileUtils.deleteQuietly(tmpInjectedJar);
-                FileUtils.deleteQuietly(tmpObfedJar);
                 FileUtils.deleteQuietly(srg);
                 FileUtils.deleteQuietly(extraSrg);
-                FileUtils.deleteQuietly(recompJar);
+            }
+            if (overwritesInput) {
+                obfedJar.close();
+                Files.move(remappedJar.toPath(), outputJar.toPath(), StandardCopyOption.REPLACE_EXISTING);
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -0,0 +1,162 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import com.gtnewhorizons.retrofuturagradle.util.SrgIdTable;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+/**
+ * Replaces the SRG names in a line of source code with their mapped names in a single forward scan, without regexes.
+ * <p>
+ * It finds exactly what {@code (func_\d+_[a-zA-Z_]+|field_\d+_[a-zA-Z_]+|p_\w+_\d+_)([^\w$]|$)} would: a name has to
+ * reach the end of the identifier it's in, and that identifier can't be followed by a {@code $}. Names are looked up in
+ * {@link SrgIdTable}s and copied into a builder that is reused for every line, so lines without mapped names come back
+ * as the same string. Not thread-safe because of that builder, the tables can be shared between instances.
+ */
+final class SrgSourceRemapper {
+
+    private final SrgIdTable methods;
+    private final SrgIdTable fields;
+    private final SrgIdTable params;
+    private final StringBuilder builder = new StringBuilder(256);
+    /** Set by {@link #findName(String, int)}: where the name it found ends, and the table to look it up in */
+    private int nameEnd;
+    private SrgIdTable nameTable;
+
+    SrgSourceRemapper(SrgIdTable methods, SrgIdTable fields, SrgIdTable params) {
+        this.methods = methods;
+        this.fields = fields;
+        this.params = params;
+    }
+
+    SrgSourceRemapper(Utilities.MappingsSet mappings) {
+        this(
+                SrgIdTable.of(mappings.methodMappings, m -> m.name),
+                SrgIdTable.of(mappings.fieldMappings, m -> m.name),
+                SrgIdTable.of(mappings.paramMappings));
+    }
+
+    /**
+     * @return A new remapper sharing the lookup tables of this one, for use on another thread
+     */
+    SrgSourceRemapper copy() {
+        return new SrgSourceRemapper(methods, fields, params);
+    }
+
+    String remapLine(String line) {
+        // How much of the line is already in the builder, -1 while nothing was replaced yet
+        int copied = -1;
+        for (int start = findName(line, 0); start >= 0; start = findName(line, nameEnd)) {
+            final String mapped = nameTable.get(line, start, nameEnd);
+            if (mapped != null) {
+                if (copied < 0) {
+                    builder.setLength(0);
+                    copied = 0;
+                }
+                builder.append(line, copied, start).append(mapped);
+                copied = nameEnd;
+            }
+        }
+        if (copied < 0) {
+            return line;
+        }
+        return builder.append(line, copied, line.length()).toString();
+    }
+
+    /**
+     * @param names The SRG names to look for
+     * @return If any of the names in the text that this remapper would replace is one of the given names
+     */
+    boolean containsAny(String text, SrgIdTable names) {
+        for (int start = findName(text, 0); start >= 0; start = findName(text, nameEnd)) {
+            if (names.get(text, start, nameEnd) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the next SRG name, and sets {@link #nameEnd} and {@link #nameTable} for it.
+     *
+     * @return The start of the name, or -1 if there are no more
+     */
+    private int findName(String text, int from) {
+        final int length = text.length();
+        // End of the identifier the scan is currently in
+        int wordEnd = from;
+        int i = from;
+        while (i < length) {
+            final char c = text.charAt(i);
+            if (c != 'f' && c != 'p') {
+                i++;
+                continue;
+            }
+            if (i >= wordEnd) {
+                wordEnd = i + 1;
+                while (wordEnd < length && isWordChar(text.charAt(wordEnd))) {
+                    wordEnd++;
+                }
+                if (wordEnd < length && text.charAt(wordEnd) == '$') {
+                    // Nothing in this identifier can match
+                    i = wordEnd;
+                    continue;
+                }
+            }
+
+            if (text.startsWith("func_", i) && isMemberName(text, i + 5, wordEnd)) {
+                nameTable = methods;
+            } else if (text.startsWith("field_", i) && isMemberName(text, i + 6, wordEnd)) {
+                nameTable = fields;
+            } else if (text.startsWith("p_", i) && isParamName(text, i, wordEnd)) {
+                nameTable = params;
+            } else {
+                i++;
+                continue;
+            }
+            nameEnd = wordEnd;
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * @return If the rest of a func_/field_ name after its prefix is {@code \d+_[a-zA-Z_]+}
+     */
+    private static boolean isMemberName(String text, int start, int end) {
+        int i = start;
+        while (i < end && isDigit(text.charAt(i))) {
+            i++;
+        }
+        if (i == start || i + 1 >= end || text.charAt(i) != '_') {
+            return false;
+        }
+        for (i++; i < end; i++) {
+            if (isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return If the whole identifier is {@code p_\w+_\d+_}
+     */
+    private static boolean isParamName(String text, int start, int end) {
+        if (text.charAt(end - 1) != '_') {
+            return false;
+        }
+        int digits = end - 1;
+        while (isDigit(text.charAt(digits - 1))) {
+            digits--;
+        }
+        final int separator = digits - 1;
+        return digits < end - 1 && separator > start + 2 && text.charAt(separator) == '_';
+    }
+}
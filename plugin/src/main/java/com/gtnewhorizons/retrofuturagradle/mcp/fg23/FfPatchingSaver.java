@@ -0,0 +1,109 @@
+package com.gtnewhorizons.retrofuturagradle.mcp.fg23;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.jar.Manifest;
+
+import com.gtnewhorizons.retrofuturagradle.fg23shadow.org.jetbrains.java.decompiler.main.extern.IResultSaver;
+
+/**
+ * Runs every decompiled class through {@link FFPatcher} on the common fork-join pool as soon as fernflower emits it,
+ * while fernflower carries on with the next class on its own thread. The patched classes are handed to the wrapped
+ * saver when their archive gets closed.
+ */
+public class FfPatchingSaver implements IResultSaver {
+
+    private final IResultSaver delegate;
+    /** Archive path to the classes being patched for it, in the order fernflower emitted them */
+    private final Map<String, List<PendingEntry>> pendingEntries = new HashMap<>();
+
+    public FfPatchingSaver(IResultSaver delegate) {
+        this.delegate = delegate;
+    }
+
+    private static final class PendingEntry {
+
+        final String qualifiedName;
+        final String entryName;
+        final CompletableFuture<String> content;
+
+        PendingEntry(String qualifiedName, String entryName, CompletableFuture<String> content) {
+            this.qualifiedName = qualifiedName;
+            this.entryName = entryName;
+            this.content = content;
+        }
+    }
+
+    private static String archiveKey(String path, String archiveName) {
+        return new File(path, archiveName).getPath();
+    }
+
+    @Override
+    public void saveFolder(String path) {
+        delegate.saveFolder(path);
+    }
+
+    @Override
+    public void copyFile(String source, String path, String entryName) {
+        delegate.copyFile(source, path, entryName);
+    }
+
+    @Override
+    public void saveClassFile(String path, String qualifiedName, String entryName, String content, int[] mapping) {
+        delegate.saveClassFile(
+                path,
+                qualifiedName,
+                entryName,
+                content == null ? null : FFPatcher.processFile(content),
+                mapping);
+    }
+
+    @Override
+    public void createArchive(String path, String archiveName, Manifest manifest) {
+        delegate.createArchive(path, archiveName, manifest);
+    }
+
+    @Override
+    public void saveDirEntry(String path, String archiveName, String entryName) {
+        delegate.saveDirEntry(path, archiveName, entryName);
+    }
+
+    @Override
+    public void copyEntry(String source, String path, String archiveName, String entryName) {
+        delegate.copyEntry(source, path, archiveName, entryName);
+    }
+
+    @Override
+    public void saveClassEntry(String path, String archiveName, String qualifiedName, String entryName,
+            String content) {
+        if (content == null) {
+            delegate.saveClassEntry(path, archiveName, qualifiedName, entryName, null);
+            return;
+        }
+        pendingEntries.computeIfAbsent(archiveKey(path, archiveName), k -> new ArrayList<>()).add(
+                new PendingEntry(
+                        qualifiedName,
+                        entryName,
+                        CompletableFuture.supplyAsync(() -> FFPatcher.processFile(content))));
+    }
+
+    @Override
+    public void closeArchive(String path, String archiveName) {
+        final List<PendingEntry> pending = pendingEntries.remove(archiveKey(path, archiveName));
+        if (pending != null) {
+            for (PendingEntry entry : pending) {
+                delegate.saveClassEntry(
+                        path,
+                        archiveName,
+                        entry.qualifiedName,
+                        entry.entryName,
+                        entry.content.join());
+            }
+        }
+        delegate.closeArchive(path, archiveName);
+    }
+}
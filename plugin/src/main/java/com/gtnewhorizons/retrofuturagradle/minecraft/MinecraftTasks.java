@@ -29,6 +29,9 @@ import org.gradle.internal.os.OperatingSystem;
 
 import com.gtnewhorizons.retrofuturagradle.Constants;
 import com.gtnewhorizons.retrofuturagradle.IMinecraftyExtension;
+import com.gtnewhorizons.retrofuturagradle.util.CacheMaintenanceService;
+import com.gtnewhorizons.retrofuturagradle.util.CachePruneTask;
+import com.gtnewhorizons.retrofuturagradle.util.CacheStatsTask;
 import com.gtnewhorizons.retrofuturagradle.util.Distribution;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
@@ -62,6 +65,8 @@ public final class MinecraftTasks {
     private final TaskProvider<DownloadAssetsTask> taskDownloadVanillaAssets;
 
     private final TaskProvider<DefaultTask> taskCleanVanillaAssets;
+    private final TaskProvider<CacheStatsTask> taskCacheStats;
+    private final TaskProvider<CachePruneTask> taskCachePrune;
 
     private final TaskProvider<ExtractNativesTask> taskExtractNatives2, taskExtractNatives3;
     private final TaskProvider<RunMinecraftTask> taskRunVanillaClient;
@@ -231,6 +236,20 @@ public final class MinecraftTasks {
             });
         });
 
+        taskCacheStats = project.getTasks().register("rfgCacheStats", CacheStatsTask.class, task -> {
+            task.setDescription("Prints hit rates and disk usage of the shared RFG cache in your gradle cache");
+            task.setGroup(TASK_GROUP_USER);
+            task.getCacheRoot().set(Utilities.getCacheRoot(project));
+        });
+        taskCachePrune = project.getTasks().register("rfgCachePrune", CachePruneTask.class, task -> {
+            task.setDescription("Evicts least recently used entries of the shared RFG cache down to the configured budget");
+            task.setGroup(TASK_GROUP_USER);
+            task.getCacheRoot().set(Utilities.getCacheRoot(project));
+            task.getMaxSizeMegabytes().set(mcExt.getCacheMaxSizeMegabytes());
+            task.getMaxAgeDays().set(mcExt.getCacheMaxAgeDays());
+        });
+        CacheMaintenanceService.register(project, mcExt);
+
         runDirectory = new File(project.getProjectDir(), "run");
         natives2Directory = FileUtils.getFile(runDirectory, "natives", "lwjgl2");
         natives3Directory = FileUtils.getFile(runDirectory, "natives", "lwjgl3");
@@ -585,6 +604,14 @@ public final class MinecraftTasks {
         return taskCleanVanillaAssets;
     }
 
+    public TaskProvider<CacheStatsTask> getTaskCacheStats() {
+        return taskCacheStats;
+    }
+
+    public TaskProvider<CachePruneTask> getTaskCachePrune() {
+        return taskCachePrune;
+    }
+
     public File getRunDirectory() {
         return runDirectory;
     }
@@ -21,6 +21,7 @@ import org.gradle.api.tasks.PathSensitivity;
 import org.gradle.api.tasks.options.Option;
 
 import com.gtnewhorizons.retrofuturagradle.mcp.RemapSourceJarTask;
+import com.gtnewhorizons.retrofuturagradle.util.MappingIndex;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 /**
@@ -96,6 +97,7 @@ public abstract class DeobfuscateFileTaskBase extends DefaultTask {
     @Internal
     public Utilities.MappingsSet getMappings() {
         return Utilities.loadMappingCsvs(
+                Utilities.getCacheDir(getProject(), MappingIndex.CACHE_DIR_NAME),
                 getMethodsCsv().getAsFile().get(),
                 getFieldsCsv().getAsFile().get(),
                 getParamsCsv().getAsFile().getOrNull(),
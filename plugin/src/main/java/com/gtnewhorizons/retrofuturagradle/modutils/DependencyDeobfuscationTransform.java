@@ -1,25 +1,25 @@
 package com.gtnewhorizons.retrofuturagradle.modutils;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CloseShieldInputStream;
@@ -32,6 +32,7 @@ import org.gradle.api.artifacts.transform.TransformOutputs;
 import org.gradle.api.artifacts.transform.TransformParameters;
 import org.gradle.api.artifacts.transform.VariantTransformConfigurationException;
 import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
 import org.gradle.api.file.FileCollection;
 import org.gradle.api.file.FileSystemLocation;
 import org.gradle.api.file.RegularFileProperty;
@@ -41,16 +42,31 @@ import org.gradle.api.provider.SetProperty;
 import org.gradle.api.tasks.CompileClasspath;
 import org.gradle.api.tasks.Input;
 import org.gradle.api.tasks.InputFile;
+import org.gradle.api.tasks.Internal;
 import org.gradle.api.tasks.PathSensitive;
 import org.gradle.api.tasks.PathSensitivity;
 
 import com.google.common.io.Files;
+import com.gtnewhorizons.retrofuturagradle.util.ClassTransformChain;
+import com.gtnewhorizons.retrofuturagradle.util.HashUtils;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 @CacheableTransform
 public abstract class DependencyDeobfuscationTransform
         implements TransformAction<DependencyDeobfuscationTransform.Parameters> {
 
+    private static final int MAX_LOADED_MAPPINGS = 4;
+    /** SHA256 of the methods and fields CSVs to the mappings loaded from them, most recently used only */
+    private static final Map<String, Utilities.MappingsSet> LOADED_MAPPINGS = Collections
+            .synchronizedMap(new LinkedHashMap<String, Utilities.MappingsSet>(MAX_LOADED_MAPPINGS, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Utilities.MappingsSet> eldest) {
+                    return size() > MAX_LOADED_MAPPINGS;
+                }
+            });
+
     interface Parameters extends TransformParameters {
 
         @InputFile
@@ -67,6 +83,9 @@ public abstract class DependencyDeobfuscationTransform
 
         @Input
         public abstract SetProperty<String> getModulesToDeobf();
+
+        @Internal
+        public abstract DirectoryProperty getMappingIndexDir();
     }
 
     @InputArtifact
@@ -77,6 +96,17 @@ public abstract class DependencyDeobfuscationTransform
     @CompileClasspath
     public abstract FileCollection getDependencies();
 
+    /**
+     * Loads the mappings, shared by all transforms of the same CSV contents as every dependency runs its own transform
+     */
+    private static Utilities.MappingsSet loadMappings(File indexDir, File methodsCsv, File fieldsCsv) {
+        final String key = Hex.encodeHexString(HashUtils.sha256(methodsCsv)) + ","
+                + Hex.encodeHexString(HashUtils.sha256(fieldsCsv));
+        return LOADED_MAPPINGS.computeIfAbsent(
+                key,
+                k -> Utilities.loadMappingCsvs(indexDir, methodsCsv, fieldsCsv, null, null, null));
+    }
+
     @Override
     public void transform(TransformOutputs outputs) {
         try {
@@ -137,19 +167,25 @@ public abstract class DependencyDeobfuscationTransform
         final File fieldsCsv = parameters.getFieldsCsv().get().getAsFile();
         final File methodsCsv = parameters.getMethodsCsv().get().getAsFile();
 
-        final Utilities.MappingsSet mappings = Utilities.loadMappingCsvs(methodsCsv, fieldsCsv, null, null, null);
-        final Map<String, String> combined = mappings.getCombinedMappings();
+        final Utilities.MappingsSet mappings = loadMappings(
+                parameters.getMappingIndexDir().getAsFile().getOrNull(),
+                methodsCsv,
+                fieldsCsv);
+        final ClassTransformChain remapChain = Utilities.simpleRemapChain(mappings);
 
         if (outFile.isFile()) {
             FileUtils.delete(outFile);
         }
 
+        final ParallelJarWriter writer = new ParallelJarWriter();
         try (final InputStream is = FileUtils.openInputStream(inputLocation);
                 final BufferedInputStream bis = new BufferedInputStream(is);
-                final JarInputStream jis = new JarInputStream(bis, false);
-                final OutputStream os = FileUtils.openOutputStream(outFileTemp, false);
-                final BufferedOutputStream bos = new BufferedOutputStream(os);
-                final JarOutputStream jos = makeTransformerJarOutputStream(jis, bos)) {
+                final JarInputStream jis = new JarInputStream(bis, false)) {
+            if (jis.getManifest() != null) {
+                final Manifest mf = jis.getManifest();
+                transformManifest(mf);
+                writer.putManifest(mf);
+            }
             JarEntry entry;
             while ((entry = jis.getNextJarEntry()) != null) {
                 if (StringUtils.endsWithIgnoreCase(entry.getName(), ".dsa")
@@ -158,36 +194,26 @@ public abstract class DependencyDeobfuscationTransform
                         || StringUtils.containsIgnoreCase(entry.getName(), "meta-inf/sig-")) {
                     continue;
                 }
-                jos.putNextEntry(new JarEntry(entry.getName()));
                 if (StringUtils.endsWithIgnoreCase(entry.getName(), ".class")) {
                     byte[] data = IOUtils.toByteArray(jis);
-                    IOUtils.write(Utilities.simpleRemapClass(data, combined), jos);
+                    writer.put(entry.getName(), remapChain.transform(data, entry.getName()));
                 } else if (StringUtils.endsWith(entry.getName(), "META-INF/MANIFEST.MF")) {
                     // This if will only trigger if the manifest is not one of the first 2 jar entries
                     Manifest mf = new Manifest(CloseShieldInputStream.wrap(jis));
                     transformManifest(mf);
-                    mf.write(jos);
+                    final ByteArrayOutputStream mfBytes = new ByteArrayOutputStream();
+                    mf.write(mfBytes);
+                    writer.put(entry.getName(), mfBytes.toByteArray());
                 } else {
-                    IOUtils.copy(jis, jos);
+                    writer.put(entry.getName(), IOUtils.toByteArray(jis));
                 }
-                jos.closeEntry();
             }
         }
+        writer.write(outFileTemp);
 
         Files.move(outFileTemp, outFile);
     }
 
-    private static JarOutputStream makeTransformerJarOutputStream(JarInputStream jis, OutputStream os)
-            throws IOException {
-        if (jis.getManifest() != null) {
-            final Manifest mf = jis.getManifest();
-            transformManifest(mf);
-            return new JarOutputStream(os, mf);
-        } else {
-            return new JarOutputStream(os);
-        }
-    }
-
     private static void transformManifest(Manifest mf) {
         final List<String> entriesToRemove = new ArrayList<>();
         for (Map.Entry<String, Attributes> mfEntry : mf.getEntries().entrySet()) {
@@ -43,6 +43,7 @@ import com.gtnewhorizons.retrofuturagradle.mcp.GenSrgMappingsTask;
 import com.gtnewhorizons.retrofuturagradle.mcp.MCPTasks;
 import com.gtnewhorizons.retrofuturagradle.mcp.ReobfuscatedJar;
 import com.gtnewhorizons.retrofuturagradle.minecraft.MinecraftTasks;
+import com.gtnewhorizons.retrofuturagradle.util.MappingIndex;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 import kotlin.Unit;
@@ -122,6 +123,7 @@ public class ModUtils {
                         .set(mcpTasks.getTaskGenerateForgeSrgMappings().flatMap(GenSrgMappingsTask::getMethodsCsv));
                 params.getFilesToDeobf().from(depFilesToDeobf);
                 params.getModulesToDeobf().set(depModulesToDeobf);
+                params.getMappingIndexDir().set(Utilities.getCacheDir(project, MappingIndex.CACHE_DIR_NAME));
             });
 
             project.afterEvaluate(_p -> {
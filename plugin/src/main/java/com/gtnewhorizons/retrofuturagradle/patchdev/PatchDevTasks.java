@@ -23,6 +23,7 @@ import com.gtnewhorizons.retrofuturagradle.mcp.RemapSourceJarTask;
 import com.gtnewhorizons.retrofuturagradle.mcp.SharedMCPTasks;
 import com.gtnewhorizons.retrofuturagradle.minecraft.MinecraftTasks;
 import com.gtnewhorizons.retrofuturagradle.util.IJarOutputTask;
+import com.gtnewhorizons.retrofuturagradle.util.SkipUnchangedCopyAction;
 import com.gtnewhorizons.retrofuturagradle.util.Utilities;
 
 public class PatchDevTasks extends SharedMCPTasks<RfgPatchdevExtension> {
@@ -74,15 +75,25 @@ public class PatchDevTasks extends SharedMCPTasks<RfgPatchdevExtension> {
                     task.getOutputJar().set(rawDecompiledSrgLocation);
                     task.getCacheDir().set(Utilities.getCacheDir(project, "fernflower-cache"));
                     task.getFernflower().set(fernflowerLocation);
+                    task.getFernflowerArguments().set(mcExt.getFernflowerArguments());
+                    task.getUseBuildCache().set(mcExt.getUseBuildCacheForDecompilation());
+                    task.getApplyFfPatches().set(mcExt.getApplyFfPatchesWhileDecompiling());
+                    task.getShardCount().set(mcExt.getFernflowerShards());
                 });
         final TaskProvider<CleanupDecompiledJarTask> taskCleanupDecompSrgJar = project.getTasks()
                 .register("cleanupDecompSrgJar", CleanupDecompiledJarTask.class, task -> {
                     task.setGroup(TASK_GROUP_INTERNAL);
                     task.dependsOn(taskDecompileSrgJar, taskExtractForgeUserdev);
                     task.getInputJar().set(taskDecompileSrgJar.flatMap(DecompileTask::getOutputJar));
+                    task.getInputFfPatched().set(taskDecompileSrgJar.flatMap(DecompileTask::getApplyFfPatches));
                     task.getOutputJar().set(decompiledSrgLocation);
                     task.getPatches().set(userdevDir("conf/minecraft_ff"));
                     task.getAstyleConfig().set(userdevFile("conf/astyle.cfg"));
+                    task.getFormatterCacheDir().set(Utilities.getCacheDir(project, "astyle-cache"));
+                    task.getClassJar().set(taskDeobfuscateMergedJarToSrg.flatMap(DeobfuscateTask::getOutputJar));
+                    task.getProfile().set(mcExt.getProfileSourceCleanup());
+                    task.getProfileReport().set(
+                            FileUtils.getFile(project.getBuildDir(), RFG_DIR, "cleanupDecompSrgJar-profile.json"));
                 });
 
         final File patchedSourcesLocation = FileUtils
@@ -163,6 +174,7 @@ public class PatchDevTasks extends SharedMCPTasks<RfgPatchdevExtension> {
                     task.filesNotMatching(
                             javaFilePatterns,
                             fcd -> { fcd.setRelativePath(fcd.getRelativePath().prepend("resources")); });
+                    task.eachFile(new SkipUnchangedCopyAction(cleanSrcDir));
                 });
 
         final TaskProvider<Copy> extractPatchedSources = project.getTasks()
@@ -0,0 +1,80 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Project;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+import org.gradle.build.event.BuildEventsListenerRegistry;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationCompletionListener;
+
+import com.gtnewhorizons.retrofuturagradle.IMinecraftyExtension;
+
+/**
+ * Flushes the file fingerprints and the {@link CacheManager} index of the RFG cache root once the build finishes, and
+ * then evicts old entries if the last eviction was more than a day ago, so every cached stage is covered no matter
+ * which tasks ran.
+ * <p>
+ * Shared by all projects of a build, the budget of the first project to apply an RFG plugin applies.
+ */
+public abstract class CacheMaintenanceService
+        implements BuildService<CacheMaintenanceService.Parameters>, OperationCompletionListener, AutoCloseable {
+
+    private static final String SERVICE_NAME = "rfgCacheMaintenance";
+    private static final Logger LOGGER = Logging.getLogger(CacheMaintenanceService.class);
+
+    public interface Parameters extends BuildServiceParameters {
+
+        DirectoryProperty getCacheRoot();
+
+        Property<Long> getMaxSizeMegabytes();
+
+        Property<Integer> getMaxAgeDays();
+    }
+
+    /** Gives access to the injected listener registry from outside of a plugin class */
+    public abstract static class ListenerRegistryHolder {
+
+        @Inject
+        public abstract BuildEventsListenerRegistry getListenerRegistry();
+    }
+
+    public static void register(Project project, IMinecraftyExtension mcExt) {
+        final Provider<CacheMaintenanceService> service = project.getGradle().getSharedServices()
+                .registerIfAbsent(SERVICE_NAME, CacheMaintenanceService.class, spec -> {
+                    spec.getParameters().getCacheRoot().set(Utilities.getCacheRoot(project));
+                    spec.getParameters().getMaxSizeMegabytes().set(mcExt.getCacheMaxSizeMegabytes());
+                    spec.getParameters().getMaxAgeDays().set(mcExt.getCacheMaxAgeDays());
+                });
+        // Listening to task completion keeps the service alive until the end of the build, when it gets closed
+        project.getObjects().newInstance(ListenerRegistryHolder.class).getListenerRegistry().onTaskCompletion(service);
+    }
+
+    @Override
+    public void onFinish(FinishEvent event) {}
+
+    @Override
+    public void close() {
+        final File root = getParameters().getCacheRoot().get().getAsFile();
+        FileFingerprintStore.get(root).flush();
+        final CacheManager.PruneResult pruned = CacheManager.get(root).pruneIfDue(
+                getParameters().getMaxSizeMegabytes().get() * 1024L * 1024L,
+                TimeUnit.DAYS.toMillis(getParameters().getMaxAgeDays().get()));
+        if (pruned != null && pruned.evictedEntries > 0) {
+            LOGGER.lifecycle(
+                    "Evicted {} old RFG cache entries, freeing {}",
+                    pruned.evictedEntries,
+                    FileUtils.byteCountToDisplaySize(pruned.freedBytes));
+        }
+    }
+}
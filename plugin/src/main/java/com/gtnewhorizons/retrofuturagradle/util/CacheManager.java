@@ -0,0 +1,367 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Project;
+
+/**
+ * Keeps track of entries in the RFG cache root and evicts the least recently used ones to stay within a size and age
+ * budget.
+ * <p>
+ * Cached stages register the files they create and report hits and misses, grouped into categories such as
+ * {@code fernflower-jar}. The index lives in {@code <cache root>/cache-index.tsv} and is only ever rewritten as a whole
+ * under a file lock, so multiple daemons can share a cache root. Updates are buffered in memory until {@link #flush()}.
+ * Files in the cache root that no stage registered are never evicted, such as the downloaded game files, assets and
+ * fernflower, which are read from too many places to keep their access times.
+ */
+public final class CacheManager {
+
+    public static final String INDEX_FILE_NAME = "cache-index.tsv";
+    private static final String LOCK_FILE_NAME = "cache-index.lock";
+    // [UPDATE] Bump when the index format changes, older indices are then discarded
+    private static final String HEADER = "# RFG cache index v1";
+    /** How often {@link #pruneIfDue(long, long)} actually prunes */
+    private static final long AUTO_PRUNE_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+
+    private static final Map<File, CacheManager> MANAGERS = new ConcurrentHashMap<>();
+
+    private final File root;
+    private final File indexFile;
+    private final File lockFile;
+    /** Entries touched since the last flush, by path relative to the root */
+    private final Map<String, Entry> pendingEntries = new HashMap<>();
+    /** Category to {hits, misses} since the last flush */
+    private final Map<String, long[]> pendingCounters = new HashMap<>();
+
+    private CacheManager(File root) {
+        this.root = root;
+        this.indexFile = new File(root, INDEX_FILE_NAME);
+        this.lockFile = new File(root, LOCK_FILE_NAME);
+    }
+
+    public static CacheManager get(File cacheRoot) {
+        return MANAGERS.computeIfAbsent(cacheRoot.getAbsoluteFile(), CacheManager::new);
+    }
+
+    public static CacheManager get(Project project) {
+        return get(Utilities.getCacheRoot(project));
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * A tracked file or directory in the cache.
+     */
+    public static final class Entry {
+
+        public final String category;
+        /** Path relative to the cache root, separated with forward slashes */
+        public final String path;
+        public final long size;
+        public final long lastAccess;
+
+        Entry(String category, String path, long size, long lastAccess) {
+            this.category = category;
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Totals of all the tracked entries of a category.
+     */
+    public static final class CategoryStats {
+
+        public final String category;
+        public int entries;
+        public long bytes;
+        public long hits;
+        public long misses;
+
+        CategoryStats(String category) {
+            this.category = category;
+        }
+    }
+
+    /**
+     * Outcome of a {@link #prune(long, long)} run.
+     */
+    public static final class PruneResult {
+
+        public final int evictedEntries;
+        public final long freedBytes;
+        public final long remainingBytes;
+
+        PruneResult(int evictedEntries, long freedBytes, long remainingBytes) {
+            this.evictedEntries = evictedEntries;
+            this.freedBytes = freedBytes;
+            this.remainingBytes = remainingBytes;
+        }
+    }
+
+    /**
+     * Records a cache hit on an existing entry, refreshing its access time.
+     */
+    public synchronized void recordHit(String category, File entry) {
+        counters(category)[0]++;
+        touch(category, entry);
+    }
+
+    /**
+     * Records a cache miss, the entry created for it should be {@link #register(String, File) registered} afterwards.
+     */
+    public synchronized void recordMiss(String category) {
+        counters(category)[1]++;
+    }
+
+    /**
+     * Starts tracking a newly created entry, or refreshes the size and access time of an already tracked one.
+     */
+    public synchronized void register(String category, File entry) {
+        touch(category, entry);
+    }
+
+    private long[] counters(String category) {
+        return pendingCounters.computeIfAbsent(category, k -> new long[2]);
+    }
+
+    private void touch(String category, File entry) {
+        final String path = relativePath(entry);
+        final long size = entry.isDirectory() ? FileUtils.sizeOfDirectory(entry) : entry.length();
+        pendingEntries.put(path, new Entry(category, path, size, System.currentTimeMillis()));
+    }
+
+    private String relativePath(File entry) {
+        final String path = root.toPath().relativize(entry.getAbsoluteFile().toPath()).toString().replace('\\', '/');
+        if (path.startsWith("../") || path.isEmpty()) {
+            throw new IllegalArgumentException(entry + " is not inside the cache root " + root);
+        }
+        return path;
+    }
+
+    /**
+     * Merges all buffered updates into the index file.
+     */
+    public synchronized void flush() {
+        if (pendingEntries.isEmpty() && pendingCounters.isEmpty()) {
+            return;
+        }
+        withIndex(index -> {
+            mergePending(index);
+            return null;
+        });
+    }
+
+    private void mergePending(Index index) {
+        for (Entry entry : pendingEntries.values()) {
+            final Entry old = index.entries.get(entry.path);
+            if (old == null || old.lastAccess <= entry.lastAccess) {
+                index.entries.put(entry.path, entry);
+            }
+        }
+        for (Map.Entry<String, long[]> counter : pendingCounters.entrySet()) {
+            final long[] total = index.counters.computeIfAbsent(counter.getKey(), k -> new long[2]);
+            total[0] += counter.getValue()[0];
+            total[1] += counter.getValue()[1];
+        }
+        pendingEntries.clear();
+        pendingCounters.clear();
+        index.dirty = true;
+    }
+
+    /**
+     * @return Statistics of all tracked categories, sorted by name
+     */
+    public synchronized List<CategoryStats> getStats() {
+        return withIndex(index -> {
+            mergePending(index);
+            final Map<String, CategoryStats> stats = new TreeMap<>();
+            for (Entry entry : index.entries.values()) {
+                final CategoryStats cat = stats.computeIfAbsent(entry.category, CategoryStats::new);
+                cat.entries++;
+                cat.bytes += entry.size;
+            }
+            for (Map.Entry<String, long[]> counter : index.counters.entrySet()) {
+                final CategoryStats cat = stats.computeIfAbsent(counter.getKey(), CategoryStats::new);
+                cat.hits = counter.getValue()[0];
+                cat.misses = counter.getValue()[1];
+            }
+            return new ArrayList<>(stats.values());
+        });
+    }
+
+    /**
+     * Evicts entries not used for longer than {@code maxAgeMs}, then the least recently used ones until the tracked
+     * entries take up at most {@code maxBytes}. Non-positive limits are ignored.
+     */
+    public synchronized PruneResult prune(long maxBytes, long maxAgeMs) {
+        return withIndex(index -> {
+            mergePending(index);
+            final long now = System.currentTimeMillis();
+            index.lastPrune = now;
+
+            final List<Entry> byAge = new ArrayList<>(index.entries.values());
+            byAge.sort(Comparator.comparingLong((Entry e) -> e.lastAccess).thenComparing(e -> e.path));
+            long total = 0;
+            for (Entry entry : byAge) {
+                total += entry.size;
+            }
+            int evicted = 0;
+            long freed = 0;
+            for (Entry entry : byAge) {
+                final File file = new File(root, entry.path);
+                final boolean expired = maxAgeMs > 0 && now - entry.lastAccess > maxAgeMs;
+                final boolean overBudget = maxBytes > 0 && total > maxBytes;
+                if (!file.exists() || expired || overBudget) {
+                    if (file.exists()) {
+                        FileUtils.deleteQuietly(file);
+                        evicted++;
+                        freed += entry.size;
+                    }
+                    total -= entry.size;
+                    index.entries.remove(entry.path);
+                    // Clean up emptied fan-out directories, e.g. classes/ab/
+                    final File parent = file.getParentFile();
+                    final String[] siblings = parent.list();
+                    if (!parent.equals(root) && siblings != null && siblings.length == 0) {
+                        FileUtils.deleteQuietly(parent);
+                    }
+                }
+            }
+            return new PruneResult(evicted, freed, total);
+        });
+    }
+
+    /**
+     * Runs {@link #prune(long, long)} if it hasn't run in the last day, otherwise just flushes. Called at the end of
+     * every build by {@link CacheMaintenanceService}.
+     *
+     * @return The result of pruning, or null if it wasn't due yet
+     */
+    public synchronized PruneResult pruneIfDue(long maxBytes, long maxAgeMs) {
+        final long lastPrune = withIndex(index -> index.lastPrune);
+        if (System.currentTimeMillis() - lastPrune < AUTO_PRUNE_INTERVAL_MS) {
+            flush();
+            return null;
+        }
+        return prune(maxBytes, maxAgeMs);
+    }
+
+    @FunctionalInterface
+    private interface IndexAction<T> {
+
+        T apply(Index index) throws IOException;
+    }
+
+    /**
+     * Runs the action on the current index while holding the cross-process lock, writing the index back if changed.
+     */
+    private <T> T withIndex(IndexAction<T> action) {
+        try {
+            FileUtils.forceMkdir(root);
+            try (final FileChannel channel = FileChannel
+                    .open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    final FileLock lock = channel.lock()) {
+                final Index index = Index.read(indexFile);
+                final T result = action.apply(index);
+                if (index.dirty) {
+                    index.write(indexFile);
+                }
+                return result;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't update the cache index at " + indexFile, e);
+        }
+    }
+
+    private static final class Index {
+
+        long lastPrune = 0;
+        final Map<String, long[]> counters = new TreeMap<>();
+        final Map<String, Entry> entries = new TreeMap<>();
+        boolean dirty = false;
+
+        static Index read(File file) throws IOException {
+            final Index index = new Index();
+            if (!file.isFile()) {
+                return index;
+            }
+            try (final BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                if (!HEADER.equals(reader.readLine())) {
+                    index.dirty = true;
+                    return index;
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final String[] parts = line.split("\t");
+                    try {
+                        switch (parts[0]) {
+                            case "prune" -> index.lastPrune = Long.parseLong(parts[1]);
+                            case "stat" -> index.counters.put(
+                                    parts[1],
+                                    new long[] { Long.parseLong(parts[2]), Long.parseLong(parts[3]) });
+                            case "entry" -> index.entries.put(
+                                    parts[4],
+                                    new Entry(parts[1], parts[4], Long.parseLong(parts[3]), Long.parseLong(parts[2])));
+                            default -> index.dirty = true;
+                        }
+                    } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                        // Skip damaged lines, they get dropped on the next write
+                        index.dirty = true;
+                    }
+                }
+            }
+            return index;
+        }
+
+        void write(File file) throws IOException {
+            final File tempFile = new File(file.getPath() + ".tmp");
+            try (final BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(HEADER);
+                writer.write('\n');
+                writer.write("prune\t" + lastPrune + "\n");
+                for (Map.Entry<String, long[]> counter : counters.entrySet()) {
+                    writer.write(
+                            "stat\t" + counter.getKey()
+                                    + "\t"
+                                    + counter.getValue()[0]
+                                    + "\t"
+                                    + counter.getValue()[1]
+                                    + "\n");
+                }
+                for (Entry entry : entries.values()) {
+                    writer.write(
+                            "entry\t" + entry.category
+                                    + "\t"
+                                    + entry.lastAccess
+                                    + "\t"
+                                    + entry.size
+                                    + "\t"
+                                    + entry.path
+                                    + "\n");
+                }
+            }
+            Utilities.moveAtomically(tempFile, file);
+        }
+    }
+}
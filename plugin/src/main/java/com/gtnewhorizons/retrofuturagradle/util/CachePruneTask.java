@@ -0,0 +1,46 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Evicts tracked RFG cache entries that exceed the configured age, then the least recently used ones until the size
+ * budget is met.
+ */
+public abstract class CachePruneTask extends DefaultTask {
+
+    @Internal
+    public abstract DirectoryProperty getCacheRoot();
+
+    /**
+     * Size budget of the tracked cache entries, non-positive for no limit
+     */
+    @Internal
+    public abstract Property<Long> getMaxSizeMegabytes();
+
+    /**
+     * Entries not used for this many days are evicted, non-positive for no limit
+     */
+    @Internal
+    public abstract Property<Integer> getMaxAgeDays();
+
+    @TaskAction
+    public void prune() {
+        final File root = getCacheRoot().get().getAsFile();
+        final CacheManager.PruneResult result = CacheManager.get(root)
+                .prune(getMaxSizeMegabytes().get() * 1024L * 1024L, TimeUnit.DAYS.toMillis(getMaxAgeDays().get()));
+        getLogger().lifecycle(
+                "Evicted {} cache entries from {}, freeing {}, {} of tracked entries remain",
+                result.evictedEntries,
+                root,
+                FileUtils.byteCountToDisplaySize(result.freedBytes),
+                FileUtils.byteCountToDisplaySize(result.remainingBytes));
+    }
+}
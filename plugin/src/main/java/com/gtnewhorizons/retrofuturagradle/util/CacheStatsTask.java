@@ -0,0 +1,52 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Prints the hit/miss counts and sizes of the tracked cache categories, and the disk usage of the RFG cache root.
+ */
+public abstract class CacheStatsTask extends DefaultTask {
+
+    @Internal
+    public abstract DirectoryProperty getCacheRoot();
+
+    @TaskAction
+    public void printStats() {
+        final File root = getCacheRoot().get().getAsFile();
+        final CacheManager manager = CacheManager.get(root);
+        getLogger().lifecycle("RFG cache at {}", root);
+        getLogger().lifecycle("Tracked entries:");
+        for (CacheManager.CategoryStats stats : manager.getStats()) {
+            final long lookups = stats.hits + stats.misses;
+            getLogger().lifecycle(
+                    "  {}: {} entries, {}, {} hits, {} misses{}",
+                    stats.category,
+                    stats.entries,
+                    FileUtils.byteCountToDisplaySize(stats.bytes),
+                    stats.hits,
+                    stats.misses,
+                    lookups == 0 ? "" : String.format(" (%.1f%% hit rate)", 100.0 * stats.hits / lookups));
+        }
+        final File[] children = root.listFiles();
+        if (children == null) {
+            return;
+        }
+        getLogger().lifecycle("Disk usage:");
+        Arrays.sort(children, Comparator.comparing(File::getName));
+        long total = 0;
+        for (File child : children) {
+            final long size = FileUtils.sizeOf(child);
+            total += size;
+            getLogger().lifecycle("  {}: {}", child.getName(), FileUtils.byteCountToDisplaySize(size));
+        }
+        getLogger().lifecycle("  total: {}", FileUtils.byteCountToDisplaySize(total));
+    }
+}
@@ -0,0 +1,90 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+
+/**
+ * A chain of streaming {@link ClassVisitor} stages applied to a class in a single read and write pass, without building
+ * a {@link org.objectweb.asm.tree.ClassNode} tree. The chain itself is stateless, stages are instantiated anew for
+ * every class, so a single chain can be shared between threads.
+ * <p>
+ * Chains whose stages keep all names can let the writer start from the constant pool of the input class, so it copies
+ * the bytes of every method that no stage wraps instead of parsing and re-encoding its code. Chains renaming anything
+ * must not, as the old names would stay behind in the output as unused constant pool entries.
+ */
+public final class ClassTransformChain {
+
+    /**
+     * A single transformation stage, wrapping the visitor of the next stage (or the final class writer).
+     */
+    @FunctionalInterface
+    public interface Stage {
+
+        ClassVisitor wrap(ClassVisitor next);
+    }
+
+    private final int writerFlags;
+    private final boolean copyConstantPool;
+    private final List<Stage> stages;
+
+    /**
+     * @param writerFlags      The {@link ClassWriter} flags to emit the classes with
+     * @param copyConstantPool Whether to start from the constant pool of the input class, only allowed if no stage
+     *                         renames anything. Ignored when frames are recomputed.
+     * @param stages           The stages in the order they see the class, first to last
+     */
+    public ClassTransformChain(int writerFlags, boolean copyConstantPool, List<Stage> stages) {
+        this.writerFlags = writerFlags;
+        this.copyConstantPool = copyConstantPool && (writerFlags & ClassWriter.COMPUTE_FRAMES) == 0;
+        this.stages = Collections.unmodifiableList(new ArrayList<>(stages));
+    }
+
+    public ClassTransformChain(int writerFlags, boolean copyConstantPool, Stage... stages) {
+        this(writerFlags, copyConstantPool, Arrays.asList(stages));
+    }
+
+    /**
+     * @return true if the chain has no stages, in which case classes should be passed through untouched
+     */
+    public boolean isEmpty() {
+        return stages.isEmpty();
+    }
+
+    public byte[] transform(byte[] classBytes, String debugName) {
+        try {
+            final ClassReader reader = new ClassReader(classBytes);
+            final ClassWriter writer = copyConstantPool ? new ClassWriter(reader, writerFlags)
+                    : new ClassWriter(writerFlags);
+            ClassVisitor visitor = writer;
+            for (int i = stages.size() - 1; i >= 0; i--) {
+                visitor = stages.get(i).wrap(visitor);
+            }
+            reader.accept(visitor, 0);
+            return writer.toByteArray();
+        } catch (Exception e) {
+            throw new RuntimeException("Couldn't transform class " + debugName, e);
+        }
+    }
+
+    /**
+     * Transforms all {@code .class} entries of the given jar entry map in place, in parallel. Other entries are left
+     * untouched, and so is the iteration order of the map.
+     */
+    public void transformAll(Map<String, byte[]> entries) {
+        if (isEmpty()) {
+            return;
+        }
+        final List<Map.Entry<String, byte[]>> classes = entries.entrySet().stream()
+                .filter(e -> e.getKey().endsWith(".class")).collect(Collectors.toList());
+        // Only values of distinct entries are replaced, the map's structure isn't modified concurrently
+        classes.parallelStream().forEach(e -> e.setValue(transform(e.getValue(), e.getKey())));
+    }
+}
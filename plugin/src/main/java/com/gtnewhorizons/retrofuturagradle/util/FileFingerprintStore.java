@@ -0,0 +1,257 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Project;
+
+/**
+ * Remembers the SHA256 digests of files across daemon restarts, keyed by the absolute path, size, modification time and
+ * file key (inode) of the file, so unchanged files are never read again just to hash them.
+ * <p>
+ * The fingerprints live in {@code <cache root>/file-fingerprints.bin}, loaded lazily on first use. New fingerprints are
+ * kept in memory until {@link #flush()}, which merges them into the file under a lock and rewrites it atomically, so
+ * multiple daemons can share a cache root. Safe to use from multiple threads.
+ */
+public final class FileFingerprintStore {
+
+    public static final String STORE_FILE_NAME = "file-fingerprints.bin";
+    /** {@link CacheManager} category of the store file */
+    public static final String CACHE_CATEGORY = "file-fingerprints";
+    private static final String LOCK_FILE_NAME = "file-fingerprints.lock";
+    // [UPDATE] Bump when the store format changes, older stores are then discarded
+    private static final int VERSION = 1;
+    private static final int MAGIC = 0x52464746; // RFGF
+    /**
+     * Files modified this recently before being hashed aren't persisted, as a write within the same timestamp
+     * granularity could go unnoticed.
+     */
+    private static final long RACY_WINDOW_MS = 2000;
+
+    private static final Map<File, FileFingerprintStore> STORES = new ConcurrentHashMap<>();
+
+    /** null for a store that only lives in memory */
+    private final File storeFile;
+    private final File lockFile;
+    private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<>();
+    /** Fingerprints computed since the last flush, by path */
+    private final Map<String, Fingerprint> pending = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    private FileFingerprintStore(File cacheRoot) {
+        this.storeFile = cacheRoot == null ? null : new File(cacheRoot, STORE_FILE_NAME);
+        this.lockFile = cacheRoot == null ? null : new File(cacheRoot, LOCK_FILE_NAME);
+        this.loaded = cacheRoot == null;
+    }
+
+    public static FileFingerprintStore get(File cacheRoot) {
+        return STORES.computeIfAbsent(cacheRoot.getAbsoluteFile(), FileFingerprintStore::new);
+    }
+
+    public static FileFingerprintStore get(Project project) {
+        return get(Utilities.getCacheRoot(project));
+    }
+
+    /**
+     * @return A new store that isn't backed by a file, for use before the cache root is known
+     */
+    public static FileFingerprintStore inMemory() {
+        return new FileFingerprintStore(null);
+    }
+
+    private static final class Fingerprint {
+
+        final long size;
+        final long modifiedNanos;
+        final String fileKey;
+        final byte[] sha256;
+
+        Fingerprint(long size, long modifiedNanos, String fileKey, byte[] sha256) {
+            this.size = size;
+            this.modifiedNanos = modifiedNanos;
+            this.fileKey = fileKey;
+            this.sha256 = sha256;
+        }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size() && modifiedNanos == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                    && fileKey.equals(fileKeyOf(attrs));
+        }
+    }
+
+    private static String fileKeyOf(BasicFileAttributes attrs) {
+        final Object key = attrs.fileKey();
+        return key == null ? "" : key.toString();
+    }
+
+    /**
+     * @return The SHA256 digest of the file contents, a fresh array the caller may modify
+     */
+    public byte[] sha256(File file) {
+        final File absoluteFile = file.getAbsoluteFile();
+        final String path = absoluteFile.getPath();
+        try {
+            ensureLoaded();
+            final BasicFileAttributes attrs = Files.readAttributes(absoluteFile.toPath(), BasicFileAttributes.class);
+            final Fingerprint known = fingerprints.get(path);
+            if (known != null && known.matches(attrs)) {
+                return known.sha256.clone();
+            }
+            final long hashStart = System.currentTimeMillis();
+            final byte[] digest;
+            try (final InputStream is = Files.newInputStream(absoluteFile.toPath())) {
+                digest = DigestUtils.digest(DigestUtils.getSha256Digest(), is);
+            }
+            // Re-check the attributes, the file could have changed while it was being read
+            final BasicFileAttributes after = Files.readAttributes(absoluteFile.toPath(), BasicFileAttributes.class);
+            final Fingerprint fingerprint = new Fingerprint(
+                    after.size(),
+                    after.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+                    fileKeyOf(after),
+                    digest);
+            if (fingerprint.matches(attrs)) {
+                fingerprints.put(path, fingerprint);
+                if (hashStart - TimeUnit.NANOSECONDS.toMillis(fingerprint.modifiedNanos) > RACY_WINDOW_MS) {
+                    pending.put(path, fingerprint);
+                }
+            }
+            return digest.clone();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not hash file " + absoluteFile, e);
+        }
+    }
+
+    /**
+     * @return Whether the file was hashed before and hasn't changed since, checked without reading it
+     */
+    public boolean isUnchanged(File file) {
+        final File absoluteFile = file.getAbsoluteFile();
+        try {
+            ensureLoaded();
+            final Fingerprint known = fingerprints.get(absoluteFile.getPath());
+            return known != null
+                    && known.matches(Files.readAttributes(absoluteFile.toPath(), BasicFileAttributes.class));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            withLock(() -> {
+                for (Map.Entry<String, Fingerprint> entry : read().entrySet()) {
+                    fingerprints.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                return null;
+            });
+            loaded = true;
+        }
+    }
+
+    /**
+     * Merges the fingerprints computed since the last flush into the store file, dropping entries of deleted files.
+     */
+    public synchronized void flush() {
+        if (storeFile == null || pending.isEmpty()) {
+            return;
+        }
+        final Map<String, Fingerprint> toWrite = new HashMap<>(pending);
+        withLock(() -> {
+            final Map<String, Fingerprint> merged = read();
+            merged.putAll(toWrite);
+            merged.keySet().removeIf(path -> !new File(path).isFile());
+            write(merged);
+            return null;
+        });
+        toWrite.forEach(pending::remove);
+        CacheManager.get(storeFile.getParentFile()).register(CACHE_CATEGORY, storeFile);
+    }
+
+    @FunctionalInterface
+    private interface LockedAction<T> {
+
+        T run() throws IOException;
+    }
+
+    private <T> T withLock(LockedAction<T> action) {
+        try {
+            FileUtils.forceMkdirParent(storeFile);
+            try (final FileChannel channel = FileChannel
+                    .open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    final FileLock lock = channel.lock()) {
+                return action.run();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Couldn't access the file fingerprint store at " + storeFile, e);
+        }
+    }
+
+    private Map<String, Fingerprint> read() throws IOException {
+        final Map<String, Fingerprint> result = new HashMap<>();
+        if (!storeFile.isFile()) {
+            return result;
+        }
+        try (final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(storeFile.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return result;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String path = in.readUTF();
+                final long size = in.readLong();
+                final long modifiedNanos = in.readLong();
+                final String fileKey = in.readUTF();
+                final byte[] sha256 = new byte[32];
+                in.readFully(sha256);
+                result.put(path, new Fingerprint(size, modifiedNanos, fileKey, sha256));
+            }
+        } catch (EOFException e) {
+            // A truncated store is discarded and rebuilt on the next flush
+            result.clear();
+        }
+        return result;
+    }
+
+    private void write(Map<String, Fingerprint> entries) throws IOException {
+        final File tempFile = new File(storeFile.getPath() + ".tmp");
+        try (final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tempFile.toPath())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Fingerprint> entry : entries.entrySet()) {
+                final Fingerprint fp = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(fp.size);
+                out.writeLong(fp.modifiedNanos);
+                out.writeUTF(fp.fileKey);
+                out.write(fp.sha256);
+            }
+        }
+        Utilities.moveAtomically(tempFile, storeFile);
+    }
+}
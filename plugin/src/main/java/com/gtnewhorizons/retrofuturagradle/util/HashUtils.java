@@ -1,21 +1,18 @@
 package com.gtnewhorizons.retrofuturagradle.util;
 
 import java.io.File;
-import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.io.FileUtils;
+import org.gradle.api.Project;
 import org.gradle.api.file.ConfigurableFileCollection;
 import org.gradle.api.file.ConfigurableFileTree;
 import org.gradle.api.file.DirectoryProperty;
@@ -28,21 +25,31 @@ public class HashUtils {
 
     private HashUtils() {}
 
-    private static class FileHashCacheEntry {
+    public static final boolean DEBUG_LOG = false;
 
-        public long lastModified;
-        public byte[] digest;
+    private static volatile FileFingerprintStore fingerprints = FileFingerprintStore.inMemory();
 
-        public FileHashCacheEntry(long lastModified, byte[] digest) {
-            this.lastModified = lastModified;
-            this.digest = digest;
-        }
+    /**
+     * Makes file hashing use the persistent fingerprint store of the given project's cache root, which
+     * {@link CacheMaintenanceService} saves once at the end of the build.
+     */
+    public static void useFingerprintStore(Project project) {
+        fingerprints = FileFingerprintStore.get(project);
     }
 
-    public static final boolean DEBUG_LOG = false;
+    /**
+     * @return The SHA256 digest of the file contents, only read again if the file changed since it was last hashed
+     */
+    public static byte[] sha256(File file) {
+        return fingerprints.sha256(file);
+    }
 
-    private static DigestUtils utils = new DigestUtils(DigestUtils.getSha256Digest());
-    private static Map<File, FileHashCacheEntry> fileHashCache = new HashMap<>();
+    /**
+     * @return Whether the file was {@link #sha256(File) hashed} before and hasn't changed since, without reading it
+     */
+    public static boolean isUnchangedSinceHashed(File file) {
+        return fingerprints.isUnchanged(file);
+    }
 
     public static MessageDigestConsumer addToHash(String value) {
         if (DEBUG_LOG) {
@@ -77,21 +84,10 @@ public class HashUtils {
                 addToHash(0).accept(digest);
                 return;
             }
-            final File absoluteFile = file.getAbsoluteFile();
-            final FileHashCacheEntry cacheEntry = fileHashCache.compute(absoluteFile, (f, fhce) -> {
-                if (fhce == null || fhce.lastModified < f.lastModified()) {
-                    try {
-                        return new FileHashCacheEntry(f.lastModified(), utils.digest(f));
-                    } catch (IOException e) {
-                        throw new RuntimeException("Could not hash file " + f, e);
-                    }
-                } else {
-                    return fhce;
-                }
-            });
-            digest.update(cacheEntry.digest);
+            final byte[] fileDigest = fingerprints.sha256(file);
+            digest.update(fileDigest);
             if (DEBUG_LOG) {
-                System.err.println(" = " + Hex.encodeHexString(cacheEntry.digest));
+                System.err.println(" = " + Hex.encodeHexString(fileDigest));
             }
         };
     }
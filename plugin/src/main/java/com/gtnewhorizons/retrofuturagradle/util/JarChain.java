@@ -7,6 +7,7 @@ import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 
@@ -22,6 +23,10 @@ import com.gtnewhorizons.retrofuturagradle.Constants;
 
 /**
  * A utility to remove outputs of intermediary tasks if the inputs don't change.
+ * <p>
+ * The digest of every task's inputs is saved next to the final output, chained with the digests of the tasks before
+ * it. When only the inputs of later tasks change and the output of the task before the first changed one was kept, the
+ * chain resumes from the changed task instead of running from the start.
  */
 public class JarChain {
 
@@ -29,8 +34,9 @@ public class JarChain {
     private boolean eager = false;
     private List<RegularFileProperty> taskChainOutputs = new ArrayList<>();
     private List<MessageDigestConsumer> taskChainHashers = new ArrayList<>();
+    private List<Boolean> taskChainKeepOutputs = new ArrayList<>();
 
-    private boolean wasUpToDate = false;
+    private int firstTaskToRun = 0;
     private long lastUpToDateCheck = -1;
 
     public JarChain() {
@@ -46,14 +52,24 @@ public class JarChain {
     }
 
     public void addTask(@Nonnull TaskProvider<? extends IJarOutputTask> newTask) {
+        addTask(newTask, false);
+    }
+
+    /**
+     * @param keepOutput Whether to keep the output of this task after the chain finishes, so that the chain can resume
+     *                   from the next task when only the inputs of the tasks after this one change
+     */
+    public void addTask(@Nonnull TaskProvider<? extends IJarOutputTask> newTask, boolean keepOutput) {
+        final int index = taskChain.size();
         taskChain.add(newTask);
         // It has to be eager to avoid having to serialize the TaskProvider :(
         final IJarOutputTask eagerTask = newTask.get();
         taskChainOutputs.add(eagerTask.getOutputJar());
         taskChainHashers.add(eagerTask.hashInputs());
+        taskChainKeepOutputs.add(keepOutput);
         newTask.configure(task -> {
-            task.getOutputs().upToDateWhen(ignored -> this.isUpToDate());
-            task.onlyIf(ignored -> !this.isUpToDate());
+            task.getOutputs().upToDateWhen(ignored -> index < this.getFirstTaskToRun());
+            task.onlyIf(ignored -> index >= this.getFirstTaskToRun());
         });
     }
 
@@ -73,7 +89,7 @@ public class JarChain {
 
             for (int i = 0; i < taskChainOutputs.size() - 1; i++) {
                 File outJar = taskChainOutputs.get(i).get().getAsFile();
-                if (!Constants.DEBUG_NO_TMP_CLEANUP) {
+                if (!Constants.DEBUG_NO_TMP_CLEANUP && !taskChainKeepOutputs.get(i)) {
                     FileUtils.deleteQuietly(outJar);
                 }
             }
@@ -81,66 +97,97 @@ public class JarChain {
     }
 
     public boolean isUpToDate() {
+        return getFirstTaskToRun() >= taskChainHashers.size();
+    }
+
+    /**
+     * @return The index of the first task of the chain that has to run, or the number of tasks if all are up to date
+     */
+    public int getFirstTaskToRun() {
         final long now = System.currentTimeMillis();
         if (now - lastUpToDateCheck < 10_000) {
-            return wasUpToDate;
+            return firstTaskToRun;
         }
         final File outputFileLocation = getLastTaskOutput().getAsFile().get();
         if (!outputFileLocation.isFile()) {
-            return false;
+            return 0;
         }
         final File inputsKeyFile = new File(outputFileLocation.getPath() + ".inputs.sha256");
         if (!inputsKeyFile.isFile()) {
-            return false;
+            return 0;
         }
         try {
-            final String savedInputsDigest = FileUtils.readFileToString(inputsKeyFile, StandardCharsets.UTF_8).trim();
-            final String hexDigest = calculateInputsDigest();
-
-            final boolean isUpToDate = savedInputsDigest.equals(hexDigest);
+            final List<String> savedDigests = FileUtils.readLines(inputsKeyFile, StandardCharsets.UTF_8).stream()
+                    .map(String::trim).filter(line -> !line.isEmpty()).collect(Collectors.toList());
+            final List<String> digests = calculateInputsDigests();
+
+            // The last line is the digest of the whole chain, older versions only saved that one
+            final int taskCount = digests.size();
+            int firstChanged = 0;
+            if (!savedDigests.isEmpty()
+                    && savedDigests.get(savedDigests.size() - 1).equals(digests.get(taskCount - 1))) {
+                firstChanged = taskCount;
+            } else if (savedDigests.size() == taskCount) {
+                while (firstChanged < taskCount && savedDigests.get(firstChanged).equals(digests.get(firstChanged))) {
+                    firstChanged++;
+                }
+                final boolean canResume = firstChanged > 0 && taskChainKeepOutputs.get(firstChanged - 1)
+                        && taskChainOutputs.get(firstChanged - 1).getAsFile().get().isFile();
+                if (!canResume) {
+                    firstChanged = 0;
+                }
+            }
             lastUpToDateCheck = System.currentTimeMillis();
-            wasUpToDate = isUpToDate;
+            firstTaskToRun = firstChanged;
 
             if (HashUtils.DEBUG_LOG) {
                 System.err.println(
-                        "Up to date: " + isUpToDate + " ; file,current:\n" + savedInputsDigest + "\n" + hexDigest);
+                        "First task to run: " + firstChanged + " ; file,current:\n" + savedDigests + "\n" + digests);
             }
 
-            return isUpToDate;
+            return firstChanged;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     private void saveUpToDateDigest() {
-        wasUpToDate = true;
+        firstTaskToRun = taskChainHashers.size();
         lastUpToDateCheck = System.currentTimeMillis();
         final File outputFileLocation = getLastTaskOutput().getAsFile().get();
         if (!outputFileLocation.isFile()) {
             return;
         }
         final File inputsKeyFile = new File(outputFileLocation.getPath() + ".inputs.sha256");
-        final String hexDigest = calculateInputsDigest();
+        final List<String> digests = calculateInputsDigests();
         try {
-            FileUtils.writeStringToFile(inputsKeyFile, hexDigest + System.lineSeparator(), StandardCharsets.UTF_8);
+            FileUtils.writeLines(inputsKeyFile, StandardCharsets.UTF_8.name(), digests);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private String calculateInputsDigest() {
+    /**
+     * @return For every task, the digest of its inputs and the inputs of all the tasks before it
+     */
+    private List<String> calculateInputsDigests() {
         if (HashUtils.DEBUG_LOG) {
             System.err.println("*** Recalculating inputs digest");
             new Throwable().printStackTrace(System.err);
         }
         final MessageDigest inputsHasher = DigestUtils.getSha256Digest();
-        for (MessageDigestConsumer t : taskChainHashers) {
-            if (HashUtils.DEBUG_LOG) {
-                System.err.println(" * task hash");
+        final List<String> digests = new ArrayList<>(taskChainHashers.size());
+        try {
+            for (MessageDigestConsumer t : taskChainHashers) {
+                if (HashUtils.DEBUG_LOG) {
+                    System.err.println(" * task hash");
+                }
+                t.accept(inputsHasher);
+                digests.add(Hex.encodeHexString(((MessageDigest) inputsHasher.clone()).digest()));
             }
-            t.accept(inputsHasher);
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException(e);
         }
-        final byte[] digest = inputsHasher.digest();
-        return Hex.encodeHexString(digest).trim();
+        return digests;
     }
 }
@@ -0,0 +1,184 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A view of several maps stacked on top of each other, lookups return the value from the first map that contains the
+ * key. Used to combine mapping indices without copying them into a single heap map.
+ * <p>
+ * Read-only unless created with {@link #copyOnWrite(List)}, in which case writes go to a heap map on top of the other
+ * layers, which are never modified. Writable maps are not thread-safe, like a {@link HashMap}.
+ */
+public final class LayeredMap<K, V> extends AbstractMap<K, V> {
+
+    private final List<Map<K, V>> layers;
+    /** The top layer taking all writes, or null if the map is read-only */
+    private final Map<K, V> writes;
+    /** Keys removed from the map while still present in a lower layer */
+    private final Set<Object> removed;
+    /** Whether the map was cleared, hiding all layers below {@link #writes} */
+    private boolean cleared = false;
+    private Map<K, V> flattened;
+
+    /**
+     * @param layers The maps to look up keys in, highest priority first
+     */
+    public LayeredMap(List<? extends Map<K, V>> layers) {
+        this(null, layers);
+    }
+
+    @SafeVarargs
+    public LayeredMap(Map<K, V>... layers) {
+        this(Arrays.asList(layers));
+    }
+
+    private LayeredMap(Map<K, V> writes, List<? extends Map<K, V>> layers) {
+        final List<Map<K, V>> allLayers = new ArrayList<>(layers.size() + 1);
+        if (writes != null) {
+            allLayers.add(writes);
+        }
+        allLayers.addAll(layers);
+        this.layers = Collections.unmodifiableList(allLayers);
+        this.writes = writes;
+        this.removed = writes == null ? Collections.emptySet() : new HashSet<>();
+    }
+
+    /**
+     * @param layers The maps to look up keys in, highest priority first, which are only read
+     * @return A writable map starting out with the contents of the layers
+     */
+    public static <K, V> LayeredMap<K, V> copyOnWrite(List<? extends Map<K, V>> layers) {
+        return new LayeredMap<>(new HashMap<>(), layers);
+    }
+
+    /**
+     * @return The maps this one is made of, highest priority first. Once keys were removed from a writable map or it
+     *         was cleared, this is a single copy of its current contents instead.
+     */
+    public List<Map<K, V>> getLayers() {
+        return hidesLayers() ? Collections.singletonList(flatten()) : layers;
+    }
+
+    /**
+     * @return Whether any writes are in effect, so the contents may differ from the layers the map was created with
+     */
+    public boolean isModified() {
+        return writes != null && (cleared || !writes.isEmpty() || !removed.isEmpty());
+    }
+
+    private boolean hidesLayers() {
+        return cleared || !removed.isEmpty();
+    }
+
+    @Override
+    public V get(Object key) {
+        if (cleared) {
+            return writes.get(key);
+        }
+        if (removed.contains(key)) {
+            return null;
+        }
+        for (Map<K, V> layer : layers) {
+            final V value = layer.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (cleared) {
+            return writes.containsKey(key);
+        }
+        if (removed.contains(key)) {
+            return false;
+        }
+        for (Map<K, V> layer : layers) {
+            if (layer.containsKey(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        if (writes == null) {
+            throw new UnsupportedOperationException();
+        }
+        final V previous = get(key);
+        writes.put(key, value);
+        removed.remove(key);
+        flattened = null;
+        return previous;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (writes == null) {
+            throw new UnsupportedOperationException();
+        }
+        final V previous = get(key);
+        writes.remove(key);
+        if (!cleared && layers.subList(1, layers.size()).stream().anyMatch(layer -> layer.containsKey(key))) {
+            removed.add(key);
+        }
+        flattened = null;
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        if (writes == null) {
+            throw new UnsupportedOperationException();
+        }
+        writes.clear();
+        removed.clear();
+        cleared = true;
+        flattened = null;
+    }
+
+    @Override
+    public int size() {
+        if (cleared) {
+            return writes.size();
+        }
+        if (writes != null && writes.isEmpty() && removed.isEmpty() && layers.size() == 2) {
+            return layers.get(1).size();
+        }
+        return layers.size() == 1 ? layers.get(0).size() : flatten().size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return flatten().entrySet();
+    }
+
+    /** Only needed for iteration, which none of the hot paths do */
+    private synchronized Map<K, V> flatten() {
+        if (flattened == null) {
+            final Map<K, V> result = new LinkedHashMap<>();
+            if (cleared) {
+                result.putAll(writes);
+            } else {
+                for (int i = layers.size() - 1; i >= 0; i--) {
+                    result.putAll(layers.get(i));
+                }
+                result.keySet().removeAll(removed);
+            }
+            flattened = Collections.unmodifiableMap(result);
+        }
+        return flattened;
+    }
+}
@@ -0,0 +1,492 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+
+import com.opencsv.CSVReader;
+
+/**
+ * A read-only index of a single MCP mappings CSV file ({@code searge,name,side,desc}), keyed by the SRG name.
+ * <p>
+ * The index is built once for every distinct CSV content and stored in {@code <cache root>/mapping-index/<sha256>.bin},
+ * later loads only memory-map that file instead of parsing the CSV again. The CSV itself is only hashed again when its
+ * {@link FileFingerprintStore fingerprint} changed. The records are checked once when an index is built, and again
+ * only when a stored index file doesn't match the fingerprint taken after it was last checked. Lookups binary search
+ * the sorted record table directly in the mapped buffer, so they don't allocate until a name is actually found, and
+ * are safe to do from multiple threads.
+ * <p>
+ * File layout (big endian): magic, version, record count, a table of absolute record offsets sorted by the UTF-8 bytes
+ * of the key, then the records themselves as three length-prefixed UTF-8 strings: key, name and javadoc.
+ */
+public final class MappingIndex {
+
+    /** Name of the index directory inside the RFG cache root */
+    public static final String CACHE_DIR_NAME = "mapping-index";
+    /** {@link CacheManager} category of the index files */
+    public static final String CACHE_CATEGORY = "mapping-index";
+
+    private static final int MAGIC = 0x5246474D; // RFGM
+    // [UPDATE] Bump when the file layout changes
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    /** Enough for the method, field and param indices of a few mapping versions */
+    private static final int MAX_OPEN_INDICES = 16;
+    /**
+     * Content hash to an already mapped index, to share them between tasks running in the same daemon. Only keeps the
+     * most recently used ones, evicted indices are unmapped once nothing references them anymore.
+     */
+    private static final Map<String, MappingIndex> OPEN_INDICES = Collections
+            .synchronizedMap(new LinkedHashMap<String, MappingIndex>(MAX_OPEN_INDICES, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MappingIndex> eldest) {
+                    return size() > MAX_OPEN_INDICES;
+                }
+            });
+
+    private final String hash;
+    private final ByteBuffer buffer;
+    private final int size;
+
+    /**
+     * @param validateRecords Whether to check every record, otherwise only the header is checked
+     */
+    private MappingIndex(String hash, ByteBuffer buffer, boolean validateRecords) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("Not a valid mapping index");
+        }
+        this.hash = hash;
+        this.buffer = buffer;
+        this.size = buffer.getInt(8);
+        if (size < 0 || size > (buffer.capacity() - HEADER_SIZE) / 4) {
+            throw new IllegalArgumentException("Not a valid mapping index");
+        }
+        if (validateRecords) {
+            validateRecords();
+        }
+    }
+
+    /**
+     * Checks that the record table and every record fit inside the buffer, so a truncated or damaged file is rejected
+     * here instead of failing on some later lookup.
+     */
+    private void validateRecords() {
+        final int capacity = buffer.capacity();
+        final int recordsStart = HEADER_SIZE + 4 * size;
+        for (int i = 0; i < size; i++) {
+            int offset = recordOffset(i);
+            if (offset < recordsStart) {
+                throw new IllegalArgumentException("Not a valid mapping index");
+            }
+            // Key, name and javadoc
+            for (int str = 0; str < 3; str++) {
+                if (offset > capacity - 4) {
+                    throw new IllegalArgumentException("Not a valid mapping index");
+                }
+                final int length = buffer.getInt(offset);
+                if (length < 0 || length > capacity - offset - 4) {
+                    throw new IllegalArgumentException("Not a valid mapping index");
+                }
+                offset += 4 + length;
+            }
+        }
+    }
+
+    /**
+     * @param indexDir The directory to keep the index files in, or null to build the index in memory only
+     * @param csvFile  The MCP CSV file to index
+     * @return The index of the given CSV file, building and storing it first if it doesn't exist yet
+     */
+    public static MappingIndex open(@Nullable File indexDir, File csvFile) {
+        try {
+            final String hash = Hex.encodeHexString(HashUtils.sha256(csvFile)) + "-v" + VERSION;
+            final MappingIndex loaded = OPEN_INDICES.get(hash);
+            if (loaded != null) {
+                return loaded;
+            }
+            final MappingIndex index;
+            if (indexDir == null) {
+                index = new MappingIndex(hash, ByteBuffer.wrap(build(csvFile)), true);
+            } else {
+                index = openOrBuild(hash, new File(indexDir, hash + ".bin"), csvFile);
+            }
+            OPEN_INDICES.put(hash, index);
+            return index;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not index mappings file " + csvFile, e);
+        }
+    }
+
+    /**
+     * @param hash The {@link #getHash() hash} of an index built before
+     * @return The index with the given hash if it's still open or stored in the given directory, or null if not
+     */
+    public static @Nullable MappingIndex openExisting(File indexDir, String hash) {
+        final MappingIndex loaded = OPEN_INDICES.get(hash);
+        if (loaded != null) {
+            return loaded;
+        }
+        final File indexFile = new File(indexDir, hash + ".bin");
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            final MappingIndex index = openFile(hash, indexFile);
+            cacheManagerOf(indexDir).recordHit(CACHE_CATEGORY, indexFile);
+            OPEN_INDICES.put(hash, index);
+            return index;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static CacheManager cacheManagerOf(File indexDir) {
+        return CacheManager.get(indexDir.getAbsoluteFile().getParentFile());
+    }
+
+    private static MappingIndex openOrBuild(String hash, File indexFile, File csvFile) throws IOException {
+        final CacheManager cacheManager = cacheManagerOf(indexFile.getParentFile());
+        if (indexFile.isFile()) {
+            try {
+                final MappingIndex index = openFile(hash, indexFile);
+                cacheManager.recordHit(CACHE_CATEGORY, indexFile);
+                return index;
+            } catch (IllegalArgumentException e) {
+                // Corrupted or truncated, rebuild below
+            }
+        }
+        cacheManager.recordMiss(CACHE_CATEGORY);
+        final byte[] data = build(csvFile);
+        final MappingIndex built = new MappingIndex(hash, ByteBuffer.wrap(data), true);
+        FileUtils.forceMkdir(indexFile.getParentFile());
+        final File tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+        try {
+            FileUtils.writeByteArrayToFile(tempFile, data);
+            Utilities.moveAtomically(tempFile, indexFile);
+            // Fingerprint the checked contents, so later opens can trust the file while it stays unchanged
+            HashUtils.sha256(indexFile);
+        } catch (IOException e) {
+            // Another build might be racing us for the same file, the in-memory copy is just as good
+            return built;
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+        cacheManager.register(CACHE_CATEGORY, indexFile);
+        return new MappingIndex(hash, map(indexFile), false);
+    }
+
+    /**
+     * Maps a stored index, only checking all its records if the file changed since they were last checked.
+     */
+    private static MappingIndex openFile(String hash, File indexFile) throws IOException {
+        if (HashUtils.isUnchangedSinceHashed(indexFile)) {
+            return new MappingIndex(hash, map(indexFile), false);
+        }
+        final MappingIndex index = new MappingIndex(hash, map(indexFile), true);
+        HashUtils.sha256(indexFile);
+        return index;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static byte[] build(File csvFile) throws IOException {
+        // Later lines override earlier ones, like they did when loading the CSV into a HashMap
+        final Map<String, String[]> rows = new LinkedHashMap<>();
+        // The reader skips the searge,name,side,desc header line
+        try (CSVReader reader = Utilities.createCsvReader(csvFile)) {
+            for (String[] csvLine : reader) {
+                if (csvLine.length < 2) {
+                    continue;
+                }
+                rows.put(csvLine[0], csvLine);
+            }
+        }
+        final List<byte[][]> records = new ArrayList<>(rows.size());
+        for (String[] csvLine : rows.values()) {
+            final String javadoc = csvLine.length > 3 && csvLine[3] != null ? csvLine[3] : "";
+            records.add(
+                    new byte[][] { csvLine[0].getBytes(StandardCharsets.UTF_8),
+                            csvLine[1].getBytes(StandardCharsets.UTF_8), javadoc.getBytes(StandardCharsets.UTF_8) });
+        }
+        records.sort((a, b) -> compareBytes(a[0], b[0]));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * records.size());
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(records.size());
+        int offset = HEADER_SIZE + 4 * records.size();
+        for (byte[][] record : records) {
+            out.writeInt(offset);
+            offset += 12 + record[0].length + record[1].length + record[2].length;
+        }
+        for (byte[][] record : records) {
+            for (byte[] str : record) {
+                out.writeInt(str.length);
+                out.write(str);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        final int len = Math.min(a.length, b.length);
+        for (int i = 0; i < len; i++) {
+            final int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * @return The content hash identifying this index, usable with {@link #openExisting(File, String)}
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * @return The number of mappings in the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The mapped name of the given SRG name, or null if it's not in the index
+     */
+    public @Nullable String getName(String srgName) {
+        final int record = find(srgName);
+        return record < 0 ? null : readString(skipString(record));
+    }
+
+    /**
+     * @return The mapped name and javadoc of the given SRG name, or null if it's not in the index
+     */
+    public @Nullable Utilities.Mapping getMapping(String srgName) {
+        final int record = find(srgName);
+        return record < 0 ? null : readMapping(record);
+    }
+
+    /**
+     * @return A read-only view of the index as a map of SRG names to mapped names
+     */
+    public Map<String, String> asNameMap() {
+        return new IndexMap<String>() {
+
+            @Override
+            String valueAt(int record) {
+                return readString(skipString(record));
+            }
+        };
+    }
+
+    /**
+     * @return A read-only view of the index as a map of SRG names to mapped names with javadocs
+     */
+    public Map<String, Utilities.Mapping> asMappingMap() {
+        return new IndexMap<Utilities.Mapping>() {
+
+            @Override
+            Utilities.Mapping valueAt(int record) {
+                return readMapping(record);
+            }
+        };
+    }
+
+    /**
+     * Compares both sorted record tables in a single merge pass.
+     *
+     * @return The SRG names whose mapped name or javadoc differ between the two indices, including the ones only one of
+     *         them has
+     */
+    public Set<String> diff(MappingIndex other) {
+        final Set<String> changed = new HashSet<>();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            final int cmp;
+            if (i >= size) {
+                cmp = 1;
+            } else if (j >= other.size) {
+                cmp = -1;
+            } else {
+                cmp = compareStrings(buffer, recordOffset(i), other.buffer, other.recordOffset(j));
+            }
+            if (cmp < 0) {
+                changed.add(readString(recordOffset(i++)));
+            } else if (cmp > 0) {
+                changed.add(other.readString(other.recordOffset(j++)));
+            } else {
+                final int record = recordOffset(i++);
+                final int otherRecord = other.recordOffset(j++);
+                final int nameOffset = skipString(record);
+                final int otherNameOffset = other.skipString(otherRecord);
+                if (compareStrings(buffer, nameOffset, other.buffer, otherNameOffset) != 0 || compareStrings(
+                        buffer,
+                        skipString(nameOffset),
+                        other.buffer,
+                        other.skipString(otherNameOffset)) != 0) {
+                    changed.add(readString(record));
+                }
+            }
+        }
+        return changed;
+    }
+
+    /** Compares two length-prefixed UTF-8 strings byte by byte */
+    private static int compareStrings(ByteBuffer a, int aOffset, ByteBuffer b, int bOffset) {
+        final int aLen = a.getInt(aOffset);
+        final int bLen = b.getInt(bOffset);
+        final int len = Math.min(aLen, bLen);
+        for (int i = 0; i < len; i++) {
+            final int cmp = (a.get(aOffset + 4 + i) & 0xFF) - (b.get(bOffset + 4 + i) & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return aLen - bLen;
+    }
+
+    private int recordOffset(int i) {
+        return buffer.getInt(HEADER_SIZE + 4 * i);
+    }
+
+    private int find(String key) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            final int record = recordOffset(mid);
+            final int cmp = compareKey(record, keyBytes);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private int compareKey(int record, byte[] key) {
+        final int keyLen = buffer.getInt(record);
+        final int len = Math.min(keyLen, key.length);
+        for (int i = 0; i < len; i++) {
+            final int cmp = (buffer.get(record + 4 + i) & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return keyLen - key.length;
+    }
+
+    private int skipString(int offset) {
+        return offset + 4 + buffer.getInt(offset);
+    }
+
+    private String readString(int offset) {
+        final int len = buffer.getInt(offset);
+        final byte[] data = new byte[len];
+        // Work on a duplicate to keep the shared buffer's position untouched for concurrent readers
+        final ByteBuffer view = buffer.duplicate();
+        view.position(offset + 4);
+        view.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private Utilities.Mapping readMapping(int record) {
+        final int nameOffset = skipString(record);
+        return new Utilities.Mapping(readString(nameOffset), readString(skipString(nameOffset)));
+    }
+
+    private abstract class IndexMap<V> extends AbstractMap<String, V> {
+
+        abstract V valueAt(int record);
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && find((String) key) >= 0;
+        }
+
+        @Override
+        public V get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            final int record = find((String) key);
+            return record < 0 ? null : valueAt(record);
+        }
+
+        @Override
+        public Set<Entry<String, V>> entrySet() {
+            return new AbstractSet<Entry<String, V>>() {
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<String, V>> iterator() {
+                    return new Iterator<Entry<String, V>>() {
+
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Entry<String, V> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            final int record = recordOffset(next++);
+                            return new SimpleImmutableEntry<>(readString(record), valueAt(record));
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
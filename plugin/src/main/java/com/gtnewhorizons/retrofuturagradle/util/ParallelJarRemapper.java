@@ -0,0 +1,142 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.collections4.iterators.EnumerationIterator;
+import org.apache.commons.collections4.iterators.IteratorIterable;
+import org.objectweb.asm.ClassReader;
+
+import com.google.common.io.Closer;
+
+/**
+ * Remaps all classes of a jar on a fork-join pool. The mappings and the class hierarchy of the input jar are read once up
+ * front and shared read-only between all worker threads, while SpecialSource's remappers and class node caches aren't
+ * synchronized, so every worker thread gets its own {@link Context} wrapping them. The output entries are written sorted
+ * by name, so the result does not depend on scheduling.
+ */
+public final class ParallelJarRemapper {
+
+    /**
+     * A single-threaded remapper, created lazily once per worker thread.
+     */
+    public interface Context extends Closeable {
+
+        /**
+         * @return The remapped internal name of the class, or null if it's not renamed
+         */
+        String mapClassName(String className);
+
+        byte[] remapClass(byte[] classBytes);
+    }
+
+    /** Entry name to contents, sorted by name */
+    private final Map<String, byte[]> entries = new TreeMap<>();
+    /** Internal class name to the superclass and interfaces it directly extends */
+    private final Map<String, List<String>> parents = new HashMap<>();
+
+    /**
+     * Reads the input jar fully into memory. Directories and jar metadata are skipped, as they'd be dropped by the
+     * deobfuscation cleanup step anyway.
+     */
+    public ParallelJarRemapper(File inputJar) throws IOException {
+        try (final ZipFile inZip = new ZipFile(inputJar)) {
+            for (ZipEntry entry : new IteratorIterable<>(new EnumerationIterator<>(inZip.entries()))) {
+                if (entry.isDirectory() || entry.getName().contains("META-INF")) continue;
+                final byte[] contents = Utilities.readZipEntry(inZip, entry);
+                entries.put(entry.getName(), contents);
+                if (entry.getName().endsWith(".class")) {
+                    final ClassReader reader = new ClassReader(contents);
+                    final List<String> classParents = new ArrayList<>(1 + reader.getInterfaces().length);
+                    if (reader.getSuperName() != null) {
+                        classParents.add(reader.getSuperName());
+                    }
+                    classParents.addAll(Arrays.asList(reader.getInterfaces()));
+                    parents.put(reader.getClassName(), Collections.unmodifiableList(classParents));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Every class of the input jar mapped to its direct supertypes, read-only
+     */
+    public Map<String, List<String>> getAllParents() {
+        return Collections.unmodifiableMap(parents);
+    }
+
+    /**
+     * Remaps every class of the input jar and writes the results to {@code outputJar} as uncompressed entries.
+     *
+     * @param contextFactory Creates a fresh remapping context, called at most once per worker thread
+     */
+    public void remap(File outputJar, Supplier<Context> contextFactory) throws IOException {
+        final ConcurrentLinkedQueue<Context> contexts = new ConcurrentLinkedQueue<>();
+        final ThreadLocal<Context> threadContext = ThreadLocal.withInitial(() -> {
+            final Context ctx = contextFactory.get();
+            contexts.add(ctx);
+            return ctx;
+        });
+
+        final List<Callable<Map.Entry<String, byte[]>>> tasks = new ArrayList<>(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            final String name = entry.getKey();
+            if (!name.endsWith(".class")) {
+                tasks.add(() -> entry);
+                continue;
+            }
+            tasks.add(() -> {
+                final Context ctx = threadContext.get();
+                final String className = name.substring(0, name.length() - ".class".length());
+                final String newClassName = ctx.mapClassName(className);
+                final String newName = (newClassName == null ? className : newClassName) + ".class";
+                return new AbstractMap.SimpleImmutableEntry<>(newName, ctx.remapClass(entry.getValue()));
+            });
+        }
+
+        final TreeMap<String, byte[]> remapped = new TreeMap<>();
+        final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        final Closer closer = Closer.create();
+        try {
+            for (Future<Map.Entry<String, byte[]>> result : pool.invokeAll(tasks)) {
+                final Map.Entry<String, byte[]> entry = result.get();
+                remapped.put(entry.getKey(), entry.getValue());
+            }
+        } catch (Throwable e) {
+            throw closer.rethrow(e);
+        } finally {
+            pool.shutdown();
+            // invokeAll returned, so no worker uses its context anymore. Closer closes all of them even if some fail,
+            // and attaches the later failures as suppressed exceptions
+            contexts.forEach(closer::register);
+            closer.close();
+        }
+
+        try (final FileOutputStream fos = new FileOutputStream(outputJar);
+                final BufferedOutputStream bos = new BufferedOutputStream(fos);
+                final ZipOutputStream out = new ZipOutputStream(bos)) {
+            for (Map.Entry<String, byte[]> entry : remapped.entrySet()) {
+                Utilities.writeStoredZipEntry(out, entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
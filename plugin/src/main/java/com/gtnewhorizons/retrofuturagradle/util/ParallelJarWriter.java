@@ -0,0 +1,197 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.FileUtils;
+
+import com.gtnewhorizons.retrofuturagradle.mcp.DeobfuscateTask;
+
+/**
+ * Collects jar entries in memory and writes them out as a reproducible jar: entries are sorted by name (with the
+ * manifest first, where {@link java.util.jar.JarInputStream} expects it), all timestamps are set to
+ * {@link DeobfuscateTask#CONSTANT_TIME_FOR_ZIP_ENTRIES}, and the entries are deflated in parallel on the common
+ * fork-join pool while the already compressed ones are appended to the file in order.
+ * <p>
+ * Adding entries is not thread-safe, {@link #write(File)} can be called multiple times.
+ */
+public final class ParallelJarWriter {
+
+    private static final String META_INF_DIR = "META-INF/";
+
+    /** The manifest directory and manifest go first, everything else in plain name order */
+    private static final Comparator<String> ENTRY_ORDER = Comparator.comparingInt(ParallelJarWriter::entryRank)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final int compressionLevel;
+    /** Entry name to contents, null for directories */
+    private final TreeMap<String, byte[]> entries = new TreeMap<>(ENTRY_ORDER);
+
+    public ParallelJarWriter() {
+        this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param compressionLevel The {@link Deflater} level to compress entries with
+     */
+    public ParallelJarWriter(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    private static int entryRank(String name) {
+        if (name.equals(META_INF_DIR)) {
+            return 0;
+        }
+        if (name.equals(JarFile.MANIFEST_NAME)) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * Adds or replaces an entry, names ending with a slash are stored as directories.
+     */
+    public void put(String name, byte[] data) {
+        entries.put(name, name.endsWith("/") ? null : data);
+    }
+
+    /**
+     * Adds a file entry unless an entry with the same name already exists.
+     *
+     * @return true if the entry was added
+     */
+    public boolean putIfAbsent(String name, byte[] data) {
+        if (entries.containsKey(name)) {
+            return false;
+        }
+        put(name, data);
+        return true;
+    }
+
+    /**
+     * Adds a directory entry, a trailing slash is appended if missing.
+     */
+    public void putDirectory(String name) {
+        entries.putIfAbsent(name.endsWith("/") ? name : name + "/", null);
+    }
+
+    /**
+     * Adds the manifest entry, along with its parent directory entry like {@link java.util.jar.JarOutputStream} does.
+     */
+    public void putManifest(Manifest manifest) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        manifest.write(bytes);
+        putDirectory(META_INF_DIR);
+        put(JarFile.MANIFEST_NAME, bytes.toByteArray());
+    }
+
+    public boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Writes all collected entries to the given file, replacing it.
+     */
+    public void write(File outputJar) throws IOException {
+        // Start compressing everything up front, then append entries in order as they become ready
+        final List<CompletableFuture<ZipArchiveEntryData>> compressed = new ArrayList<>(entries.size());
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            final String name = entry.getKey();
+            final byte[] data = entry.getValue();
+            compressed.add(CompletableFuture.supplyAsync(() -> compress(name, data)));
+        }
+
+        FileUtils.forceMkdirParent(outputJar);
+        try (final FileOutputStream fos = new FileOutputStream(outputJar);
+                final BufferedOutputStream bos = new BufferedOutputStream(fos);
+                final ZipArchiveOutputStream out = new ZipArchiveOutputStream(bos)) {
+            for (CompletableFuture<ZipArchiveEntryData> future : compressed) {
+                final ZipArchiveEntryData result;
+                try {
+                    result = future.join();
+                } catch (CompletionException e) {
+                    throw new RuntimeException("Couldn't compress jar entry", e.getCause());
+                }
+                out.addRawArchiveEntry(result.entry, new ByteArrayInputStream(result.rawData));
+            }
+            out.finish();
+        }
+    }
+
+    private ZipArchiveEntryData compress(String name, byte[] data) {
+        final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+        entry.setTime(DeobfuscateTask.CONSTANT_TIME_FOR_ZIP_ENTRIES);
+        if (data == null) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(0);
+            entry.setCompressedSize(0);
+            entry.setCrc(0);
+            return new ZipArchiveEntryData(entry, new byte[0]);
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        entry.setCrc(crc.getValue());
+        entry.setSize(data.length);
+
+        final Deflater deflater = new Deflater(compressionLevel, true);
+        final byte[] deflated;
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            final byte[] buffer = new byte[16384];
+            while (!deflater.finished()) {
+                final int len = deflater.deflate(buffer);
+                out.write(buffer, 0, len);
+            }
+            deflated = out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+
+        if (deflated.length < data.length) {
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setCompressedSize(deflated.length);
+            return new ZipArchiveEntryData(entry, deflated);
+        } else {
+            // Incompressible data, e.g. nested archives or images
+            entry.setMethod(ZipEntry.STORED);
+            entry.setCompressedSize(data.length);
+            return new ZipArchiveEntryData(entry, data);
+        }
+    }
+
+    private static final class ZipArchiveEntryData {
+
+        final ZipArchiveEntry entry;
+        final byte[] rawData;
+
+        ZipArchiveEntryData(ZipArchiveEntry entry, byte[] rawData) {
+            this.entry = entry;
+            this.rawData = rawData;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+
+import com.gtnewhorizons.retrofuturagradle.Constants;
+
+/**
+ * Read-only access to a jar owned by another task or by a cache, without copying it.
+ * <p>
+ * Tools that need the jar under a specific file name get a hard link to it, falling back to a copy on file systems that
+ * don't support hard links. The size and modification time of the source are recorded on open and checked again on
+ * close, so a tool that unexpectedly writes to its input fails the build instead of silently corrupting the source.
+ */
+public final class ReadOnlyJar implements Closeable {
+
+    private final File source;
+    private final File file;
+    private final boolean ownsFile;
+    private final long size;
+    private final long lastModified;
+    private boolean closed = false;
+
+    private ReadOnlyJar(File source, File file, boolean ownsFile) {
+        this.source = source;
+        this.file = file;
+        this.ownsFile = ownsFile;
+        this.size = source.length();
+        this.lastModified = source.lastModified();
+    }
+
+    /**
+     * Guards the given jar in place, for tools that can read it from any path.
+     */
+    public static ReadOnlyJar of(File source) {
+        return new ReadOnlyJar(source, source, false);
+    }
+
+    /**
+     * Makes the given jar available at {@code location}, which is removed again on close.
+     */
+    public static ReadOnlyJar linkAs(File source, File location) throws IOException {
+        if (source.getAbsoluteFile().equals(location.getAbsoluteFile())) {
+            return of(source);
+        }
+        linkOrCopy(source, location);
+        return new ReadOnlyJar(source, location, true);
+    }
+
+    /**
+     * Places the contents of {@code source} at {@code target}, replacing whatever was there. Uses a hard link when
+     * possible, so the target must only ever be replaced as a whole and never written to in place.
+     */
+    public static void linkOrCopy(File source, File target) throws IOException {
+        FileUtils.forceMkdirParent(target);
+        Files.deleteIfExists(target.toPath());
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            // Different file systems or no hard link support
+            FileUtils.copyFile(source, target);
+        }
+    }
+
+    /**
+     * @return The path to read the jar from
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return A new read-only zip handle to the jar, to be closed by the caller
+     */
+    public ZipFile openZip() throws IOException {
+        return new ZipFile(file, ZipFile.OPEN_READ);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (source.length() != size || source.lastModified() != lastModified) {
+            throw new IOException("Read-only jar " + source + " was modified while in use");
+        }
+        if (ownsFile && !Constants.DEBUG_NO_TMP_CLEANUP) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+}
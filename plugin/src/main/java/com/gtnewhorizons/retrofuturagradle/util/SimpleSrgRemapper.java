@@ -1,20 +1,124 @@
 package com.gtnewhorizons.retrofuturagradle.util;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.objectweb.asm.commons.Remapper;
 
 /**
  * A {@link Remapper} using a {@link Map} to define its mapping, using simple SRG-style mappings.
+ * <p>
+ * The public constructor looks names up in the given map directly. Remappers reused for many classes are
+ * {@link #indexed(Map) indexed} instead: the map is copied once, func_ and field_ names go into arrays indexed by the
+ * number in the name, so looking them up only parses that number and compares the name in the slot, everything else
+ * (params, odd names) goes into a plain {@link HashMap}. Names that aren't SRG names, like every class name passed to
+ * {@link #map(String)}, cost at most that one hash lookup and never allocate. Indexed remappers are read-only after
+ * construction and safe to share between threads.
  */
 public class SimpleSrgRemapper extends Remapper {
 
+    /** Entries with larger ids go into {@link #others} instead of growing the arrays without bound */
+    private static final int MAX_DENSE_ID = 1 << 20;
+
+    private static final int MAX_SHARED_REMAPPERS = 4;
+    /**
+     * {@link Utilities.MappingsSet#getMappingsHash() Mappings hash} to the remapper built for it. Only keeps the most
+     * recently used ones, a daemon switching between many mappings versions would hold on to all of them otherwise.
+     */
+    private static final Map<String, SimpleSrgRemapper> SHARED_REMAPPERS = Collections
+            .synchronizedMap(new LinkedHashMap<String, SimpleSrgRemapper>(MAX_SHARED_REMAPPERS, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SimpleSrgRemapper> eldest) {
+                    return size() > MAX_SHARED_REMAPPERS;
+                }
+            });
+
+    /** The map to look names up in, or null if it was copied into the tables below */
     private final Map<String, String> mapping;
+    private final DenseTable methods = new DenseTable();
+    private final DenseTable fields = new DenseTable();
+    private final Map<String, String> others = new HashMap<>();
 
     public SimpleSrgRemapper(final Map<String, String> mapping) {
         this.mapping = mapping;
     }
 
+    private SimpleSrgRemapper() {
+        this.mapping = null;
+    }
+
+    /**
+     * @return A remapper with the mappings copied into its lookup tables, worth the copy when it remaps many classes
+     */
+    static SimpleSrgRemapper indexed(Map<String, String> mapping) {
+        final SimpleSrgRemapper remapper = new SimpleSrgRemapper();
+        for (Map.Entry<String, String> entry : mapping.entrySet()) {
+            if (entry.getValue() != null) {
+                remapper.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return remapper;
+    }
+
+    /**
+     * @return A remapper for the combined mappings of the set, shared with every other set loaded from the same CSVs
+     */
+    public static SimpleSrgRemapper of(Utilities.MappingsSet mappings) {
+        return shared(mappings.getMappingsHash(), mappings::getCombinedMappings);
+    }
+
+    /**
+     * @param hash Identifies the mappings, or null if they can't be shared
+     */
+    static SimpleSrgRemapper shared(String hash, Supplier<Map<String, String>> mappings) {
+        if (hash == null) {
+            return indexed(mappings.get());
+        }
+        // Held under the map's lock, so concurrent users of the same mappings wait for one remapper to be built
+        return SHARED_REMAPPERS.computeIfAbsent(hash, h -> indexed(mappings.get()));
+    }
+
+    private void put(String srgName, String mappedName) {
+        if (srgName.startsWith("func_")) {
+            final int id = parseId(srgName, 5);
+            if (id >= 0 && methods.put(id, srgName, mappedName)) {
+                return;
+            }
+        } else if (srgName.startsWith("field_")) {
+            final int id = parseId(srgName, 6);
+            if (id >= 0 && fields.put(id, srgName, mappedName)) {
+                return;
+            }
+        }
+        others.put(srgName, mappedName);
+    }
+
+    /**
+     * @return The number starting at {@code start} if it's followed by an underscore and small enough for the arrays,
+     *         or -1
+     */
+    private static int parseId(String name, int start) {
+        final int length = name.length();
+        int id = 0;
+        int i = start;
+        for (; i < length; i++) {
+            final char c = name.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            id = id * 10 + (c - '0');
+            if (id > MAX_DENSE_ID) {
+                return -1;
+            }
+        }
+        return i > start && i < length && name.charAt(i) == '_' ? id : -1;
+    }
+
     @Override
     public String mapMethodName(final String owner, final String name, final String descriptor) {
         String remappedName = map(name);
@@ -41,6 +145,51 @@ public class SimpleSrgRemapper extends Remapper {
 
     @Override
     public String map(final String key) {
-        return mapping.get(key);
+        if (mapping != null) {
+            return mapping.get(key);
+        }
+        if (key.startsWith("func_")) {
+            final String mapped = methods.get(parseId(key, 5), key);
+            if (mapped != null) {
+                return mapped;
+            }
+        } else if (key.startsWith("field_")) {
+            final String mapped = fields.get(parseId(key, 6), key);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
+        return others.isEmpty() ? null : others.get(key);
+    }
+
+    /** SRG names and their mapped names at the index of their id */
+    private static final class DenseTable {
+
+        private String[] srgNames = new String[0];
+        private String[] mappedNames = new String[0];
+
+        /**
+         * @return false if the slot is taken by another name with the same id
+         */
+        boolean put(int id, String srgName, String mappedName) {
+            if (id >= srgNames.length) {
+                final int capacity = Math.max(id + 1, Math.min(srgNames.length * 2, MAX_DENSE_ID + 1));
+                srgNames = Arrays.copyOf(srgNames, capacity);
+                mappedNames = Arrays.copyOf(mappedNames, capacity);
+            }
+            if (srgNames[id] != null && !srgNames[id].equals(srgName)) {
+                return false;
+            }
+            srgNames[id] = srgName;
+            mappedNames[id] = mappedName;
+            return true;
+        }
+
+        String get(int id, String srgName) {
+            if (id < 0 || id >= srgNames.length) {
+                return null;
+            }
+            return srgName.equals(srgNames[id]) ? mappedNames[id] : null;
+        }
     }
 }
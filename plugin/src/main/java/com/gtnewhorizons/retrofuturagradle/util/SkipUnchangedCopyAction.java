@@ -0,0 +1,42 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.gradle.api.Action;
+import org.gradle.api.file.FileCopyDetails;
+
+/**
+ * Excludes files from a copy if the destination already has them with exactly the same contents, so that they keep
+ * their timestamps and only the files that actually changed look modified afterwards. Has to be added after any action
+ * that changes the paths of the copied files.
+ */
+public class SkipUnchangedCopyAction implements Action<FileCopyDetails> {
+
+    private final File destinationDir;
+
+    public SkipUnchangedCopyAction(File destinationDir) {
+        this.destinationDir = destinationDir;
+    }
+
+    @Override
+    public void execute(FileCopyDetails details) {
+        if (details.isDirectory()) {
+            return;
+        }
+        final File target = new File(destinationDir, details.getRelativePath().getPathString());
+        if (!target.isFile() || target.length() != details.getSize()) {
+            return;
+        }
+        try (final InputStream copied = details.open(); final InputStream existing = FileUtils.openInputStream(target)) {
+            if (IOUtils.contentEquals(copied, existing)) {
+                details.exclude();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
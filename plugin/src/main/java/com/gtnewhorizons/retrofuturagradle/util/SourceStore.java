@@ -0,0 +1,189 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory source files of a jar, each kept either as its full text or as an array of lines, whichever was last
+ * written. Line-based stages (patching, remapping) and text-based stages (regex fixups, formatting) can share the
+ * store, and a file is only split or joined again when the other representation is actually requested.
+ * <p>
+ * Behaves like a {@code Map<String, String>} of path to text, so it can be passed anywhere the loaded sources map is
+ * expected. Lines are joined with {@link System#lineSeparator()}, matching how the stages joined them before. Safe to
+ * use from multiple threads.
+ */
+public final class SourceStore extends AbstractMap<String, String> {
+
+    private static final Pattern LINE_BREAK = Pattern.compile("\r\n|\r|\n");
+
+    private final ConcurrentHashMap<String, SourceFile> files = new ConcurrentHashMap<>();
+
+    public SourceStore() {}
+
+    public SourceStore(Map<String, String> sources) {
+        putAll(sources);
+    }
+
+    private static final class SourceFile {
+
+        private String text;
+        private List<String> lines;
+
+        SourceFile(String text, List<String> lines) {
+            this.text = text;
+            this.lines = lines;
+        }
+
+        synchronized String text() {
+            if (text == null) {
+                text = String.join(System.lineSeparator(), lines);
+            }
+            return text;
+        }
+
+        synchronized List<String> lines() {
+            if (lines == null) {
+                lines = Collections.unmodifiableList(Arrays.asList(LINE_BREAK.split(text)));
+            }
+            return lines;
+        }
+    }
+
+    /**
+     * @return The lines of the file without line terminators (trailing empty lines dropped, like
+     *         {@link String#split(String)}), as an unmodifiable list, or null if the file doesn't exist
+     */
+    public List<String> getLines(String path) {
+        final SourceFile file = files.get(path);
+        return file == null ? null : file.lines();
+    }
+
+    /**
+     * Replaces the contents of a file with the given lines, the text is only joined when requested.
+     */
+    public void putLines(String path, List<String> lines) {
+        files.put(path, new SourceFile(null, Collections.unmodifiableList(new ArrayList<>(lines))));
+    }
+
+    @Override
+    public String get(Object path) {
+        final SourceFile file = files.get(path);
+        return file == null ? null : file.text();
+    }
+
+    @Override
+    public String put(String path, String text) {
+        final SourceFile old = files.put(path, new SourceFile(text, null));
+        return old == null ? null : old.text();
+    }
+
+    @Override
+    public String remove(Object path) {
+        final SourceFile old = files.remove(path);
+        return old == null ? null : old.text();
+    }
+
+    @Override
+    public boolean containsKey(Object path) {
+        return files.containsKey(path);
+    }
+
+    @Override
+    public int size() {
+        return files.size();
+    }
+
+    @Override
+    public void clear() {
+        files.clear();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return files.keySet();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                final Iterator<String> paths = files.keySet().iterator();
+                return new Iterator<Entry<String, String>>() {
+
+                    @Override
+                    public boolean hasNext() {
+                        return paths.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        return new SourceEntry(paths.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        paths.remove();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return files.size();
+            }
+        };
+    }
+
+    /**
+     * A live view of one file, the text is only joined when {@link #getValue()} is called.
+     */
+    private final class SourceEntry implements Entry<String, String> {
+
+        private final String path;
+
+        SourceEntry(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public String getKey() {
+            return path;
+        }
+
+        @Override
+        public String getValue() {
+            return get(path);
+        }
+
+        @Override
+        public String setValue(String value) {
+            return put(path, value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            final Entry<?, ?> other = (Entry<?, ?>) o;
+            return path.equals(other.getKey()) && Objects.equals(getValue(), other.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() ^ Objects.hashCode(getValue());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An open-addressing table of SRG names (func_123_a, field_123_b, p_123_1_, p_i123_1_) to mapped names, hashed by the
+ * numbers in the SRG name instead of the whole string. Lookups take the name as a region of a larger text and compare
+ * it in place, so looking up a token found in a source line doesn't allocate.
+ * <p>
+ * Read-only once built, and then safe to share between threads.
+ */
+public final class SrgIdTable {
+
+    private final int mask;
+    private final int[] ids;
+    private final String[] srgNames;
+    private final String[] mappedNames;
+    private int size = 0;
+
+    private SrgIdTable(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.mask = capacity - 1;
+        this.ids = new int[capacity];
+        this.srgNames = new String[capacity];
+        this.mappedNames = new String[capacity];
+    }
+
+    /**
+     * @param mappings SRG names to mapped names
+     */
+    public static SrgIdTable of(Map<String, String> mappings) {
+        return of(mappings, Function.identity());
+    }
+
+    /**
+     * @param mappings SRG names to whatever holds the mapped name
+     * @param getName  Extracts the mapped name from a value of the map
+     */
+    public static <V> SrgIdTable of(Map<String, V> mappings, Function<V, String> getName) {
+        final SrgIdTable table = new SrgIdTable(sizeOf(mappings));
+        table.putAll(mappings, getName);
+        return table;
+    }
+
+    /** Layers can share keys, so this can be more than the number of distinct names */
+    private static int sizeOf(Map<?, ?> mappings) {
+        if (!(mappings instanceof LayeredMap)) {
+            return mappings.size();
+        }
+        int size = 0;
+        for (Map<?, ?> layer : ((LayeredMap<?, ?>) mappings).getLayers()) {
+            size += sizeOf(layer);
+        }
+        return size;
+    }
+
+    private <V> void putAll(Map<String, V> mappings, Function<V, String> getName) {
+        if (mappings instanceof LayeredMap) {
+            // Iterating a LayeredMap would flatten it onto the heap, so add its layers one by one instead, lowest
+            // priority first for the higher ones to overwrite
+            final List<Map<String, V>> layers = ((LayeredMap<String, V>) mappings).getLayers();
+            for (int i = layers.size() - 1; i >= 0; i--) {
+                putAll(layers.get(i), getName);
+            }
+            return;
+        }
+        for (Map.Entry<String, V> entry : mappings.entrySet()) {
+            final V value = entry.getValue();
+            final String mappedName = value == null ? null : getName.apply(value);
+            // Like LayeredMap.get, a null value doesn't hide the mapping of a lower layer
+            if (mappedName != null) {
+                put(entry.getKey(), mappedName);
+            }
+        }
+    }
+
+    /**
+     * Combines the numbers of an SRG name into its hash: the id of the method or field, and for parameters also the
+     * parameter index. Any other name hashes to some consistent value too, it just won't be spread as well.
+     */
+    public static int idOf(CharSequence text, int start, int end) {
+        int id = 0;
+        int runs = 0;
+        boolean inNumber = false;
+        for (int i = start; i < end; i++) {
+            final char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (!inNumber) {
+                    inNumber = true;
+                    runs++;
+                    id *= 31;
+                }
+                id = id * 10 + (c - '0');
+            } else {
+                inNumber = false;
+            }
+        }
+        return runs == 0 ? 0 : id;
+    }
+
+    private static int slotOf(int id) {
+        // Spread consecutive ids over the table
+        final int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void put(String srgName, String mappedName) {
+        final int id = idOf(srgName, 0, srgName.length());
+        int slot = slotOf(id) & mask;
+        while (srgNames[slot] != null) {
+            if (ids[slot] == id && srgNames[slot].equals(srgName)) {
+                mappedNames[slot] = mappedName;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        ids[slot] = id;
+        srgNames[slot] = srgName;
+        mappedNames[slot] = mappedName;
+        size++;
+    }
+
+    /**
+     * @return The mapped name of the SRG name in {@code text} between {@code start} and {@code end}, or null if it has
+     *         no mapping
+     */
+    public String get(CharSequence text, int start, int end) {
+        final int length = end - start;
+        final int id = idOf(text, start, end);
+        int slot = slotOf(id) & mask;
+        String srgName;
+        while ((srgName = srgNames[slot]) != null) {
+            if (ids[slot] == id && srgName.length() == length && regionEquals(text, start, srgName)) {
+                return mappedNames[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @return The mapped name of the given SRG name, or null if it has no mapping
+     */
+    public String get(String srgName) {
+        return get(srgName, 0, srgName.length());
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, String name) {
+        if (text instanceof String) {
+            return ((String) text).regionMatches(start, name, 0, name.length());
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (text.charAt(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,187 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Records the wall time and, where the JVM supports it, the heap allocation of every file going through every stage of
+ * a source processing task, and writes them out as a JSON report with the worst offenders. Safe to use from multiple
+ * threads, samples are taken on the thread running the step.
+ */
+public final class StageProfiler {
+
+    /** A profiler that runs the steps without recording anything */
+    public static final StageProfiler DISABLED = new StageProfiler(false);
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = findAllocationBean();
+
+    private final boolean enabled;
+    private final Set<String> stageOrder = Collections.synchronizedSet(new LinkedHashSet<>());
+    private final ConcurrentLinkedQueue<Sample> samples = new ConcurrentLinkedQueue<>();
+
+    public StageProfiler() {
+        this(true);
+    }
+
+    private StageProfiler(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    private static com.sun.management.ThreadMXBean findAllocationBean() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+                return sunBean;
+            }
+        }
+        return null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @FunctionalInterface
+    public interface Step<T, E extends Exception> {
+
+        T run() throws E;
+    }
+
+    private static final class Sample {
+
+        final String stage;
+        final String file;
+        final long nanos;
+        /** -1 if allocations can't be measured */
+        final long allocatedBytes;
+
+        Sample(String stage, String file, long nanos, long allocatedBytes) {
+            this.stage = stage;
+            this.file = file;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /**
+     * Runs a step of the given stage on the given file, recording its cost. Multiple steps of the same stage and file
+     * are added up in the report.
+     */
+    public <T, E extends Exception> T measure(String stage, String file, Step<T, E> step) throws E {
+        if (!enabled) {
+            return step.run();
+        }
+        stageOrder.add(stage);
+        final long threadId = Thread.currentThread().getId();
+        final long preBytes = ALLOCATION_BEAN == null ? 0 : ALLOCATION_BEAN.getThreadAllocatedBytes(threadId);
+        final long preNanos = System.nanoTime();
+        try {
+            return step.run();
+        } finally {
+            final long nanos = System.nanoTime() - preNanos;
+            final long bytes = ALLOCATION_BEAN == null ? -1
+                    : ALLOCATION_BEAN.getThreadAllocatedBytes(threadId) - preBytes;
+            samples.add(new Sample(stage, file, nanos, bytes));
+        }
+    }
+
+    /** JSON shape of a single stage and file */
+    private static final class FileReport {
+
+        String stage;
+        String file;
+        double wallMillis;
+        long allocatedBytes;
+    }
+
+    /** JSON shape of a stage */
+    private static final class StageReport {
+
+        String stage;
+        int files;
+        double wallMillis;
+        long allocatedBytes;
+        List<FileReport> hotspots;
+    }
+
+    /** JSON shape of the whole report */
+    private static final class Report {
+
+        String task;
+        boolean allocationsMeasured;
+        int topN;
+        List<StageReport> stages;
+        List<FileReport> hotspots;
+    }
+
+    /**
+     * Writes the report: totals per stage with that stage's slowest files, and the slowest files across all stages.
+     *
+     * @param taskPath The task the samples were recorded for
+     * @param topN     How many files to list per hotspot list
+     */
+    public void writeReport(File reportFile, String taskPath, int topN) throws IOException {
+        final Map<String, Map<String, FileReport>> byStage = new LinkedHashMap<>();
+        synchronized (stageOrder) {
+            for (String stage : stageOrder) {
+                byStage.put(stage, new LinkedHashMap<>());
+            }
+        }
+        for (Sample sample : samples) {
+            final FileReport file = byStage.computeIfAbsent(sample.stage, k -> new LinkedHashMap<>())
+                    .computeIfAbsent(sample.file, k -> {
+                        final FileReport fr = new FileReport();
+                        fr.stage = sample.stage;
+                        fr.file = sample.file;
+                        return fr;
+                    });
+            file.wallMillis += sample.nanos / 1_000_000.0;
+            file.allocatedBytes += Math.max(sample.allocatedBytes, 0);
+        }
+
+        final Comparator<FileReport> slowestFirst = Comparator.comparingDouble((FileReport f) -> f.wallMillis)
+                .reversed();
+        final Report report = new Report();
+        report.task = taskPath;
+        report.allocationsMeasured = ALLOCATION_BEAN != null;
+        report.topN = topN;
+        report.stages = new ArrayList<>();
+        final List<FileReport> allFiles = new ArrayList<>();
+        for (Map.Entry<String, Map<String, FileReport>> stage : byStage.entrySet()) {
+            final StageReport sr = new StageReport();
+            sr.stage = stage.getKey();
+            sr.files = stage.getValue().size();
+            for (FileReport file : stage.getValue().values()) {
+                sr.wallMillis += file.wallMillis;
+                sr.allocatedBytes += file.allocatedBytes;
+            }
+            sr.hotspots = stage.getValue().values().stream().sorted(slowestFirst).limit(topN)
+                    .collect(Collectors.toList());
+            report.stages.add(sr);
+            allFiles.addAll(stage.getValue().values());
+        }
+        report.hotspots = allFiles.stream().sorted(slowestFirst).limit(topN).collect(Collectors.toList());
+
+        FileUtils.forceMkdirParent(reportFile);
+        try (final Writer writer = Files.newBufferedWriter(reportFile.toPath(), StandardCharsets.UTF_8)) {
+            Utilities.GSON.toJson(report, writer);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Clears the synthetic flag of all fields and methods, so that decompilers don't hide them. Enums and synthetic
+ * classes are left untouched.
+ */
+public class SyntheticStrippingVisitor extends ClassVisitor {
+
+    private boolean stripping = false;
+
+    public SyntheticStrippingVisitor(ClassVisitor next) {
+        super(Opcodes.ASM9, next);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName,
+            String[] interfaces) {
+        stripping = (access & Opcodes.ACC_ENUM) == 0 && !"java/lang/Enum".equals(superName)
+                && (access & Opcodes.ACC_SYNTHETIC) == 0;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        return super.visitField(strip(access), name, descriptor, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+            String[] exceptions) {
+        return super.visitMethod(strip(access), name, descriptor, signature, exceptions);
+    }
+
+    private int strip(int access) {
+        return stripping ? access & ~Opcodes.ACC_SYNTHETIC : access;
+    }
+}
@@ -5,7 +5,6 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -14,18 +13,23 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
@@ -45,8 +49,11 @@ import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.tree.ClassNode;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.Multimaps;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonElement;
@@ -106,6 +113,18 @@ public final class Utilities {
         return FileUtils.getFile(getCacheRoot(project), paths);
     }
 
+    /**
+     * Moves a file over the target in one atomic step where the file system supports it, so that concurrent builds
+     * sharing a cache directory never observe a partially written file.
+     */
+    public static void moveAtomically(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public static String getMapStringOrBlank(Map<?, ?> map, String key) {
         Object value = map.get(key);
         return value == null ? "" : value.toString();
@@ -171,6 +190,43 @@ public final class Utilities {
         }
     }
 
+    /**
+     * Nested classes are decompiled into the source file of their outermost class. A {@code $} only separates an outer
+     * class name if a class of that name exists, so top-level classes with a {@code $} in their name are kept whole.
+     *
+     * @param className  Internal name of a class, e.g. net/minecraft/a/B$1
+     * @param classNames Internal names of all the classes decompiled together
+     * @return Internal name of the class whose source file the given class ends up in
+     */
+    public static String outermostClassOf(String className, Set<String> classNames) {
+        final int nameStart = className.lastIndexOf('/') + 1;
+        int dollar = className.indexOf('$', nameStart);
+        while (dollar > nameStart) {
+            final String outer = className.substring(0, dollar);
+            if (classNames.contains(outer)) {
+                return outer;
+            }
+            dollar = className.indexOf('$', dollar + 1);
+        }
+        return className;
+    }
+
+    /**
+     * Writes an uncompressed zip entry, for intermediate jars that are read back only once.
+     */
+    public static void writeStoredZipEntry(ZipOutputStream out, String name, byte[] data) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        final ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
     public static byte[] getClassBytes(Class<?> klass) {
         final String resourcePath = String.format("/%s.class", klass.getName().replace('.', '/'));
         try (InputStream cis = klass.getResourceAsStream(resourcePath)) {
@@ -245,20 +301,14 @@ public final class Utilities {
         if (isTemporary && !Constants.DEBUG_NO_TMP_CLEANUP) {
             return null;
         }
-        try (FileOutputStream fos = new FileOutputStream(target);
-                BufferedOutputStream bos = new BufferedOutputStream(fos);
-                ZipOutputStream zos = new ZipOutputStream(bos)) {
-            for (Map.Entry<String, byte[]> resource : loadedResources.entrySet()) {
-                zos.putNextEntry(new ZipEntry(resource.getKey()));
-                zos.write(resource.getValue());
-                zos.closeEntry();
-            }
-            for (Map.Entry<String, String> srcFile : loadedSources.entrySet()) {
-                zos.putNextEntry(new ZipEntry(srcFile.getKey()));
-                zos.write(srcFile.getValue().getBytes(StandardCharsets.UTF_8));
-                zos.closeEntry();
-            }
+        final ParallelJarWriter writer = new ParallelJarWriter();
+        for (Map.Entry<String, byte[]> resource : loadedResources.entrySet()) {
+            writer.put(resource.getKey(), resource.getValue());
+        }
+        for (Map.Entry<String, String> srcFile : loadedSources.entrySet()) {
+            writer.put(srcFile.getKey(), srcFile.getValue().getBytes(StandardCharsets.UTF_8));
         }
+        writer.write(target);
         return target;
     }
 
@@ -290,6 +340,14 @@ public final class Utilities {
         }
 
         public String strip(String target) {
+            return strip(target, stripFrontComponents);
+        }
+
+        /**
+         * @return The target path of a patch relative to the jar root, without the first {@code stripFrontComponents}
+         *         path components
+         */
+        public static String strip(String target, int stripFrontComponents) {
             target = target.replace('\\', '/');
             int index = 0;
             for (int x = 0; x < stripFrontComponents; x++) {
@@ -302,6 +360,10 @@ public final class Utilities {
         public List<String> getData(String target) {
             target = strip(target);
 
+            if (fileMap instanceof SourceStore) {
+                final List<String> lines = ((SourceStore) fileMap).getLines(target);
+                return lines == null ? null : new ArrayList<>(lines);
+            }
             if (fileMap.containsKey(target)) {
                 String[] lines = fileMap.get(target).split("\r\n|\r|\n");
                 return new ArrayList<>(Arrays.asList(lines));
@@ -312,6 +374,10 @@ public final class Utilities {
 
         @Override
         public void setData(String target, List<String> data) {
+            if (fileMap instanceof SourceStore) {
+                ((SourceStore) fileMap).putLines(strip(target), data);
+                return;
+            }
             fileMap.put(strip(target), Joiner.on(System.lineSeparator()).join(data));
         }
     }
@@ -339,6 +405,7 @@ public final class Utilities {
         public final String param;
         public final String suffix;
         public final String type;
+        /** Only ever updated by the thread remapping {@link #zipEntry} */
         public int uses = 0;
 
         public GenericMapping(String zipEntry, String param, String suffix, String type) {
@@ -400,15 +467,72 @@ public final class Utilities {
 
     public static class MappingsSet {
 
-        public final Map<String, Utilities.Mapping> methodMappings = new HashMap<>();
-        public final Map<String, Utilities.Mapping> fieldMappings = new HashMap<>();
-        public final Map<String, String> paramMappings = new HashMap<>();
-        // srg name -> mapping
-        public final ListMultimap<String, GenericMapping> genericMappings = MultimapBuilder.hashKeys().arrayListValues()
-                .build();
+        public final Map<String, Utilities.Mapping> methodMappings;
+        public final Map<String, Utilities.Mapping> fieldMappings;
+        public final Map<String, String> paramMappings;
+        private final ListMultimap<String, GenericMapping> writableGenericMappings = MultimapBuilder.hashKeys()
+                .arrayListValues().build();
+        // srg name -> mapping, read-only so that all writes go through addGenericMapping
+        public final ListMultimap<String, GenericMapping> genericMappings = Multimaps
+                .unmodifiableListMultimap(writableGenericMappings);
         // zip entry -> patch list
         public final ListMultimap<String, Utilities.GenericPatch> genericPatches = MultimapBuilder.hashKeys()
                 .arrayListValues().build();
+        // zip entry -> srg name -> mappings of that file only, kept in sync with genericMappings by addGenericMapping
+        private final Map<String, ListMultimap<String, GenericMapping>> genericMappingsByEntry = new HashMap<>();
+        private @Nullable String mappingsHash;
+
+        public MappingsSet() {
+            this(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        public MappingsSet(Map<String, Utilities.Mapping> methodMappings, Map<String, Utilities.Mapping> fieldMappings,
+                Map<String, String> paramMappings) {
+            this.methodMappings = methodMappings;
+            this.fieldMappings = fieldMappings;
+            this.paramMappings = paramMappings;
+        }
+
+        /**
+         * @param key The SRG name of the method or field, or for constructors the zip entry followed by
+         *            {@code @init:<signature>}
+         */
+        public void addGenericMapping(String key, GenericMapping mapping) {
+            writableGenericMappings.put(key, mapping);
+            genericMappingsByEntry
+                    .computeIfAbsent(mapping.zipEntry, k -> MultimapBuilder.hashKeys().arrayListValues().build())
+                    .put(key, mapping);
+        }
+
+        /**
+         * @return The generic mappings that apply to the given zip entry, keyed like {@link #genericMappings}
+         */
+        public ListMultimap<String, GenericMapping> getGenericMappings(String zipEntry) {
+            final ListMultimap<String, GenericMapping> entryMappings = genericMappingsByEntry.get(zipEntry);
+            return entryMappings == null ? ImmutableListMultimap.of()
+                    : Multimaps.unmodifiableListMultimap(entryMappings);
+        }
+
+        /**
+         * @return The {@link MappingIndex#getHash() hashes} of the CSVs the method, field and param mappings were
+         *         loaded from, or null if they weren't loaded by {@link #loadMappingCsvs} or were modified since
+         */
+        public @Nullable String getMappingsHash() {
+            if (isModified(methodMappings) || isModified(fieldMappings) || isModified(paramMappings)) {
+                return null;
+            }
+            return mappingsHash;
+        }
+
+        private static boolean isModified(Map<?, ?> mappings) {
+            return mappings instanceof LayeredMap && ((LayeredMap<?, ?>) mappings).isModified();
+        }
+
+        public void clearGenerics() {
+            writableGenericMappings.clear();
+            genericMappingsByEntry.clear();
+            genericPatches.clear();
+        }
 
         public String remapSimpleName(String name) {
             if (StringUtils.isBlank(name)) {
@@ -427,51 +551,58 @@ public final class Utilities {
         }
 
         /**
-         * @return A combined map of method, field and param mappings.
+         * @return A combined read-only view of method, field and param mappings.
          */
         public Map<String, String> getCombinedMappings() {
-            Map<String, String> ret = new HashMap<>();
-            methodMappings.forEach((k, m) -> ret.put(k, m.name));
-            fieldMappings.forEach((k, m) -> ret.put(k, m.name));
-            ret.putAll(paramMappings);
-            return ret;
+            return new LayeredMap<>(
+                    paramMappings,
+                    Maps.transformValues(fieldMappings, m -> m.name),
+                    Maps.transformValues(methodMappings, m -> m.name));
         }
     }
 
     public static MappingsSet loadMappingCsvs(File methodsCsv, File fieldsCsv, @Nullable File paramsCsv,
             @Nullable Collection<File> extraParamsCsvs, @Nullable String genericsFilename) {
+        return loadMappingCsvs(null, methodsCsv, fieldsCsv, paramsCsv, extraParamsCsvs, genericsFilename);
+    }
+
+    /**
+     * @param indexDir The directory to store the binary {@link MappingIndex} files in, see
+     *                 {@link MappingIndex#CACHE_DIR_NAME}, or null to only index the CSVs in memory
+     */
+    public static MappingsSet loadMappingCsvs(@Nullable File indexDir, File methodsCsv, File fieldsCsv,
+            @Nullable File paramsCsv, @Nullable Collection<File> extraParamsCsvs, @Nullable String genericsFilename) {
         try {
-            MappingsSet mappings = new MappingsSet();
-            try (CSVReader methodReader = Utilities.createCsvReader(methodsCsv)) {
-                for (String[] csvLine : methodReader) {
-                    // func_100012_b,setPotionDurationMax,0,Toggle the isPotionDurationMax field.
-                    mappings.methodMappings.put(csvLine[0], new Utilities.Mapping(csvLine[1], csvLine[3]));
-                }
-            }
-            try (CSVReader fieldReader = Utilities.createCsvReader(fieldsCsv)) {
-                for (String[] csvLine : fieldReader) {
-                    // field_100013_f,isPotionDurationMax,0,"True if potion effect duration is at maximum, false
-                    // otherwise."
-                    mappings.fieldMappings.put(csvLine[0], new Utilities.Mapping(csvLine[1], csvLine[3]));
+            // Param CSVs loaded later take priority
+            final List<MappingIndex> paramIndices = new ArrayList<>();
+            if (extraParamsCsvs != null && !extraParamsCsvs.isEmpty()) {
+                for (File extraParamsCsv : extraParamsCsvs) {
+                    paramIndices.add(0, MappingIndex.open(indexDir, extraParamsCsv));
                 }
             }
             if (paramsCsv != null) {
-                try (CSVReader paramReader = Utilities.createCsvReader(paramsCsv)) {
-                    for (String[] csvLine : paramReader) {
-                        // p_104055_1_,force,1
-                        mappings.paramMappings.put(csvLine[0], csvLine[1]);
-                    }
-                }
+                paramIndices.add(MappingIndex.open(indexDir, paramsCsv));
             }
-            if (extraParamsCsvs != null && !extraParamsCsvs.isEmpty()) {
-                for (File extraParamsCsv : extraParamsCsvs) {
-                    try (CSVReader paramReader = Utilities.createCsvReader(extraParamsCsv)) {
-                        for (String[] csvLine : paramReader) {
-                            mappings.paramMappings.put(csvLine[0], csvLine[1]);
-                        }
-                    }
-                }
+            final List<Map<String, String>> paramLayers = new ArrayList<>();
+            for (MappingIndex paramIndex : paramIndices) {
+                paramLayers.add(paramIndex.asNameMap());
+            }
+            final MappingIndex methodIndex = MappingIndex.open(indexDir, methodsCsv);
+            final MappingIndex fieldIndex = MappingIndex.open(indexDir, fieldsCsv);
+            // func_100012_b,setPotionDurationMax,0,Toggle the isPotionDurationMax field.
+            // field_100013_f,isPotionDurationMax,0,"True if potion effect duration is at maximum, false otherwise."
+            // p_104055_1_,force,1
+            // The indices are read-only, so any changes made through the public maps go to a layer on top of them
+            MappingsSet mappings = new MappingsSet(
+                    LayeredMap.copyOnWrite(Collections.singletonList(methodIndex.asMappingMap())),
+                    LayeredMap.copyOnWrite(Collections.singletonList(fieldIndex.asMappingMap())),
+                    LayeredMap.copyOnWrite(paramLayers));
+            final StringBuilder mappingsHash = new StringBuilder();
+            mappingsHash.append(methodIndex.getHash()).append(',').append(fieldIndex.getHash());
+            for (MappingIndex paramIndex : paramIndices) {
+                mappingsHash.append(',').append(paramIndex.getHash());
             }
+            mappings.mappingsHash = mappingsHash.toString();
             if (StringUtils.isNotBlank(genericsFilename)) {
                 URL genericsUrl = RemapSourceJarTask.class.getResource(genericsFilename);
                 URL genericPatchesUrl = RemapSourceJarTask.class
@@ -489,7 +620,7 @@ public final class Utilities {
                         final String type = genLine[5];
                         final String suffix = genLine[6];
                         final String key = srg.equals("@init") ? (zipEntry + genLine[2]) : srg;
-                        mappings.genericMappings.put(key, new Utilities.GenericMapping(zipEntry, param, suffix, type));
+                        mappings.addGenericMapping(key, new Utilities.GenericMapping(zipEntry, param, suffix, type));
                     }
                 }
                 try (CSVReader genReader = Utilities.createCsvReader(genericPatchesUrl)) {
@@ -514,11 +645,27 @@ public final class Utilities {
      *         inheritance checks performed)
      */
     public static byte[] simpleRemapClass(byte[] classBytes, Map<String, String> mappings) {
-        final ClassReader reader = new ClassReader(classBytes);
-        final ClassWriter writer = new ClassWriter(0);
-        final ClassRemapper remapper = new ClassRemapper(writer, new SimpleSrgRemapper(mappings));
-        reader.accept(remapper, 0);
-        return writer.toByteArray();
+        return simpleRemapChain(mappings).transform(classBytes, "<remapped class>");
+    }
+
+    /**
+     * @return A transform chain remapping SRG names with the given combined mappings, looked up in the map directly
+     */
+    public static ClassTransformChain simpleRemapChain(Map<String, String> mappings) {
+        return simpleRemapChain(new SimpleSrgRemapper(mappings));
+    }
+
+    /**
+     * @return A transform chain remapping SRG names with the combined mappings of the set, reusing the lookup tables of
+     *         earlier chains for the same mappings
+     */
+    public static ClassTransformChain simpleRemapChain(MappingsSet mappings) {
+        return simpleRemapChain(SimpleSrgRemapper.of(mappings));
+    }
+
+    private static ClassTransformChain simpleRemapChain(SimpleSrgRemapper remapper) {
+        // Renames, so the SRG names of the input must not be carried over into the output's constant pool
+        return new ClassTransformChain(0, false, next -> new ClassRemapper(next, remapper));
     }
 
     public static UUID resolveUUID(String username, Gradle gradle) {
@@ -123,6 +123,42 @@ public final class ContextualPatch {
      */
     public List<PatchReport> patch(boolean dryRun) throws PatchException, IOException {
         List<PatchReport> report = new ArrayList<PatchReport>();
+        List<SinglePatch> patches = readPatches();
+        computeContext(patches);
+        for (SinglePatch patch : patches) {
+            try {
+                report.add(applyPatch(patch, dryRun));
+                // report.add(new PatchReport(patch.targetFile, computeBackup(patch.targetFile), patch.binary,
+                // PatchStatus.Patched, null));
+            } catch (Exception e) {
+                report.add(
+                        new PatchReport(
+                                patch.targetPath,
+                                patch.binary,
+                                PatchStatus.Failure,
+                                e,
+                                new ArrayList<HunkReport>()));
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Parses the patch without applying it.
+     *
+     * @return The target paths of all the file patches contained in this patch, as written in the patch
+     * @throws PatchException for a malformed patch file
+     * @throws IOException    because it reads the patch file
+     */
+    public List<String> getTargetPaths() throws PatchException, IOException {
+        List<String> targets = new ArrayList<String>();
+        for (SinglePatch patch : readPatches()) {
+            targets.add(patch.targetPath);
+        }
+        return targets;
+    }
+
+    private List<SinglePatch> readPatches() throws PatchException, IOException {
         init();
         try {
             patchLine = patchReader.readLine();
@@ -134,23 +170,7 @@ public final class ContextualPatch {
                 }
                 patches.add(patch);
             }
-            computeContext(patches);
-            for (SinglePatch patch : patches) {
-                try {
-                    report.add(applyPatch(patch, dryRun));
-                    // report.add(new PatchReport(patch.targetFile, computeBackup(patch.targetFile), patch.binary,
-                    // PatchStatus.Patched, null));
-                } catch (Exception e) {
-                    report.add(
-                            new PatchReport(
-                                    patch.targetPath,
-                                    patch.binary,
-                                    PatchStatus.Failure,
-                                    e,
-                                    new ArrayList<HunkReport>()));
-                }
-            }
-            return report;
+            return patches;
         } finally {
             if (patchReader != null) {
                 try {
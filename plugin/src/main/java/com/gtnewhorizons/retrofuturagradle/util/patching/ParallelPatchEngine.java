@@ -0,0 +1,220 @@
+package com.gtnewhorizons.retrofuturagradle.util.patching;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.cloudbees.diff.PatchException;
+import com.gtnewhorizons.retrofuturagradle.util.SourceStore;
+import com.gtnewhorizons.retrofuturagradle.util.StageProfiler;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+/**
+ * Applies a set of patches to in-memory sources, running patches that touch disjoint files concurrently.
+ * <p>
+ * Every patch can have multiple candidate versions, the first one that applies cleanly wins. Each candidate is applied
+ * only once, against a staging copy of its target files that is only committed if all of its hunks applied, so a failed
+ * candidate never leaves a half-patched file behind. Patches sharing a target file are applied one after another in
+ * the order they were added.
+ */
+public final class ParallelPatchEngine {
+
+    private final Map<String, String> sources;
+    private final int stripFrontComponents;
+    private int maxFuzz = 0;
+    private StageProfiler profiler = StageProfiler.DISABLED;
+    private String profilerStage;
+    private final List<PatchSet> patches = new ArrayList<>();
+
+    /**
+     * @param sources              Path to file contents, patched in place by {@link #apply()}
+     * @param stripFrontComponents Number of path components (between slashes) to strip in patch file paths
+     */
+    public ParallelPatchEngine(Map<String, String> sources, int stripFrontComponents) {
+        this.sources = sources;
+        this.stripFrontComponents = stripFrontComponents;
+    }
+
+    public ParallelPatchEngine setMaxFuzz(int maxFuzz) {
+        this.maxFuzz = maxFuzz;
+        return this;
+    }
+
+    /**
+     * Records the time spent on every patch, named after the patch, as the given stage.
+     */
+    public ParallelPatchEngine setProfiler(StageProfiler profiler, String stage) {
+        this.profiler = profiler;
+        this.profilerStage = stage;
+        return this;
+    }
+
+    /**
+     * Queues a patch.
+     *
+     * @param name       Name of the patch for the report
+     * @param candidates Contents of the alternative versions of the patch, in order of preference
+     */
+    public void add(String name, List<String> candidates) {
+        if (candidates.isEmpty()) {
+            throw new IllegalArgumentException("No candidates for patch " + name);
+        }
+        patches.add(new PatchSet(name, new ArrayList<>(candidates)));
+    }
+
+    public void add(String name, String patch) {
+        add(name, Collections.singletonList(patch));
+    }
+
+    public int size() {
+        return patches.size();
+    }
+
+    /**
+     * The outcome of one queued patch.
+     */
+    public static final class Result {
+
+        public final String name;
+        /** Index of the applied candidate, or of the last tried one if none applied */
+        public final int candidate;
+        public final List<ContextualPatch.PatchReport> reports;
+
+        Result(String name, int candidate, List<ContextualPatch.PatchReport> reports) {
+            this.name = name;
+            this.candidate = candidate;
+            this.reports = reports;
+        }
+
+        public boolean isSuccess() {
+            return reports.stream().allMatch(r -> r.getStatus().isSuccess());
+        }
+    }
+
+    private static final class PatchSet {
+
+        final String name;
+        final List<String> candidates;
+
+        PatchSet(String name, List<String> candidates) {
+            this.name = name;
+            this.candidates = candidates;
+        }
+    }
+
+    /**
+     * Applies all queued patches, then writes the patched files back into the sources map.
+     *
+     * @return The results of all patches, in the order they were added
+     * @throws PatchException for a malformed patch
+     */
+    public List<Result> apply() throws PatchException, IOException {
+        final List<List<Integer>> chains = chainByTarget();
+        final SourceStore files = sources instanceof SourceStore ? (SourceStore) sources : new SourceStore(sources);
+        final Result[] results = new Result[patches.size()];
+        // Chains never share a file, so they can safely run at the same time
+        chains.parallelStream().forEach(chain -> {
+            for (int index : chain) {
+                final PatchSet patchSet = patches.get(index);
+                results[index] = profiler.measure(profilerStage, patchSet.name, () -> applyPatch(patchSet, files));
+            }
+        });
+        if (files != sources) {
+            sources.putAll(files);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Groups the queued patches into chains such that any two patches touching the same file end up in the same chain.
+     */
+    List<List<Integer>> chainByTarget() throws PatchException, IOException {
+        final int[] parent = new int[patches.size()];
+        final Map<String, Integer> fileOwner = new HashMap<>();
+        for (int i = 0; i < patches.size(); i++) {
+            parent[i] = i;
+            for (String candidate : patches.get(i).candidates) {
+                final ContextualPatch parsed = ContextualPatch.create(candidate, null);
+                for (String target : parsed.getTargetPaths()) {
+                    final String path = Utilities.InMemoryJarContextProvider.strip(target, stripFrontComponents);
+                    final Integer owner = fileOwner.putIfAbsent(path, i);
+                    if (owner != null) {
+                        parent[find(parent, i)] = find(parent, owner);
+                    }
+                }
+            }
+        }
+        final Map<Integer, List<Integer>> chains = new LinkedHashMap<>();
+        for (int i = 0; i < patches.size(); i++) {
+            chains.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(i);
+        }
+        return new ArrayList<>(chains.values());
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private Result applyPatch(PatchSet patchSet, SourceStore files) {
+        List<ContextualPatch.PatchReport> reports = Collections.emptyList();
+        int candidate = 0;
+        for (; candidate < patchSet.candidates.size(); candidate++) {
+            final StagingContextProvider staging = new StagingContextProvider(files);
+            final ContextualPatch patch = ContextualPatch.create(patchSet.candidates.get(candidate), staging);
+            patch.setAccessC14N(true);
+            patch.setMaxFuzz(maxFuzz);
+            try {
+                reports = patch.patch(false);
+            } catch (PatchException | IOException e) {
+                throw new RuntimeException("Couldn't apply patch " + patchSet.name, e);
+            }
+            if (reports.stream().allMatch(r -> r.getStatus().isSuccess())) {
+                staging.commit();
+                return new Result(patchSet.name, candidate, reports);
+            }
+        }
+        return new Result(patchSet.name, candidate - 1, reports);
+    }
+
+    /**
+     * Reads through to the shared files, but keeps all writes to the side until committed.
+     */
+    private final class StagingContextProvider implements ContextualPatch.IContextProvider {
+
+        private final SourceStore files;
+        private final Map<String, List<String>> staged = new HashMap<>();
+
+        StagingContextProvider(SourceStore files) {
+            this.files = files;
+        }
+
+        @Override
+        public List<String> getData(String target) {
+            final String path = Utilities.InMemoryJarContextProvider.strip(target, stripFrontComponents);
+            final List<String> stagedLines = staged.get(path);
+            if (stagedLines != null) {
+                return new ArrayList<>(stagedLines);
+            }
+            final List<String> lines = files.getLines(path);
+            return lines == null ? null : new ArrayList<>(lines);
+        }
+
+        @Override
+        public void setData(String target, List<String> data) {
+            staged.put(Utilities.InMemoryJarContextProvider.strip(target, stripFrontComponents), new ArrayList<>(data));
+        }
+
+        void commit() {
+            staged.forEach(files::putLines);
+        }
+    }
+}
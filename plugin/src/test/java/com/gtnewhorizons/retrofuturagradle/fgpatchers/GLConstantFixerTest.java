@@ -0,0 +1,115 @@
+package com.gtnewhorizons.retrofuturagradle.fgpatchers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.common.io.Resources;
+import com.google.gson.reflect.TypeToken;
+import com.gtnewhorizons.retrofuturagradle.json.GLConstantGroup;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+class GLConstantFixerTest {
+
+    private static GLConstantGroup group(Map<String, List<String>> functions,
+            Map<String, Map<String, String>> constants) {
+        final GLConstantGroup group = new GLConstantGroup();
+        group.functions = functions;
+        group.constants = constants;
+        return group;
+    }
+
+    private static List<GLConstantGroup> loadConstants() throws IOException {
+        final String text = Resources
+                .toString(Resources.getResource(GLConstantFixer.class, "gl_constants.json"), StandardCharsets.UTF_8);
+        return Utilities.GSON.fromJson(text, new TypeToken<List<GLConstantGroup>>() {}.getType());
+    }
+
+    /** The linear scan over all groups the index replaced */
+    private static String scan(List<GLConstantGroup> json, String pack, String method, String constant) {
+        String answer = null;
+        for (GLConstantGroup group : json) {
+            if (group.functions.containsKey(pack) && group.functions.get(pack).contains(method)) {
+                for (Map.Entry<String, Map<String, String>> entry : group.constants.entrySet()) {
+                    if (entry.getValue().containsKey(constant)) {
+                        answer = entry.getKey() + "." + entry.getValue().get(constant);
+                    }
+                }
+            }
+        }
+        return answer;
+    }
+
+    @Test
+    void laterGroupWins() {
+        final Map<String, Map<String, String>> firstConstants = new LinkedHashMap<>();
+        firstConstants.put("GL11", Collections.singletonMap("1", "GL_FIRST"));
+        final Map<String, Map<String, String>> secondConstants = new LinkedHashMap<>();
+        secondConstants.put("GL11", Collections.singletonMap("1", "GL_SECOND"));
+        secondConstants.put("GL12", Collections.singletonMap("1", "GL_SECOND_LATER_CLASS"));
+        final List<GLConstantGroup> json = Arrays.asList(
+                group(Collections.singletonMap("GL11", Arrays.asList("glFoo", "glBar")), firstConstants),
+                group(Collections.singletonMap("GL11", Collections.singletonList("glFoo")), secondConstants));
+
+        final Map<String, Map<String, String>> index = GLConstantFixer.buildIndex(json);
+        assertEquals("GL12.GL_SECOND_LATER_CLASS", index.get("GL11.glFoo").get("1"));
+        assertEquals("GL11.GL_FIRST", index.get("GL11.glBar").get("1"));
+        assertNull(index.get("GL11.glBaz"));
+    }
+
+    @Test
+    void indexMatchesLinearScan() throws IOException {
+        final List<GLConstantGroup> json = loadConstants();
+        final Map<String, Map<String, String>> index = GLConstantFixer.buildIndex(json);
+        final TreeSet<String> literals = new TreeSet<>();
+        json.forEach(g -> g.constants.values().forEach(c -> literals.addAll(c.keySet())));
+        literals.add("12345678");
+        int checked = 0;
+        for (GLConstantGroup group : json) {
+            for (Map.Entry<String, List<String>> functions : group.functions.entrySet()) {
+                for (String method : functions.getValue()) {
+                    final Map<String, String> byLiteral = index.get(functions.getKey() + "." + method);
+                    assertNotNull(byLiteral);
+                    for (String literal : literals) {
+                        assertEquals(
+                                scan(json, functions.getKey(), method, literal),
+                                byLiteral.get(literal),
+                                functions.getKey() + "." + method + " " + literal);
+                        checked++;
+                    }
+                }
+            }
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    void fixesConstantsAndImports() throws IOException {
+        final String nl = System.lineSeparator();
+        final String source = "import org.lwjgl.opengl.GL11;" + nl
+                + nl
+                + "class A {" + nl
+                + "    void f() {" + nl
+                + "        GL11.glClear(256);" + nl
+                + "        GL11.glBegin(1);" + nl
+                + "        GL11.glNotAConstantCall(256);" + nl
+                + "    }" + nl
+                + "}" + nl;
+        final String fixed = new GLConstantFixer().fixOGL(source);
+        assertTrue(fixed.contains("GL11.glClear(GL11.GL_DEPTH_BUFFER_BIT);"), fixed);
+        assertTrue(fixed.contains("GL11.glBegin(GL11.GL_LINES);"), fixed);
+        assertTrue(fixed.contains("GL11.glNotAConstantCall(256);"), fixed);
+        // Files that don't import anything from LWJGL are left alone
+        final String noImport = "class B { void f() { GL11.glClear(256); } }";
+        assertSame(noImport, new GLConstantFixer().fixOGL(noImport));
+    }
+}
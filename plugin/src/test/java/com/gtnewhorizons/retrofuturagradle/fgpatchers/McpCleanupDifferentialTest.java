@@ -0,0 +1,194 @@
+package com.gtnewhorizons.retrofuturagradle.fgpatchers;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.gtnewhorizons.retrofuturagradle.mcp.DecompilerFixture;
+
+/**
+ * Checks that the fused MCP cleanup produces exactly the same output as running every rule in its own pass, and that
+ * the single scan stripping comments and fixing imports matches the passes it replaced.
+ * <p>
+ * By default the decompiled sources come from a few generated classes run through forgeflower. To run it over a whole
+ * decompiled jar instead, e.g. build/tmp/cleanupDecompSrgJar/mcppatched.jar of a workspace, pass
+ * {@code -Prfg.cleanupDifferentialJar=<path to the jar>} to the test task.
+ */
+class McpCleanupDifferentialTest {
+
+    private static final String SAMPLE = String.join(
+            "\n",
+            "package net.minecraft.util;",
+            "",
+            "public class MathHelper {",
+            "   private static final float[] SIN_TABLE = new float[65536];",
+            "   public static final float field_1 = 3.1415927F;",
+            "   public static final double field_2 = 3.141592653589793D;",
+            "   public static final double field_3 = 13.14159D + 6.283185307179586D - 1.5707963267948966D;",
+            "   public static final float field_4 = 57.295776F * 0.017453292F + 0.31415927F;",
+            "   public static final double field_5 = 1.7976931348623157E308D + 1.7976931348623157E+308D;",
+            "   public static final char field_6 = Character.valueOf('x').charValue();",
+            "   public static final char field_7 = '\\u2026' + '\\u0041';",
+            "   public static final String field_8 = \"0.7853981633974483D\";",
+            "   public static final float field_9 = 5.811946F + 5.811946D + 0.811946F + 0.21991149F + 4.712389F;",
+            "   public static final float field_10 = 1.2566371F + 0.62831855F + 0.69813174F + 0.7853982F;",
+            "}",
+            "");
+
+    @Test
+    void fusedRulesMatchSample() {
+        assertEquals(McpCleanupFg12.cleanupOneByOne(SAMPLE, true), McpCleanupFg12.cleanup(SAMPLE, true));
+        assertEquals(McpCleanupFg12.cleanupOneByOne(SAMPLE, false), McpCleanupFg12.cleanup(SAMPLE, false));
+        assertEquals(McpCleanupFg23.cleanupOneByOne(SAMPLE), McpCleanupFg23.cleanup(SAMPLE));
+        assertNotEquals(SAMPLE, McpCleanupFg12.cleanup(SAMPLE, false));
+    }
+
+    private static final String COMMENTED_SAMPLE = String.join(
+            "\n",
+            "/*",
+            " * A header comment",
+            " */",
+            "package net.minecraft.world;   ",
+            "",
+            "",
+            "import java.util.List; // trailing comment",
+            "import net.minecraft.world.World;",
+            "import net.minecraft.world.chunk.Chunk;",
+            "import net.minecraft.worldgen.Other;",
+            "import net.minecraft.world.*;",
+            "import static net.minecraft.world.World.field_1;",
+            "   import net.minecraft.world.Indented;",
+            "import net.minecraft.world.World;\r",
+            "\r",
+            "\r\n",
+            "public class WorldServer extends World {\t",
+            "   /** Javadoc with a \"quote\" */",
+            "   private static final String field_1 = \"// not a comment /* either */\";",
+            "   private static final char field_2 = '\\'';",
+            "   private static final char field_3 = '\"';",
+            "   \t",
+            "",
+            "",
+            "",
+            "   int func_1() { return 3 - /**/ -field_4; } /* multi",
+            "   line */",
+            "\r\n\r\n\r",
+            "   int func_2() {\r\n      return 1;\r\n   }\r\n",
+            "\u2028import net.minecraft.world.AfterSeparator;",
+            "}",
+            "// last comment",
+            "");
+
+    private static void assertFusedStripMatches(String text, String message) {
+        assertEquals(
+                McpCleanupFg12.fixImports(McpCleanupFg12.stripComments(text)),
+                McpCleanupFg12.stripCommentsAndFixImports(text),
+                message);
+        assertEquals(
+                McpCleanupFg23.fixImports(McpCleanupFg23.stripComments(text)),
+                McpCleanupFg23.stripCommentsAndFixImports(text),
+                message);
+    }
+
+    @Test
+    void fusedStripMatchesSample() {
+        assertFusedStripMatches(COMMENTED_SAMPLE, "sample");
+        assertFusedStripMatches(COMMENTED_SAMPLE.replace("\n", "\r\n"), "CRLF sample");
+        assertFusedStripMatches(SAMPLE, "literal sample");
+        final String stripped = McpCleanupFg23.stripCommentsAndFixImports(COMMENTED_SAMPLE);
+        assertFalse(stripped.contains("import net.minecraft.world.World;"), stripped);
+        assertTrue(stripped.contains("import net.minecraft.world.chunk.Chunk;"), stripped);
+        assertFalse(stripped.contains("Javadoc"), stripped);
+    }
+
+    @Test
+    void fusedStripMatchesRandomText() {
+        // Java only allows the package before the imports
+        final String[] packages = { "", "package a.b;", "package a.b.c;", "/* header */\npackage a.b;  " };
+        final String[] pieces = { "import a.b.C;", "import a.b.c.D;", "import C;", "import a.b.;", "import a.b.C;x",
+                "import .C;", "\n", "\n", "\r", "\r\n", "\u2028", "\u0085", " ", "\t", "x", "//", "/*", "*/", "\"",
+                "'", "\\", "a.b", ";" };
+        final Random random = new Random(1234);
+        final StringBuilder text = new StringBuilder();
+        for (int n = 0; n < 20000; n++) {
+            text.setLength(0);
+            text.append(packages[random.nextInt(packages.length)]);
+            final int length = random.nextInt(30);
+            for (int i = 0; i < length; i++) {
+                text.append(pieces[random.nextInt(pieces.length)]);
+            }
+            final String input = text.toString();
+            final String expected;
+            try {
+                expected = McpCleanupFg23.fixImports(McpCleanupFg23.stripComments(input));
+            } catch (RuntimeException e) {
+                // Unterminated comments and imports without a package
+                continue;
+            }
+            assertEquals(expected, McpCleanupFg23.stripCommentsAndFixImports(input), input);
+        }
+    }
+
+    /** Sources shaped like the Minecraft code the cleanup rules were written for, decompiled by the fixture */
+    private static final String[] DECOMPILED_FIXTURE_SOURCES = { "net/minecraft/util/MathHelper.java",
+            "net/minecraft/util/ChatAllowedCharacters.java", "net/minecraft/entity/EntityArrow.java" };
+
+    @TempDir
+    File tempDir;
+
+    /**
+     * @return The sources to compare the fused cleanup on: the generated fixture decompiled with forgeflower, or a
+     *         whole decompiled jar if one is given
+     */
+    private Map<String, String> decompiledSources() throws IOException {
+        final String jarPath = System.getProperty("rfg.cleanupDifferentialJar");
+        if (jarPath == null || jarPath.isEmpty()) {
+            final File classes = DecompilerFixture
+                    .compileResources(tempDir, "fixture.jar", "/decompiler-fixture/", DECOMPILED_FIXTURE_SOURCES);
+            return DecompilerFixture.decompile(tempDir, classes);
+        }
+        final Map<String, String> sources = new TreeMap<>();
+        try (final ZipFile zip = new ZipFile(new File(jarPath))) {
+            for (ZipEntry entry : Collections.list(zip.entries())) {
+                if (entry.isDirectory() || !entry.getName().endsWith(".java")) {
+                    continue;
+                }
+                sources.put(entry.getName(), IOUtils.toString(zip.getInputStream(entry), StandardCharsets.UTF_8));
+            }
+        }
+        return sources;
+    }
+
+    @Test
+    void fusedRulesMatchDecompiledJar() throws IOException {
+        final Map<String, String> sources = decompiledSources();
+        assertFalse(sources.isEmpty(), "No decompiled sources");
+        boolean anyRuleFired = false;
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            final String name = source.getKey();
+            // Compare both the raw fernflower output and the output after the FF patches, which the cleanup runs on
+            final String patched = FFPatcher.processFile(name, source.getValue(), true);
+            for (String text : new String[] { source.getValue(), patched }) {
+                final String expected = McpCleanupFg12.cleanupOneByOne(text, true);
+                assertEquals(expected, McpCleanupFg12.cleanup(text, true), name);
+                assertEquals(McpCleanupFg12.cleanupOneByOne(text, false), McpCleanupFg12.cleanup(text, false), name);
+                assertEquals(McpCleanupFg23.cleanupOneByOne(text), McpCleanupFg23.cleanup(text), name);
+                assertFusedStripMatches(text, name);
+                anyRuleFired |= !CleanupRules.MCP_LITERALS.apply(text).equals(text);
+            }
+        }
+        assertTrue(anyRuleFired, "None of the literal rules applied to the decompiled sources");
+    }
+}
@@ -0,0 +1,190 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import com.gtnewhorizons.retrofuturagradle.util.CacheManager;
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+
+class DecompiledClassCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    private static byte[] makeClass(String name, String superName, String fieldType, String extraField) {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        if (fieldType != null) {
+            cw.visitField(Opcodes.ACC_PUBLIC, "ref", "L" + fieldType + ";", null, null).visitEnd();
+        }
+        if (extraField != null) {
+            cw.visitField(Opcodes.ACC_PUBLIC, extraField, "I", null, null).visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /** a/A holds a field of type a/B, which extends a/C; a/D is unrelated and a/A$1 is nested in a/A */
+    private File writeInput(String name, String extraFieldOfC) throws IOException {
+        final Map<String, byte[]> classes = new TreeMap<>();
+        classes.put("a/A.class", makeClass("a/A", "java/lang/Object", "a/B", null));
+        classes.put("a/A$1.class", makeClass("a/A$1", "java/lang/Object", null, null));
+        classes.put("a/B.class", makeClass("a/B", "a/C", null, null));
+        classes.put("a/C.class", makeClass("a/C", "java/lang/Object", null, extraFieldOfC));
+        classes.put("a/D.class", makeClass("a/D", "java/lang/Object", null, null));
+        final ParallelJarWriter writer = new ParallelJarWriter();
+        classes.forEach(writer::put);
+        writer.put("META-INF/MANIFEST.MF", "Manifest-Version: 1.0\n".getBytes(StandardCharsets.UTF_8));
+        final File jar = new File(tempDir, name);
+        writer.write(jar);
+        return jar;
+    }
+
+    private DecompiledClassCache openCache(File inputJar) throws IOException {
+        return new DecompiledClassCache(
+                CacheManager.get(new File(tempDir, "cache")),
+                new File(tempDir, "cache/classes"),
+                "config",
+                inputJar);
+    }
+
+    /** Stands in for fernflower, one java file per top-level class */
+    private void fakeDecompile(DecompiledClassCache cache, Set<String> units) throws IOException {
+        final ParallelJarWriter writer = new ParallelJarWriter();
+        for (String unit : units) {
+            writer.put(unit + ".java", ("class " + unit + " {}").getBytes(StandardCharsets.UTF_8));
+        }
+        final File decompiled = new File(tempDir, "decompiled.jar");
+        writer.write(decompiled);
+        cache.storeDecompiled(decompiled, units);
+    }
+
+    @Test
+    void nestedClassesShareTheirOuterUnit() throws IOException {
+        final DecompiledClassCache cache = openCache(writeInput("in.jar", null));
+        assertEquals(4, cache.getUnitCount());
+        assertEquals(new TreeSet<>(Arrays.asList("a/A", "a/B", "a/C", "a/D")), cache.getMissingUnits());
+    }
+
+    @Test
+    void unchangedJarIsFullyCached() throws IOException {
+        final File input = writeInput("in.jar", null);
+        final DecompiledClassCache first = openCache(input);
+        fakeDecompile(first, first.getMissingUnits());
+        assertTrue(openCache(input).getMissingUnits().isEmpty());
+    }
+
+    @Test
+    void supertypeOfReferencedClassInvalidatesReferrer() throws IOException {
+        final DecompiledClassCache first = openCache(writeInput("in.jar", null));
+        fakeDecompile(first, first.getMissingUnits());
+
+        final DecompiledClassCache changed = openCache(writeInput("changed.jar", "added"));
+        assertEquals(new HashSet<>(Arrays.asList("a/A", "a/B", "a/C")), changed.getMissingUnits());
+    }
+
+    @Test
+    void assembledJarContainsResourcesAndAllSources() throws IOException {
+        final File input = writeInput("in.jar", null);
+        final DecompiledClassCache first = openCache(input);
+        fakeDecompile(first, first.getMissingUnits());
+
+        final File output = new File(tempDir, "out.jar");
+        openCache(input).assemble(output);
+        final Set<String> entries = new TreeSet<>();
+        try (final ZipFile zip = new ZipFile(output)) {
+            zip.stream().forEach(e -> entries.add(e.getName()));
+        }
+        assertEquals(
+                new TreeSet<>(Arrays.asList("META-INF/MANIFEST.MF", "a/A.java", "a/B.java", "a/C.java", "a/D.java")),
+                entries);
+    }
+
+    @Test
+    void assembleSurvivesEvictionAfterLookup() throws IOException {
+        final File input = writeInput("in.jar", null);
+        final DecompiledClassCache first = openCache(input);
+        fakeDecompile(first, first.getMissingUnits());
+
+        final DecompiledClassCache second = openCache(input);
+        assertTrue(second.getMissingUnits().isEmpty());
+        // As if a cache prune in another build removed the entries between the lookup and the assembly
+        FileUtils.deleteDirectory(new File(tempDir, "cache/classes"));
+        final File output = new File(tempDir, "out.jar");
+        second.assemble(output);
+        try (final ZipFile zip = new ZipFile(output)) {
+            assertNotNull(zip.getEntry("a/A.java"));
+        }
+    }
+
+    @Test
+    void unreadableEntryIsAMiss() throws IOException {
+        final File input = writeInput("in.jar", null);
+        final DecompiledClassCache first = openCache(input);
+        fakeDecompile(first, first.getMissingUnits());
+        for (File entry : FileUtils.listFiles(new File(tempDir, "cache/classes"), new String[] { "bin" }, true)) {
+            FileUtils.writeByteArrayToFile(entry, new byte[] { 1, 2, 3 });
+        }
+        assertEquals(4, openCache(input).getMissingUnits().size());
+    }
+
+    private static final String[] FIXTURE_SOURCES = { "net/minecraft/util/MathHelper.java",
+            "net/minecraft/util/ChatAllowedCharacters.java", "net/minecraft/entity/EntityArrow.java" };
+
+    /** Decompiles the missing units the way the decompile task does, with the rest of the jar as a library */
+    private void decompileMissing(DecompiledClassCache cache, String name) throws IOException {
+        final Set<String> missing = cache.getMissingUnits();
+        final File input = new File(tempDir, name + ".jar");
+        cache.writeClasses(input, missing::contains);
+        final File decompiled;
+        if (missing.size() < cache.getUnitCount()) {
+            final File context = new File(tempDir, name + "-context.jar");
+            cache.writeClasses(context, unit -> !missing.contains(unit));
+            decompiled = DecompilerFixture.decompileToJar(tempDir, input, context);
+        } else {
+            decompiled = DecompilerFixture.decompileToJar(tempDir, input);
+        }
+        cache.storeDecompiled(decompiled, missing);
+    }
+
+    @Test
+    void partialDecompileMatchesFullDecompile() throws IOException {
+        final File original = DecompilerFixture
+                .compileResources(tempDir, "original.jar", "/decompiler-fixture/", FIXTURE_SOURCES);
+        final DecompiledClassCache first = openCache(original);
+        decompileMissing(first, "first");
+
+        // Change a method body of a class other classes call into
+        final Map<String, String> sources = new TreeMap<>();
+        for (String path : FIXTURE_SOURCES) {
+            sources.put(path, DecompilerFixture.readResource("/decompiler-fixture/" + path + ".txt"));
+        }
+        sources.computeIfPresent(FIXTURE_SOURCES[0], (k, v) -> v.replace("10430.378F", "10430.379F"));
+        final File changed = DecompilerFixture.compile(tempDir, "changed.jar", sources);
+        final DecompiledClassCache second = openCache(changed);
+        assertFalse(second.getMissingUnits().isEmpty());
+        assertTrue(second.getMissingUnits().size() < second.getUnitCount());
+        decompileMissing(second, "second");
+        final File assembled = new File(tempDir, "assembled.jar");
+        second.assemble(assembled);
+
+        final Map<String, String> full = DecompilerFixture.decompile(tempDir, changed);
+        assertEquals(full, DecompilerFixture.readSources(assembled));
+    }
+}
@@ -0,0 +1,126 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Assumptions;
+
+import com.gtnewhorizons.retrofuturagradle.util.ParallelJarWriter;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+/**
+ * Generates small decompiled fixtures for tests: compiles a handful of sources with the JDK compiler and runs them
+ * through the same in-process forgeflower setup the FG2.3 decompile uses.
+ */
+public final class DecompilerFixture {
+
+    private DecompilerFixture() {}
+
+    /**
+     * Compiles sources stored as {@code <resourceRoot><path>.txt} test resources, so the build does not compile or
+     * format them itself, into a jar.
+     */
+    public static File compileResources(File workDir, String jarName, String resourceRoot, String... paths)
+            throws IOException {
+        final Map<String, String> sources = new TreeMap<>();
+        for (String path : paths) {
+            sources.put(path, readResource(resourceRoot + path + ".txt"));
+        }
+        return compile(workDir, jarName, sources);
+    }
+
+    public static String readResource(String name) throws IOException {
+        try (final InputStream in = DecompilerFixture.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new FileNotFoundException(name);
+            }
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Compiles the sources, keyed by their path like {@code net/minecraft/util/MathHelper.java}, into a jar.
+     */
+    public static File compile(File workDir, String jarName, Map<String, String> sources) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assumptions.assumeTrue(compiler != null, "The tests do not run on a JDK");
+        final File srcDir = new File(workDir, jarName + "-src");
+        final File classesDir = new File(workDir, jarName + "-classes");
+        FileUtils.forceMkdir(classesDir);
+        final List<File> sourceFiles = new ArrayList<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            final File file = new File(srcDir, source.getKey());
+            FileUtils.write(file, source.getValue(), StandardCharsets.UTF_8);
+            sourceFiles.add(file);
+        }
+        try (final StandardJavaFileManager files = compiler
+                .getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            final Iterable<? extends JavaFileObject> units = files.getJavaFileObjectsFromFiles(sourceFiles);
+            final List<String> options = Arrays
+                    .asList("-source", "8", "-target", "8", "-nowarn", "-d", classesDir.getAbsolutePath());
+            if (!compiler.getTask(null, files, null, options, null, units).call()) {
+                throw new IllegalStateException("Could not compile the fixture sources of " + jarName);
+            }
+        }
+        final ParallelJarWriter writer = new ParallelJarWriter();
+        for (File classFile : FileUtils.listFiles(classesDir, new String[] { "class" }, true)) {
+            final String name = classesDir.toPath().relativize(classFile.toPath()).toString().replace('\\', '/');
+            writer.put(name, FileUtils.readFileToByteArray(classFile));
+        }
+        final File jar = new File(workDir, jarName);
+        writer.write(jar);
+        return jar;
+    }
+
+    /**
+     * Decompiles the jar with forgeflower, analysing but not decompiling the libraries.
+     *
+     * @return The decompiled sources, keyed by their path in the output jar
+     */
+    public static Map<String, String> decompile(File workDir, File inputJar, File... libraries) throws IOException {
+        return readSources(decompileToJar(workDir, inputJar, libraries));
+    }
+
+    /**
+     * Decompiles the jar with forgeflower, analysing but not decompiling the libraries.
+     *
+     * @return The decompiled jar, named like the input jar
+     */
+    public static File decompileToJar(File workDir, File inputJar, File... libraries) throws IOException {
+        final File outputDir = new File(workDir, inputJar.getName() + "-ff-out");
+        FileUtils.forceMkdir(outputDir);
+        DecompileTask.decompileFg23InProcess(
+                inputJar,
+                Arrays.asList(libraries),
+                outputDir,
+                new File(workDir, inputJar.getName() + "-ff.log"),
+                false);
+        return new File(outputDir, inputJar.getName());
+    }
+
+    /**
+     * @return The sources in a jar, keyed by their path in it
+     */
+    public static Map<String, String> readSources(File jar) throws IOException {
+        final Map<String, String> sources = new HashMap<>();
+        Utilities.loadMemoryJar(jar, new HashMap<>(), sources);
+        return Collections.unmodifiableMap(new TreeMap<>(sources));
+    }
+}
@@ -0,0 +1,124 @@
+package com.gtnewhorizons.retrofuturagradle.mcp;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+
+import com.gtnewhorizons.retrofuturagradle.util.LayeredMap;
+import com.gtnewhorizons.retrofuturagradle.util.Utilities;
+
+class SrgSourceRemapperTest {
+
+    /** The pattern the remapper replaced */
+    private static final Pattern SRG_FINDER = Pattern
+            .compile("(func_\\d+_[a-zA-Z_]+|field_\\d+_[a-zA-Z_]+|p_\\w+_\\d+_)([^\\w$]|$)");
+
+    private static final String[] EDGE_CASES = { "", "func_1_a", "func_1_a;", "return func_1_a",
+            "this.field_2_b = p_3_1_;", "xfunc_1_a()", "func_1_a$", "func_1_a$Inner", "a.func_1_a$.field_2_b",
+            "new Foo(p_i123_1_, p_i123_2_)", "p_i123_1_", "func_1_a2 + field_2_b3 + p_3_1_4", "field_2_b 3",
+            "func_1_ab()", "func_1_afield_2_b", "func_1_ap_3_1_", "$field_2_b", "p__1_ p_1_ p_x_1_ p_3_1",
+            "field_2_b_", "func_1_a_.func_1_a", "unmapped func_9_z field_9_z p_9_9_", "func_1_a.func_1_a(func_1_a)",
+            "\tfield_2_b\tfield_2_b", "// field_2_b" };
+
+    private static Utilities.MappingsSet mappings() {
+        final Map<String, Utilities.Mapping> methods = new HashMap<>();
+        methods.put("func_1_a", new Utilities.Mapping("first", ""));
+        methods.put("func_1_ab", new Utilities.Mapping("firstLonger", ""));
+        methods.put("func_1_a_", new Utilities.Mapping("firstUnderscore", ""));
+        final Map<String, Utilities.Mapping> fields = new HashMap<>();
+        fields.put("field_2_b", new Utilities.Mapping("second", ""));
+        fields.put("field_2_b_", new Utilities.Mapping("secondUnderscore", ""));
+        final Map<String, String> extraParams = new HashMap<>();
+        extraParams.put("p_3_1_", "overridden");
+        extraParams.put("p_i123_2_", "extra");
+        final Map<String, String> params = new HashMap<>();
+        params.put("p_3_1_", "third");
+        params.put("p_i123_1_", "ctor");
+        params.put("p_1_", "tooShort");
+        return new Utilities.MappingsSet(methods, fields, new LayeredMap<>(extraParams, params));
+    }
+
+    /** The old replacement loop of {@link RemapSourceJarTask} */
+    private static String reference(Utilities.MappingsSet mappings, String line) {
+        final Matcher mSrg = SRG_FINDER.matcher(line);
+        final StringBuffer mappedLine = new StringBuffer();
+        while (mSrg.find()) {
+            final String found = mSrg.group(1);
+            final String mapped;
+            if (found.startsWith("p_")) {
+                mapped = mappings.paramMappings.getOrDefault(found, found);
+            } else if (found.startsWith("func_")) {
+                final Utilities.Mapping mapping = mappings.methodMappings.get(found);
+                mapped = (mapping != null) ? mapping.name : found;
+            } else if (found.startsWith("field_")) {
+                final Utilities.Mapping mapping = mappings.fieldMappings.get(found);
+                mapped = (mapping != null) ? mapping.name : found;
+            } else {
+                mapped = found;
+            }
+            mSrg.appendReplacement(mappedLine, mapped);
+            mappedLine.append(mSrg.group(2));
+        }
+        mSrg.appendTail(mappedLine);
+        return mappedLine.toString();
+    }
+
+    @Test
+    void edgeCasesMatchTheRegex() {
+        final Utilities.MappingsSet mappings = mappings();
+        final SrgSourceRemapper remapper = new SrgSourceRemapper(mappings);
+        for (String line : EDGE_CASES) {
+            assertEquals(reference(mappings, line), remapper.remapLine(line), line);
+        }
+    }
+
+    @Test
+    void expectedReplacements() {
+        final SrgSourceRemapper remapper = new SrgSourceRemapper(mappings());
+        assertEquals("xfirst()", remapper.remapLine("xfunc_1_a()"));
+        assertEquals("func_1_a$", remapper.remapLine("func_1_a$"));
+        assertEquals("new Foo(ctor, extra)", remapper.remapLine("new Foo(p_i123_1_, p_i123_2_)"));
+        assertEquals("func_1_a2 + field_2_b3 + p_3_1_4", remapper.remapLine("func_1_a2 + field_2_b3 + p_3_1_4"));
+        assertEquals("return first", remapper.remapLine("return func_1_a"));
+        // The first layer of the params wins
+        assertEquals("overridden", remapper.remapLine("p_3_1_"));
+        final String unmapped = "unmapped func_9_z field_9_z p_9_9_";
+        assertSame(unmapped, remapper.remapLine(unmapped));
+    }
+
+    @Test
+    void randomLinesMatchTheRegex() {
+        final List<String> pieces = Arrays.asList("func_1_a", "func_1_ab", "field_2_b", "p_3_1_", "p_i123_1_",
+                "p_i123_2_", "func_", "field_", "p_", "1", "23", "_", "a", "B", "x", "$", ".", " ", "(", ")", ";");
+        final Utilities.MappingsSet mappings = mappings();
+        final SrgSourceRemapper remapper = new SrgSourceRemapper(mappings);
+        final Random random = new Random(1234);
+        final StringBuilder line = new StringBuilder();
+        for (int n = 0; n < 20000; n++) {
+            line.setLength(0);
+            final int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                line.append(pieces.get(random.nextInt(pieces.size())));
+            }
+            final String text = line.toString();
+            assertEquals(reference(mappings, text), remapper.remapLine(text), text);
+        }
+    }
+
+    @Test
+    void copiesShareTheTables() {
+        final Utilities.MappingsSet mappings = mappings();
+        final SrgSourceRemapper copy = new SrgSourceRemapper(mappings).copy();
+        for (String line : EDGE_CASES) {
+            assertEquals(reference(mappings, line), copy.remapLine(line), line);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileFingerprintStoreTest {
+
+    @TempDir
+    File tempDir;
+
+    private File writeOldFile(String name, String contents) throws IOException {
+        final File file = new File(tempDir, name);
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5)));
+        return file;
+    }
+
+    @Test
+    void hashesFileContents() throws IOException {
+        final File file = writeOldFile("a.txt", "hello");
+        final FileFingerprintStore store = FileFingerprintStore.inMemory();
+        assertArrayEquals(DigestUtils.sha256("hello".getBytes(StandardCharsets.UTF_8)), store.sha256(file));
+        // The returned array is a copy
+        store.sha256(file)[0]++;
+        assertArrayEquals(DigestUtils.sha256("hello".getBytes(StandardCharsets.UTF_8)), store.sha256(file));
+    }
+
+    @Test
+    void modifiedFileIsHashedAgain() throws IOException {
+        final File file = writeOldFile("a.txt", "first");
+        final FileFingerprintStore store = FileFingerprintStore.inMemory();
+        store.sha256(file);
+        final long modified = file.lastModified();
+        // Same size, only the timestamp tells the contents apart
+        FileUtils.writeStringToFile(file, "other", StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(modified + 1000));
+        assertArrayEquals(DigestUtils.sha256("other".getBytes(StandardCharsets.UTF_8)), store.sha256(file));
+    }
+
+    @Test
+    void unchangedFileIsKnownWithoutHashing() throws IOException {
+        final File file = writeOldFile("a.txt", "first");
+        final FileFingerprintStore store = FileFingerprintStore.inMemory();
+        assertFalse(store.isUnchanged(file));
+        store.sha256(file);
+        assertTrue(store.isUnchanged(file));
+        FileUtils.writeStringToFile(file, "other", StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(file.lastModified() + 1000));
+        assertFalse(store.isUnchanged(file));
+        assertFalse(store.isUnchanged(new File(tempDir, "missing.txt")));
+    }
+
+    @Test
+    void flushedFingerprintsAreTrustedByOtherStores() throws IOException {
+        final File file = writeOldFile("a.txt", "first");
+        final long modified = file.lastModified();
+        final File rootA = new File(tempDir, "rootA");
+        FileFingerprintStore.get(rootA).sha256(file);
+        FileFingerprintStore.get(rootA).flush();
+        final File storeFile = new File(rootA, FileFingerprintStore.STORE_FILE_NAME);
+        assertTrue(storeFile.isFile());
+
+        // A store loading the same fingerprints doesn't read a file whose size, timestamp and inode are unchanged
+        final File rootB = new File(tempDir, "rootB");
+        FileUtils.copyFile(storeFile, new File(rootB, FileFingerprintStore.STORE_FILE_NAME));
+        FileUtils.writeStringToFile(file, "other", StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(modified));
+        assertArrayEquals(
+                DigestUtils.sha256("first".getBytes(StandardCharsets.UTF_8)),
+                FileFingerprintStore.get(rootB).sha256(file));
+    }
+
+    @Test
+    void recentlyModifiedFilesAreNotPersisted() throws IOException {
+        final File file = new File(tempDir, "fresh.txt");
+        FileUtils.writeStringToFile(file, "fresh", StandardCharsets.UTF_8);
+        final File root = new File(tempDir, "root");
+        final FileFingerprintStore store = FileFingerprintStore.get(root);
+        assertArrayEquals(DigestUtils.sha256("fresh".getBytes(StandardCharsets.UTF_8)), store.sha256(file));
+        store.flush();
+        // A write within the timestamp granularity could have gone unnoticed, so the fingerprint stays in memory only
+        assertFalse(new File(root, FileFingerprintStore.STORE_FILE_NAME).exists());
+    }
+
+    @Test
+    void damagedStoreIsIgnored() throws IOException {
+        final File file = writeOldFile("a.txt", "contents");
+        final File root = new File(tempDir, "root");
+        FileUtils.writeByteArrayToFile(
+                new File(root, FileFingerprintStore.STORE_FILE_NAME),
+                new byte[] { 0x52, 0x46, 0x47, 0x46, 0, 0, 0, 1, 0, 0, 0, 5, 0 });
+        assertArrayEquals(
+                DigestUtils.sha256("contents".getBytes(StandardCharsets.UTF_8)),
+                FileFingerprintStore.get(root).sha256(file));
+    }
+}
@@ -0,0 +1,139 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.Project;
+import org.gradle.api.Task;
+import org.gradle.api.tasks.TaskProvider;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JarChainTest {
+
+    public abstract static class JarTask extends DefaultTask implements IJarOutputTask {
+
+        /** Not a property, those get finalized once hashed */
+        public String setting = "1";
+
+        @Override
+        public MessageDigestConsumer hashInputs() {
+            return digest -> HashUtils.addToHash(setting).accept(digest);
+        }
+    }
+
+    @TempDir
+    File tempDir;
+
+    private TaskProvider<JarTask> first;
+    private TaskProvider<JarTask> second;
+    private TaskProvider<JarTask> third;
+
+    @BeforeEach
+    void setUp() {
+        final Project project = ProjectBuilder.builder().withProjectDir(tempDir).build();
+        first = register(project, "first");
+        second = register(project, "second");
+        third = register(project, "third");
+    }
+
+    private TaskProvider<JarTask> register(Project project, String name) {
+        return project.getTasks().register(
+                name,
+                JarTask.class,
+                task -> task.getOutputJar().set(new File(tempDir, name + ".jar")));
+    }
+
+    /** A new chain every time, as the chain remembers its last check for a few seconds */
+    private JarChain chain() {
+        final JarChain chain = new JarChain();
+        chain.addTask(first);
+        chain.addTask(second, true);
+        chain.addTask(third);
+        return chain;
+    }
+
+    private File output(TaskProvider<JarTask> task) {
+        return task.get().getOutputJar().get().getAsFile();
+    }
+
+    private File inputsKeyFile() {
+        return new File(output(third).getPath() + ".inputs.sha256");
+    }
+
+    /** Runs the chain's finalizer like the last task would, after all the outputs were written */
+    private void runChain() throws IOException {
+        final JarChain chain = chain();
+        chain.finish();
+        for (TaskProvider<JarTask> task : Arrays.asList(first, second, third)) {
+            FileUtils.writeStringToFile(output(task), task.getName(), StandardCharsets.UTF_8);
+        }
+        final Task last = third.get();
+        for (Action<? super Task> action : last.getActions()) {
+            action.execute(last);
+        }
+    }
+
+    @Test
+    void savesADigestPerTask() throws IOException {
+        runChain();
+        assertEquals(3, FileUtils.readLines(inputsKeyFile(), StandardCharsets.UTF_8).size());
+        assertFalse(output(first).exists());
+        assertTrue(output(second).isFile());
+        assertTrue(chain().isUpToDate());
+    }
+
+    @Test
+    void resumesAfterTheKeptOutput() throws IOException {
+        runChain();
+        third.get().setting = "2";
+        assertEquals(2, chain().getFirstTaskToRun());
+
+        // The output of the first task wasn't kept, so a change to the second one starts over
+        second.get().setting = "2";
+        assertEquals(0, chain().getFirstTaskToRun());
+    }
+
+    @Test
+    void startsOverWithoutTheKeptOutput() throws IOException {
+        runChain();
+        FileUtils.deleteQuietly(output(second));
+        third.get().setting = "2";
+        assertEquals(0, chain().getFirstTaskToRun());
+    }
+
+    @Test
+    void startsOverWithoutDigestsOrOutput() throws IOException {
+        runChain();
+        FileUtils.deleteQuietly(inputsKeyFile());
+        assertEquals(0, chain().getFirstTaskToRun());
+
+        runChain();
+        FileUtils.deleteQuietly(output(third));
+        assertEquals(0, chain().getFirstTaskToRun());
+    }
+
+    @Test
+    void readsTheSingleDigestFormat() throws IOException {
+        runChain();
+        // Older versions only saved the digest of the whole chain
+        final List<String> digests = FileUtils.readLines(inputsKeyFile(), StandardCharsets.UTF_8);
+        FileUtils.writeLines(inputsKeyFile(), Collections.singletonList(digests.get(digests.size() - 1)));
+        assertTrue(chain().isUpToDate());
+
+        // But can't tell which task changed
+        third.get().setting = "2";
+        assertEquals(0, chain().getFirstTaskToRun());
+    }
+}
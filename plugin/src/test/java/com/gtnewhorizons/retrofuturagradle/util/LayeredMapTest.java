@@ -0,0 +1,66 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LayeredMapTest {
+
+    private static Map<String, String> lower() {
+        final Map<String, String> lower = new HashMap<>();
+        lower.put("func_1_a", "first");
+        lower.put("func_2_a", "second");
+        return Collections.unmodifiableMap(lower);
+    }
+
+    @Test
+    void readOnlyMapRejectsWrites() {
+        final LayeredMap<String, String> map = new LayeredMap<>(lower());
+        assertThrows(UnsupportedOperationException.class, () -> map.put("func_3_a", "third"));
+        assertThrows(UnsupportedOperationException.class, () -> map.remove("func_1_a"));
+    }
+
+    @Test
+    void writesGoOnTopOfTheLayers() {
+        final Map<String, String> lower = lower();
+        final LayeredMap<String, String> map = LayeredMap.copyOnWrite(Collections.singletonList(lower));
+        assertFalse(map.isModified());
+        assertEquals(2, map.size());
+
+        assertEquals("first", map.put("func_1_a", "replaced"));
+        map.put("func_3_a", "third");
+        assertEquals("second", map.remove("func_2_a"));
+        assertTrue(map.isModified());
+        assertEquals("replaced", map.get("func_1_a"));
+        assertEquals("third", map.get("func_3_a"));
+        assertNull(map.get("func_2_a"));
+        assertFalse(map.containsKey("func_2_a"));
+        assertEquals(2, map.size());
+        assertEquals(lower(), lower);
+
+        map.put("func_2_a", "back");
+        assertEquals("back", map.get("func_2_a"));
+        assertEquals(3, map.entrySet().size());
+    }
+
+    @Test
+    void layersOfAModifiedMapMatchItsContents() {
+        final LayeredMap<String, String> map = LayeredMap.copyOnWrite(Arrays.asList(lower()));
+        map.remove("func_1_a");
+        assertEquals(1, map.getLayers().size());
+        assertEquals(Collections.singletonMap("func_2_a", "second"), map.getLayers().get(0));
+        assertEquals("second", SrgIdTable.of(map).get("func_2_a"));
+        assertNull(SrgIdTable.of(map).get("func_1_a"));
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get("func_2_a"));
+        map.put("func_4_a", "fourth");
+        assertEquals(Collections.singletonMap("func_4_a", "fourth"), map);
+    }
+}
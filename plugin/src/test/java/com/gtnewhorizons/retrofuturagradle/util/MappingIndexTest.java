@@ -0,0 +1,109 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappingIndexTest {
+
+    @TempDir
+    File tempDir;
+
+    private File writeCsv(String name, String... rows) throws IOException {
+        final File csv = new File(tempDir, name);
+        FileUtils.writeStringToFile(
+                csv,
+                "searge,name,side,desc\n" + String.join("\n", rows) + "\n",
+                StandardCharsets.UTF_8);
+        return csv;
+    }
+
+    @Test
+    void headerIsNotARecord() throws IOException {
+        final MappingIndex index = MappingIndex.open(
+                null,
+                writeCsv("methods.csv", "func_1_a,first,0,Docs", "func_2_b,second,1,", "func_1_a,firstAgain,0,"));
+        assertEquals(2, index.size());
+        assertNull(index.getName("searge"));
+        assertEquals("firstAgain", index.getName("func_1_a"));
+        assertEquals("second", index.getName("func_2_b"));
+        assertEquals("", index.getMapping("func_2_b").javadoc);
+    }
+
+    @Test
+    void truncatedIndexIsRejected() throws IOException {
+        final File indexDir = new File(tempDir, MappingIndex.CACHE_DIR_NAME);
+        final MappingIndex index = MappingIndex
+                .open(indexDir, writeCsv("fields.csv", "field_1_a,first,0,Some docs", "field_2_b,second,0,More"));
+        final byte[] data = FileUtils.readFileToByteArray(new File(indexDir, index.getHash() + ".bin"));
+        for (int length : new int[] { 8, 14, data.length / 2, data.length - 1 }) {
+            final String hash = "truncated" + length;
+            FileUtils.writeByteArrayToFile(new File(indexDir, hash + ".bin"), Arrays.copyOf(data, length));
+            assertNull(MappingIndex.openExisting(indexDir, hash), "Accepted an index cut at " + length + " bytes");
+        }
+    }
+
+    @Test
+    void truncatedIndexIsRebuilt() throws IOException {
+        final File indexDir = new File(tempDir, MappingIndex.CACHE_DIR_NAME);
+        final File csv = writeCsv("params.csv", "p_1_1_,alpha,0", "p_2_1_,beta,0", "p_3_2_,gamma,1");
+        final String hash = DigestUtils.sha256Hex(FileUtils.readFileToByteArray(csv)) + "-v1";
+        final File indexFile = new File(indexDir, hash + ".bin");
+        // A valid header and record count, but the records themselves are missing
+        FileUtils.writeByteArrayToFile(indexFile, new byte[] { 0x52, 0x46, 0x47, 0x4D, 0, 0, 0, 1, 0, 0, 0, 3 });
+
+        final MappingIndex index = MappingIndex.open(indexDir, csv);
+        assertEquals(hash, index.getHash());
+        assertEquals(3, index.size());
+        assertEquals("gamma", index.getName("p_3_2_"));
+        assertTrue(indexFile.length() > 12);
+    }
+
+    @Test
+    void diffFindsChangedAddedAndRemovedNames() throws IOException {
+        final MappingIndex before = MappingIndex.open(
+                null,
+                writeCsv(
+                        "before.csv",
+                        "func_1_a,same,0,Docs",
+                        "func_2_b,renamed,0,",
+                        "func_3_c,redocumented,0,Old docs",
+                        "func_4_d,removed,0,",
+                        "func_6_f,sideOnly,0,"));
+        final MappingIndex after = MappingIndex.open(
+                null,
+                writeCsv(
+                        "after.csv",
+                        "func_5_e,added,0,",
+                        "func_4_dd,notRemovedJustSimilar,0,",
+                        "func_1_a,same,0,Docs",
+                        "func_2_b,renamedAgain,0,",
+                        "func_3_c,redocumented,0,New docs",
+                        "func_6_f,sideOnly,1,"));
+        final Set<String> expected = new HashSet<>(
+                Arrays.asList("func_2_b", "func_3_c", "func_4_d", "func_4_dd", "func_5_e"));
+        assertEquals(expected, before.diff(after));
+        assertEquals(expected, after.diff(before));
+        assertEquals(Collections.emptySet(), before.diff(before));
+    }
+
+    @Test
+    void diffAgainstEmptyIndexHasAllNames() throws IOException {
+        final MappingIndex empty = MappingIndex.open(null, writeCsv("empty.csv"));
+        final MappingIndex params = MappingIndex.open(null, writeCsv("params.csv", "p_1_1_,alpha,0", "p_i2_1_,beta,0"));
+        assertEquals(0, empty.size());
+        assertEquals(new HashSet<>(Arrays.asList("p_1_1_", "p_i2_1_")), empty.diff(params));
+        assertEquals(new HashSet<>(Arrays.asList("p_1_1_", "p_i2_1_")), params.diff(empty));
+    }
+}
@@ -0,0 +1,82 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class SimpleSrgRemapperTest {
+
+    private static Map<String, String> mappings() {
+        final Map<String, String> mappings = new HashMap<>();
+        mappings.put("func_1_a", "first");
+        // Same id as func_1_a, can't share its slot
+        mappings.put("func_1_b", "firstB");
+        mappings.put("field_1_a", "firstField");
+        mappings.put("func_70000_c", "dense");
+        // Above the dense id limit
+        mappings.put("func_2000000_a", "huge");
+        mappings.put("field_99999999999_a", "overflowing");
+        mappings.put("p_1_2_", "param");
+        mappings.put("p_i123_1_", "ctorParam");
+        // Not shaped like SRG names, only found by the fallback map
+        mappings.put("func_", "bare");
+        mappings.put("func_12", "noSuffix");
+        mappings.put("func_x_a", "notANumber");
+        mappings.put("unmapped", null);
+        return mappings;
+    }
+
+    @Test
+    void mapsEveryEntry() {
+        final Map<String, String> mappings = mappings();
+        final SimpleSrgRemapper remapper = SimpleSrgRemapper.indexed(mappings);
+        for (Map.Entry<String, String> entry : mappings.entrySet()) {
+            assertEquals(entry.getValue(), remapper.map(entry.getKey()), entry.getKey());
+        }
+    }
+
+    @Test
+    void unknownNamesAreNotMapped() {
+        final SimpleSrgRemapper remapper = SimpleSrgRemapper.indexed(mappings());
+        for (String name : new String[] { "func_1_c", "func_2_a", "field_1_b", "field_70000_c", "func_70000_cc",
+                "func_2000000_b", "func_1", "func_1_", "field_", "p_1_3_", "java/lang/Object", "",
+                "func_3000000000_a" }) {
+            assertNull(remapper.map(name), name);
+        }
+    }
+
+    @Test
+    void memberNamesFallBackToTheirOwnName() {
+        final SimpleSrgRemapper remapper = SimpleSrgRemapper.indexed(mappings());
+        assertEquals("first", remapper.mapMethodName("a/B", "func_1_a", "()V"));
+        assertEquals("huge", remapper.mapMethodName("a/B", "func_2000000_a", "()V"));
+        assertEquals("firstField", remapper.mapFieldName("a/B", "field_1_a", "I"));
+        assertEquals("func_9_a", remapper.mapMethodName("a/B", "func_9_a", "()V"));
+        assertEquals("field_9_a", remapper.mapFieldName("a/B", "field_9_a", "I"));
+    }
+
+    @Test
+    void publicConstructorLooksUpTheMapDirectly() {
+        final Map<String, String> mappings = mappings();
+        final SimpleSrgRemapper remapper = new SimpleSrgRemapper(mappings);
+        assertEquals("first", remapper.map("func_1_a"));
+        mappings.put("func_9_a", "added");
+        assertEquals("added", remapper.map("func_9_a"));
+    }
+
+    @Test
+    void sharedRemappersAreReusedAndBounded() {
+        final SimpleSrgRemapper first = SimpleSrgRemapper.shared("test-hash-0", SimpleSrgRemapperTest::mappings);
+        assertSame(first, SimpleSrgRemapper.shared("test-hash-0", SimpleSrgRemapperTest::mappings));
+        assertNotSame(
+                SimpleSrgRemapper.shared(null, SimpleSrgRemapperTest::mappings),
+                SimpleSrgRemapper.shared(null, SimpleSrgRemapperTest::mappings));
+        for (int i = 1; i <= 8; i++) {
+            SimpleSrgRemapper.shared("test-hash-" + i, SimpleSrgRemapperTest::mappings);
+        }
+        assertNotSame(first, SimpleSrgRemapper.shared("test-hash-0", SimpleSrgRemapperTest::mappings));
+    }
+}
@@ -0,0 +1,74 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SkipUnchangedCopyActionTest {
+
+    @TempDir
+    File tempDir;
+
+    private static final long OLD_TIMESTAMP = 1_000_000_000_000L;
+
+    private File write(File dir, String path, String contents) throws IOException {
+        final File file = new File(dir, path);
+        FileUtils.writeStringToFile(file, contents, StandardCharsets.UTF_8);
+        assertTrue(file.setLastModified(OLD_TIMESTAMP));
+        return file;
+    }
+
+    @Test
+    void onlyChangedFilesAreCopied() throws IOException {
+        final Project project = ProjectBuilder.builder().withProjectDir(new File(tempDir, "project")).build();
+        final File from = new File(tempDir, "from");
+        final File into = new File(tempDir, "into");
+        write(from, "a/Same.java", "same");
+        write(from, "a/Changed.java", "new");
+        write(from, "a/Resized.java", "longer contents");
+        write(from, "b/Added.java", "added");
+        final File same = write(into, "a/Same.java", "same");
+        final File changed = write(into, "a/Changed.java", "old");
+        final File resized = write(into, "a/Resized.java", "short");
+
+        project.copy(spec -> {
+            spec.from(from);
+            spec.into(into);
+            spec.eachFile(new SkipUnchangedCopyAction(into));
+        });
+
+        assertEquals(OLD_TIMESTAMP, same.lastModified());
+        assertEquals("new", FileUtils.readFileToString(changed, StandardCharsets.UTF_8));
+        assertEquals("longer contents", FileUtils.readFileToString(resized, StandardCharsets.UTF_8));
+        assertEquals("added", FileUtils.readFileToString(new File(into, "b/Added.java"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void renamedFilesAreComparedAtTheirDestination() throws IOException {
+        final Project project = ProjectBuilder.builder().withProjectDir(new File(tempDir, "project")).build();
+        final File from = new File(tempDir, "from");
+        final File into = new File(tempDir, "into");
+        write(from, "Same.java.txt", "same");
+        write(from, "Changed.java.txt", "new");
+        final File same = write(into, "Same.java", "same");
+        final File changed = write(into, "Changed.java", "old");
+
+        project.copy(spec -> {
+            spec.from(from);
+            spec.into(into);
+            spec.rename("(.*)\\.txt", "$1");
+            spec.eachFile(new SkipUnchangedCopyAction(into));
+        });
+
+        assertEquals(OLD_TIMESTAMP, same.lastModified());
+        assertEquals("new", FileUtils.readFileToString(changed, StandardCharsets.UTF_8));
+    }
+}
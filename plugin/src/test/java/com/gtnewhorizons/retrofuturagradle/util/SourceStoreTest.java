@@ -0,0 +1,85 @@
+package com.gtnewhorizons.retrofuturagradle.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class SourceStoreTest {
+
+    private static final String[] TEXTS = { "", "one line", "a\nb\n", "a\r\nb\r\n", "lone\rcarriage\rreturn",
+            "mixed\r\n\rline\n\r\nbreaks", "trailing\n\n\n", "\nleading", "\r", "a\r\r\nb" };
+
+    @Test
+    void textIsReturnedUnchanged() {
+        final SourceStore store = new SourceStore();
+        for (String text : TEXTS) {
+            store.put("A.java", text);
+            assertEquals(text, store.get("A.java"));
+            // Splitting the file into lines doesn't lose the original text
+            store.getLines("A.java");
+            assertEquals(text, store.get("A.java"));
+        }
+    }
+
+    @Test
+    void linesMatchSplittingTheText() {
+        final SourceStore store = new SourceStore();
+        for (String text : TEXTS) {
+            store.put("A.java", text);
+            assertEquals(Arrays.asList(text.split("\r\n|\r|\n")), store.getLines("A.java"), text);
+        }
+    }
+
+    @Test
+    void loneCarriageReturnSplitsLines() {
+        final SourceStore store = new SourceStore();
+        store.put("A.java", "a\rb\r\nc\nd");
+        assertEquals(Arrays.asList("a", "b", "c", "d"), store.getLines("A.java"));
+    }
+
+    @Test
+    void linesAreJoinedWithTheLineSeparator() {
+        final SourceStore store = new SourceStore();
+        store.putLines("A.java", Arrays.asList("a", "b", ""));
+        assertEquals(String.join(System.lineSeparator(), "a", "b", ""), store.get("A.java"));
+        // And split again to the same lines, minus the trailing empty one
+        store.put("B.java", store.get("A.java"));
+        assertEquals(Arrays.asList("a", "b"), store.getLines("B.java"));
+    }
+
+    @Test
+    void storedLinesAreCopied() {
+        final SourceStore store = new SourceStore();
+        final List<String> lines = new ArrayList<>(Arrays.asList("a", "b"));
+        store.putLines("A.java", lines);
+        lines.set(0, "changed");
+        assertEquals(Arrays.asList("a", "b"), store.getLines("A.java"));
+        assertThrows(UnsupportedOperationException.class, () -> store.getLines("A.java").set(0, "x"));
+    }
+
+    @Test
+    void behavesLikeAMap() {
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("A.java", "a");
+        expected.put("B.java", "b\r\nc");
+        final SourceStore store = new SourceStore(expected);
+        store.putLines("C.java", Arrays.asList("x", "y"));
+        expected.put("C.java", "x" + System.lineSeparator() + "y");
+        assertEquals(expected, store);
+        assertEquals(expected, new HashMap<>(store));
+        assertTrue(store.containsKey("B.java"));
+        assertNull(store.getLines("D.java"));
+        assertEquals("a", store.remove("A.java"));
+        assertFalse(store.containsKey("A.java"));
+        assertEquals(2, store.size());
+        store.entrySet().removeIf(e -> e.getKey().equals("B.java"));
+        assertEquals(Collections.singleton("C.java"), store.keySet());
+    }
+}
@@ -0,0 +1,104 @@
+package com.gtnewhorizons.retrofuturagradle.util.patching;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class ParallelPatchEngineTest {
+
+    /** A patch replacing one line of a three line file */
+    private static String change(String file, String before, String after) {
+        return "--- a/" + file
+                + "\n+++ b/"
+                + file
+                + "\n@@ -1,3 +1,3 @@\n "
+                + "head\n-"
+                + before
+                + "\n+"
+                + after
+                + "\n tail\n";
+    }
+
+    /** A patch of several files, separated by blank lines like in git diffs */
+    private static String files(String... patches) {
+        return String.join("\n", patches);
+    }
+
+    private static String file(String middle) {
+        return "head\n" + middle + "\ntail\n";
+    }
+
+    /** Patched files are joined from their lines, like the jar context provider always did */
+    private static String patched(String middle) {
+        return String.join(System.lineSeparator(), "head", middle, "tail");
+    }
+
+    @Test
+    void patchesSharingFilesAreChainedTransitively() throws Exception {
+        final ParallelPatchEngine engine = new ParallelPatchEngine(new HashMap<>(), 1);
+        engine.add("a", change("A.java", "1", "2"));
+        engine.add("b", change("B.java", "1", "2"));
+        engine.add("c", change("C.java", "1", "2"));
+        // Links a and b through files of their own, d then joins the same chain through B.java
+        engine.add("ab", files(change("A.java", "2", "3"), change("B.java", "2", "3")));
+        engine.add("d", change("B.java", "3", "4"));
+        engine.add("e", change("E.java", "1", "2"));
+        assertEquals(
+                Arrays.asList(Arrays.asList(0, 1, 3, 4), Arrays.asList(2), Arrays.asList(5)),
+                engine.chainByTarget());
+    }
+
+    @Test
+    void chainedPatchesApplyInOrder() throws Exception {
+        final Map<String, String> sources = new HashMap<>();
+        sources.put("A.java", file("1"));
+        sources.put("B.java", file("1"));
+        final ParallelPatchEngine engine = new ParallelPatchEngine(sources, 1);
+        engine.add("a", change("A.java", "1", "2"));
+        engine.add("b", change("B.java", "1", "2"));
+        engine.add("ab", files(change("A.java", "2", "3"), change("B.java", "2", "3")));
+        engine.add("d", change("B.java", "3", "4"));
+        final List<ParallelPatchEngine.Result> results = engine.apply();
+        assertTrue(results.stream().allMatch(ParallelPatchEngine.Result::isSuccess));
+        assertEquals(patched("3"), sources.get("A.java"));
+        assertEquals(patched("4"), sources.get("B.java"));
+    }
+
+    @Test
+    void partiallyApplyingCandidateChangesNothing() throws Exception {
+        final Map<String, String> sources = new HashMap<>();
+        sources.put("A.java", file("1"));
+        sources.put("B.java", file("1"));
+        final ParallelPatchEngine engine = new ParallelPatchEngine(sources, 1);
+        // The A.java half applies, the B.java half doesn't
+        engine.add("ab", files(change("A.java", "1", "2"), change("B.java", "9", "2")));
+        final List<ParallelPatchEngine.Result> results = engine.apply();
+        assertFalse(results.get(0).isSuccess());
+        assertEquals(file("1"), sources.get("A.java"));
+        assertEquals(file("1"), sources.get("B.java"));
+    }
+
+    @Test
+    void firstCleanCandidateWins() throws Exception {
+        final Map<String, String> sources = new HashMap<>();
+        sources.put("A.java", file("1"));
+        sources.put("B.java", file("1"));
+        final ParallelPatchEngine engine = new ParallelPatchEngine(sources, 1);
+        engine.add(
+                "ab",
+                Arrays.asList(
+                        files(change("A.java", "1", "wrong"), change("B.java", "9", "wrong")),
+                        files(change("A.java", "1", "2"), change("B.java", "1", "2")),
+                        change("A.java", "1", "late")));
+        final List<ParallelPatchEngine.Result> results = engine.apply();
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(1, results.get(0).candidate);
+        assertEquals(patched("2"), sources.get("A.java"));
+        assertEquals(patched("2"), sources.get("B.java"));
+    }
+}